@@ -4,36 +4,116 @@
 
 package frc.robot;
 
+import java.lang.management.ManagementFactory;
+
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.RobotController;
 import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.robot.utils.BackgroundTaskScheduler;
+import frc.robot.utils.LatencyTracer;
+import frc.robot.utils.LoopStats;
+import frc.robot.utils.TunableGainStore;
+import frc.robot.utils.Constants.BootConstants;
+import frc.robot.utils.Constants.LoopConstants;
+import frc.robot.utils.Constants.PowerConstants;
 
 public class Robot extends TimedRobot {
   private Command m_autonomousCommand;
 
   private RobotContainer m_robotContainer;
 
+  // Loop times for the first second after each enable, to see what the JIT warmup buys us
+  private final LoopStats m_enableLoopStats = new LoopStats("First Second Loop");
+  private long m_enabledMicros;
+  private boolean m_enableStatsPublished = true;
+
+  // Start of the whole loop, before the mode periodic (disabledPeriodic runs the JIT warmup and
+  // the auto loading), so the background budget counts what they took
+  private long m_loopStartMicros;
+
+  // Set by the cdsClassList Gradle task, see build.gradle
+  private final boolean m_cdsTraining = System.getProperty("cowtown.cdsTraining") != null;
+
   @Override
   public void robotInit() {
+    // Started first so everything built in RobotContainer can make its log entries
+    DataLogManager.start();
     m_robotContainer = new RobotContainer();
+
+    m_robotContainer.getMultiRateScheduler().startAll();
+    LatencyTracer.getInstance().start();
+    addPeriodic(() -> {
+      m_robotContainer.getMultiRateScheduler().publishStats();
+      BackgroundTaskScheduler.getInstance().publishStats();
+      m_robotContainer.getParallelPeriodicRunner().publishStats();
+      LatencyTracer.getInstance().publish();
+    }, LoopConstants.kTelemetryPeriodSeconds);
+
+    // JVM start to robotInit done, compare with and without the CDS archive (-PnoCds)
+    long bootMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+    SmartDashboard.putNumber("Boot Time ms", bootMillis);
+    DataLogManager.log("robotInit complete " + bootMillis + " ms after JVM start");
+  }
+
+  @Override
+  protected void loopFunc() {
+    m_loopStartMicros = RobotController.getFPGATime();
+    super.loopFunc();
   }
 
   @Override
   public void robotPeriodic() {
+    long loopStartMicros = m_loopStartMicros;
+
+    // Which DS packet this loop's inputs came in, for latency traces started this loop
+    LatencyTracer.getInstance().onLoopStart();
+
+    // Subsystem periodics have all finished before any command runs, parallel or not
+    m_robotContainer.getParallelPeriodicRunner().run();
     CommandScheduler.getInstance().run();
+
+    // Gain edits from the dashboard, nothing to do unless something changed
+    TunableGainStore.getInstance().update();
+
+    // Limits for what the commands just asked for, from this loop's battery reading
+    if (PowerConstants.kPowerManagerEnabled) {
+      m_robotContainer.getPowerManager().update();
+    }
+
+    m_robotContainer.getMultiRateScheduler().getMainLoopStats().addSampleMicros(loopStartMicros, RobotController.getFPGATime());
+    recordEnableLoopTime(loopStartMicros);
+
+    BackgroundTaskScheduler.getInstance().run(loopStartMicros);
+
+    if (m_cdsTraining && ManagementFactory.getRuntimeMXBean().getUptime() > BootConstants.kCdsTrainingMillis) {
+      System.exit(0);
+    }
   }
 
   @Override
-  public void disabledInit() {}
+  public void disabledInit() {
+    m_robotContainer.getJitWarmup().requestCollection();
+  }
 
   @Override
-  public void disabledPeriodic() {}
+  public void disabledPeriodic() {
+    // Load and build the selected auto while there's nothing else to do
+    m_robotContainer.getAutoRegistry().update();
+
+    if (LoopConstants.kJitWarmupEnabled) {
+      m_robotContainer.getJitWarmup().run(LoopConstants.kJitWarmupBudgetSeconds);
+    }
+  }
 
   @Override
   public void disabledExit() {}
 
   @Override
   public void autonomousInit() {
+    startEnableLoopStats();
 
     m_autonomousCommand = m_robotContainer.getAutonomousCommand();
     if (m_autonomousCommand != null) {
@@ -50,6 +130,8 @@ public class Robot extends TimedRobot {
 
   @Override
   public void teleopInit() {
+    startEnableLoopStats();
+
     if (m_autonomousCommand != null) {
       m_autonomousCommand.cancel();
     }
@@ -71,4 +153,26 @@ public class Robot extends TimedRobot {
 
   @Override
   public void testExit() {}
+
+  /* --------------------> Enable Loop Timing <-------------------- */
+
+  private void startEnableLoopStats() {
+    m_enableLoopStats.reset();
+    m_enabledMicros = RobotController.getFPGATime();
+    m_enableStatsPublished = false;
+  }
+
+  private void recordEnableLoopTime(long loopStartMicros) {
+    if (m_enableStatsPublished) {
+      return;
+    }
+
+    long now = RobotController.getFPGATime();
+    if (now - m_enabledMicros < (long) (LoopConstants.kEnableStatsWindowSeconds * 1e6)) {
+      m_enableLoopStats.addSampleMicros(loopStartMicros, now);
+    } else {
+      m_enableLoopStats.publish();
+      m_enableStatsPublished = true;
+    }
+  }
 }
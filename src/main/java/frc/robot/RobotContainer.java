@@ -1,10 +1,36 @@
 package frc.robot;
 
+import com.pathplanner.lib.PathConstraints;
+import com.pathplanner.lib.PathPlannerTrajectory;
+import com.pathplanner.lib.commands.PPSwerveControllerCommand;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import edu.wpi.first.math.controller.PIDController;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import edu.wpi.first.math.util.Units;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.GenericHID.RumbleType;
+import edu.wpi.first.wpilibj.PowerDistribution;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
 import edu.wpi.first.wpilibj2.command.InstantCommand;
+import edu.wpi.first.wpilibj2.command.SequentialCommandGroup;
+import edu.wpi.first.wpilibj2.command.StartEndCommand;
 import edu.wpi.first.wpilibj2.command.button.CommandJoystick;
 import edu.wpi.first.wpilibj2.command.button.CommandXboxController;
+import edu.wpi.first.wpilibj2.command.button.Trigger;
 
+import frc.robot.commands.arm.ArmBrakeLatencyTestCmd;
+import frc.robot.commands.arm.ArmSettleTestCmd;
 import frc.robot.commands.intake.IntakeForwardCmd;
 import frc.robot.commands.intake.IntakeHoldCmd;
 import frc.robot.commands.routines.StowCmd;
@@ -14,12 +40,42 @@ import frc.robot.commands.routines.loading.SingleSubstationCmd;
 import frc.robot.commands.routines.scoring.ScoreHighCmd;
 import frc.robot.commands.routines.scoring.ScoreLowCmd;
 import frc.robot.commands.routines.scoring.ScoreMidCmd;
+import frc.robot.commands.swerve.AutoBalanceCmd;
+import frc.robot.commands.swerve.DriveResponseTestCmd;
+import frc.robot.commands.swerve.DriveToPoseCmd;
+import frc.robot.commands.swerve.GeneratedPathCmd;
+import frc.robot.commands.swerve.SlipScenarioCmd;
 import frc.robot.commands.swerve.SwerveJoystickCmd;
 import frc.robot.subsystems.ArmExtensionSubsystem;
 import frc.robot.subsystems.ArmRotationSubsystem;
+import frc.robot.subsystems.ArmRotationSubsystem.ArmControlMode;
 import frc.robot.subsystems.IntakeSubsystem;
+import frc.robot.subsystems.SwerveModule;
 import frc.robot.subsystems.SwerveSubsystem;
 import frc.robot.subsystems.WristSubsystem;
+import frc.robot.utils.AutoRegistry;
+import frc.robot.utils.AutoRoutine;
+import frc.robot.utils.BackgroundTaskScheduler;
+import frc.robot.utils.CenterOfGravityLimiter;
+import frc.robot.utils.GravityModel;
+import frc.robot.utils.JitWarmup;
+import frc.robot.utils.LatencyTracer;
+import frc.robot.utils.MotorThermalModel;
+import frc.robot.utils.MultiRateScheduler;
+import frc.robot.utils.PathGenerationService;
+import frc.robot.utils.PowerManager;
+import frc.robot.utils.ScoringNodeIndex;
+import frc.robot.utils.SwerveSetpointGenerator;
+import frc.robot.utils.ThermalMonitor;
+import frc.robot.utils.ParallelPeriodicRunner;
+import frc.robot.utils.Constants.ArmBrakeConstants;
+import frc.robot.utils.Constants.DriveConstants;
+import frc.robot.utils.Constants.FieldConstants;
+import frc.robot.utils.Constants.IntakeConstants;
+import frc.robot.utils.Constants.LoopConstants;
+import frc.robot.utils.Constants.PathConstants;
+import frc.robot.utils.Constants.PowerConstants;
+import frc.robot.utils.Constants.ThermalConstants;
 import frc.robot.utils.Constants.IOConstants.ButtonBoxButtons;
 
 
@@ -28,17 +84,73 @@ public class RobotContainer {
   /* --------------------> Subsystems <-------------------- */
 
   private final SwerveSubsystem swerveSubsystem = new SwerveSubsystem();
-  private final ArmRotationSubsystem armRotationSubsystem = new ArmRotationSubsystem();
   private final ArmExtensionSubsystem armExtensionSubsystem = new ArmExtensionSubsystem();
-  private final IntakeSubsystem intakeSubsystem = new IntakeSubsystem();
   private final WristSubsystem wristSubsystem = new WristSubsystem();
+  private final ArmRotationSubsystem armRotationSubsystem = new ArmRotationSubsystem(
+    armExtensionSubsystem::getArmExtensionSnapshot, wristSubsystem::getWristPositionSnapshot);
+  private final IntakeSubsystem intakeSubsystem = new IntakeSubsystem();
 
   /* --------------------> Joysticks <-------------------- */
 
   private final CommandJoystick buttonBox = new CommandJoystick(1); // Button Box
   private final CommandXboxController cmdDriveController = new CommandXboxController(0); // Driver Xbox Controller
 
+  // Button box presses start a trace, the command they schedule is the dispatch, see LatencyTracer
+  private final LatencyTracer.Source buttonBoxLatency = LatencyTracer.getInstance().addSource("Button Box",
+    "Arm Rotation", "Arm Extension", "Wrist", "Intake");
+  private final Set<Command> buttonBoxCommands = new HashSet<>(); // Bound through buttonBoxCommand()
+
+  // Drive limits from the arm pose
+  private final CenterOfGravityLimiter centerOfGravityLimiter = new CenterOfGravityLimiter(
+    armRotationSubsystem::getArmRotationRadians, armExtensionSubsystem::getArmExtension, wristSubsystem::getWristPosition);
+
+  // Background path generation for teleop assists and dynamic autos
+  private final PathGenerationService pathGenerationService = new PathGenerationService();
+
+  private final AutoRegistry autoRegistry = new AutoRegistry();
+
+  private final JitWarmup jitWarmup;
+
+  private final MultiRateScheduler multiRateScheduler = new MultiRateScheduler();
+
+  // Swerve first since it has the most to do and runs on the main thread
+  private final ParallelPeriodicRunner parallelPeriodicRunner = new ParallelPeriodicRunner(
+    LoopConstants.kParallelPeriodicEnabled, LoopConstants.kParallelPeriodicThreads,
+    swerveSubsystem, armRotationSubsystem, armExtensionSubsystem, wristSubsystem, intakeSubsystem);
+
+  // Current limits from the battery, see PowerManager
+  private final PowerManager powerManager = new PowerManager(new PowerDistribution())
+    .addConsumer("Steer", PowerConstants.kSteerPriority, swerveSubsystem.getModuleCount(),
+      PowerConstants.kSteerMinAmps, PowerConstants.kSteerMaxAmps, swerveSubsystem::getTurnCurrent, swerveSubsystem::setTurnCurrentLimit)
+    .addConsumer("Arm Rotation", PowerConstants.kArmRotationPriority, 1,
+      PowerConstants.kArmRotationMinAmps, PowerConstants.kArmRotationMaxAmps, armRotationSubsystem::getMotorCurrent, armRotationSubsystem::setCurrentLimit)
+    .addConsumer("Wrist", PowerConstants.kWristPriority, 1,
+      PowerConstants.kWristMinAmps, PowerConstants.kWristMaxAmps, wristSubsystem::getMotorCurrent, wristSubsystem::setCurrentLimit)
+    .addConsumer("Drive", PowerConstants.kDrivePriority, swerveSubsystem.getModuleCount(),
+      PowerConstants.kDriveMinAmps, PowerConstants.kDriveMaxAmps, swerveSubsystem::getDriveCurrent, swerveSubsystem::setDriveCurrentLimit)
+    .addConsumer("Extension", PowerConstants.kExtensionPriority, 1,
+      PowerConstants.kExtensionMinAmps, PowerConstants.kExtensionMaxAmps, armExtensionSubsystem::getMotorCurrent, armExtensionSubsystem::setCurrentLimit)
+    .addConsumer("Intake", PowerConstants.kIntakePriority, 1,
+      PowerConstants.kIntakeMinAmps, PowerConstants.kIntakeMaxAmps, intakeSubsystem::getMotorCurrent, intakeSubsystem::setCurrentLimit);
+
+  // Winding temperature estimates and derating for the motors that run hot late in a match
+  private final ThermalMonitor thermalMonitor = new ThermalMonitor()
+    .addGroup("Arm Rotation", armRotationSubsystem::setProfileScale,
+      new MotorThermalModel("Arm Rotation", ThermalConstants.kNeoWindingOhms, ThermalConstants.kNeoHeatCapacity,
+        ThermalConstants.kNeoThermalResistance, ThermalConstants.kNeoLimitCelsius,
+        armRotationSubsystem::getMotorCurrent, armRotationSubsystem::getMotorTemperature))
+    // Heat comes from current, so the drive is derated on its current limit and acceleration, not top speed
+    .addGroup("Drive", scale -> {
+      powerManager.setMaxScale("Drive", scale);
+      swerveSubsystem.setAccelerationScale(scale);
+    }, driveThermalModels());
+
   public RobotContainer() {
+
+    // Gravity feedforwards need every joint, the arm gets the others through its constructor. They
+    // read each other's snapshots, the periodics may be running on different threads.
+    armExtensionSubsystem.setArmRotationSupplier(armRotationSubsystem::getArmRotationSnapshot);
+    wristSubsystem.setArmRotationSupplier(armRotationSubsystem::getArmRotationSnapshot);
     
     /* --------------------> Swerve Drive <-------------------- */
 
@@ -46,9 +158,94 @@ public class RobotContainer {
     () -> -cmdDriveController.getRawAxis(0), // Axis 0 = Left X Stick
     () -> -cmdDriveController.getRawAxis(1), // Axis 1 = Left Y Stick
     () -> cmdDriveController.getRawAxis(4), // Axis 2 = Right X Stick
-    () -> cmdDriveController.start().getAsBoolean()));
+    () -> cmdDriveController.start().getAsBoolean(),
+    () -> cmdDriveController.getHID().getPOV(), // D-pad snaps to a preset heading
+    centerOfGravityLimiter));
 
     configureButtonBindings();
+    CommandScheduler.getInstance().onCommandInitialize(command -> {
+      if (buttonBoxCommands.contains(command)) {
+        buttonBoxLatency.dispatch();
+      }
+    });
+
+    BackgroundTaskScheduler.getInstance().register("CG Telemetry", LoopConstants.kTelemetryPeriodSeconds, centerOfGravityLimiter::updateSmartDashboard);
+    BackgroundTaskScheduler.getInstance().register("Power Telemetry", LoopConstants.kTelemetryPeriodSeconds, powerManager::updateSmartDashboard);
+    if (ThermalConstants.kThermalMonitorEnabled) {
+      BackgroundTaskScheduler.getInstance().register("Thermal Model", ThermalConstants.kSamplePeriodSeconds, thermalMonitor::update);
+      BackgroundTaskScheduler.getInstance().register("Thermal Telemetry", LoopConstants.kTelemetryPeriodSeconds, thermalMonitor::updateSmartDashboard);
+    }
+
+    // Odometry drift test, run from the dashboard in simulation
+    if (RobotBase.isSimulation()) {
+      SmartDashboard.putData("Sim Slip Scenario", new SlipScenarioCmd(swerveSubsystem));
+
+      // Balance from the community in front of the blue station, compare with the naive controller
+      SmartDashboard.putData("Balance Test", balanceTest(false));
+      SmartDashboard.putData("Balance Test (naive)", balanceTest(true));
+
+      // Stow to the high scoring angle with each arm controller
+      SmartDashboard.putData("Arm Settle Test SmartMotion", new ArmSettleTestCmd(armRotationSubsystem,
+        ArmControlMode.SMART_MOTION, Math.PI / 2.0, Units.degreesToRadians(55.0)));
+      SmartDashboard.putData("Arm Settle Test State Space", new ArmSettleTestCmd(armRotationSubsystem,
+        ArmControlMode.STATE_SPACE, Math.PI / 2.0, Units.degreesToRadians(55.0)));
+
+      // Time to speed and heading drift while driving and rotating, compare with the setpoint generator on and off
+      SmartDashboard.putData("Drive Response Test", new DriveResponseTestCmd(swerveSubsystem,
+        DriveConstants.kPhysicalMaxSpeedMetersPerSecond / 2, DriveConstants.kDriveMaxAngularSpeedRadiansPerSecond, 3.0));
+
+      // 0 to max speed straight ahead, compare with traction control on and off
+      SmartDashboard.putData("Launch Test", new DriveResponseTestCmd(swerveSubsystem,
+        DriveConstants.kPhysicalMaxSpeedMetersPerSecond, 0.0, 2.0));
+    }
+
+    // Measures the arm brake's release latency, run on the real robot with the arm clear. Off unless
+    // turned on for a test session, one click moves the arm.
+    if (ArmBrakeConstants.kLatencyTestEnabled) {
+      SmartDashboard.putData("Arm Brake Latency Test", new ArmBrakeLatencyTestCmd(armRotationSubsystem));
+    }
+
+    jitWarmup = createJitWarmup();
+
+    configureControlRates();
+
+    configureAutos();
+  }
+
+  /* --------------------> Control Rates <-------------------- */
+
+  private void configureControlRates() {
+
+    // Module and feedforward writes run faster than the 50 Hz command loop
+    if (LoopConstants.kUseFastControlLoop) {
+      multiRateScheduler.addRate("Fast Control", LoopConstants.kFastLoopPeriodSeconds, LoopConstants.kFastLoopPriority,
+        swerveSubsystem::fastPeriodic,
+        armRotationSubsystem::fastPeriodic,
+        wristSubsystem::fastPeriodic);
+    }
+  }
+
+  public MultiRateScheduler getMultiRateScheduler() {
+    return multiRateScheduler;
+  }
+
+  public ParallelPeriodicRunner getParallelPeriodicRunner() {
+    return parallelPeriodicRunner;
+  }
+
+  public PowerManager getPowerManager() {
+    return powerManager;
+  }
+
+  private MotorThermalModel[] driveThermalModels() {
+    MotorThermalModel[] models = new MotorThermalModel[swerveSubsystem.getModuleCount()];
+    for (int i = 0; i < models.length; i++) {
+      SwerveModule module = swerveSubsystem.getModule(i);
+      models[i] = new MotorThermalModel(module.getName() + " Drive", ThermalConstants.kFalconWindingOhms,
+        ThermalConstants.kFalconHeatCapacity, ThermalConstants.kFalconThermalResistance, ThermalConstants.kFalconLimitCelsius,
+        module::getDriveStatorCurrent, module::getDriveTemperature);
+    }
+    return models;
   }
 
   private void configureButtonBindings() {
@@ -57,6 +254,27 @@ public class RobotContainer {
 
     cmdDriveController.leftBumper().onTrue(new InstantCommand(() -> swerveSubsystem.resetHeading()));
 
+    // Hold to line up on the nearest node for the selected game piece, or the nearest double substation shelf.
+    // Only with the pose in the field frame, otherwise the controller rumbles instead.
+    Trigger fieldPose = new Trigger(swerveSubsystem::hasFieldPose);
+    cmdDriveController.a().and(fieldPose).whileTrue(new DriveToPoseCmd(swerveSubsystem, () -> ScoringNodeIndex.nearestNode(
+      swerveSubsystem.getPose(), buttonBox.button(ButtonBoxButtons.cubeSwitch).getAsBoolean(), DriverStation.getAlliance())));
+    cmdDriveController.a().and(fieldPose.negate()).whileTrue(rumbleDriver());
+    // The substations are across the field, so that one follows a generated path instead of a straight line
+    cmdDriveController.back().and(fieldPose).whileTrue(new GeneratedPathCmd(swerveSubsystem, () -> ScoringNodeIndex.nearestDoubleSubstation(
+      swerveSubsystem.getPose(), DriverStation.getAlliance()), pathGenerationService));
+    cmdDriveController.back().and(fieldPose.negate()).whileTrue(rumbleDriver());
+    // Either one means the arm is about to move, so get the brake off while the robot drives
+    cmdDriveController.a().or(cmdDriveController.back()).and(fieldPose).onTrue(new InstantCommand(armRotationSubsystem::prepareToMove));
+
+    /* --------------------> Intake <-------------------- */
+
+    // Stow the moment the intake detects a piece, the intake holds it on its own
+    if (IntakeConstants.kAutoStowOnAcquire) {
+      new Trigger(intakeSubsystem::hasGamePiece).onTrue(
+        new StowCmd(armRotationSubsystem, armExtensionSubsystem, wristSubsystem, intakeSubsystem, true));
+    }
+
     /* --------------------> TODO: Testing Buttons to be Removed <-------------------- */
 
     cmdDriveController.x().onTrue(new IntakeForwardCmd(intakeSubsystem));
@@ -69,39 +287,159 @@ public class RobotContainer {
     /* --------------------> Button Box Buttons <-------------------- */
 
     // Single Substation
-    buttonBox.button(ButtonBoxButtons.singleSubstation).onTrue(new SingleSubstationCmd(armRotationSubsystem, armExtensionSubsystem, wristSubsystem, intakeSubsystem));
+    buttonBoxButton(ButtonBoxButtons.singleSubstation).onTrue(buttonBoxCommand(
+      new SingleSubstationCmd(armRotationSubsystem, armExtensionSubsystem, wristSubsystem, intakeSubsystem)));
     
     // Double Substation Cube
-    buttonBox.button(ButtonBoxButtons.doubleSubstation).and(buttonBox.button(ButtonBoxButtons.cubeSwitch)).onTrue(
-      new DoubleSubstationCube(armRotationSubsystem, armExtensionSubsystem, wristSubsystem, intakeSubsystem)); // Double Substation Cube
+    buttonBoxButton(ButtonBoxButtons.doubleSubstation).and(buttonBoxButton(ButtonBoxButtons.cubeSwitch)).onTrue(
+      buttonBoxCommand(new DoubleSubstationCube(armRotationSubsystem, armExtensionSubsystem, wristSubsystem, intakeSubsystem))); // Double Substation Cube
 
     /*  TODO: Test this
     * Double Substation Cone
-    buttonBox.button(ButtonBoxButtons.doubleSubstation).negate().and(buttonBox.button(ButtonBoxButtons.cubeSwitch)).onTrue(
-      new DoubleSubstationCone(armRotationSubsystem, armExtensionSubsystem, wristSubsystem, intakeSubsystem));
+    buttonBoxButton(ButtonBoxButtons.doubleSubstation).negate().and(buttonBoxButton(ButtonBoxButtons.cubeSwitch)).onTrue(
+      buttonBoxCommand(new DoubleSubstationCone(armRotationSubsystem, armExtensionSubsystem, wristSubsystem, intakeSubsystem)));
     */
 
     // Stow
-    buttonBox.button(ButtonBoxButtons.straightUpButton).onTrue(new StowCmd(armRotationSubsystem, armExtensionSubsystem, wristSubsystem, intakeSubsystem, false));
+    buttonBoxButton(ButtonBoxButtons.straightUpButton).onTrue(buttonBoxCommand(
+      new StowCmd(armRotationSubsystem, armExtensionSubsystem, wristSubsystem, intakeSubsystem, false)));
 
     // Subsystem Jog Selector
     if (buttonBox.getX() <= 0.6){
-      buttonBox.button(ButtonBoxButtons.jogUpSwitch).whileTrue(new InstantCommand(() -> wristSubsystem.jogRight()));
-      buttonBox.button(ButtonBoxButtons.jogDownSwitch).whileTrue(new InstantCommand(() -> wristSubsystem.jogLeft()));
+      buttonBoxButton(ButtonBoxButtons.jogUpSwitch).whileTrue(buttonBoxCommand(new InstantCommand(() -> wristSubsystem.jogRight())));
+      buttonBoxButton(ButtonBoxButtons.jogDownSwitch).whileTrue(buttonBoxCommand(new InstantCommand(() -> wristSubsystem.jogLeft())));
     } else if (buttonBox.getX() > 0.6 && buttonBox.getX() <= 0.8){
-      buttonBox.button(ButtonBoxButtons.jogUpSwitch).whileTrue(new InstantCommand(() -> armExtensionSubsystem.jogUp()));
-      buttonBox.button(ButtonBoxButtons.jogDownSwitch).whileTrue(new InstantCommand(() -> armExtensionSubsystem.jogDown()));
+      buttonBoxButton(ButtonBoxButtons.jogUpSwitch).whileTrue(buttonBoxCommand(new InstantCommand(() -> armExtensionSubsystem.jogUp())));
+      buttonBoxButton(ButtonBoxButtons.jogDownSwitch).whileTrue(buttonBoxCommand(new InstantCommand(() -> armExtensionSubsystem.jogDown())));
     } else if (buttonBox.getX() > 0.8){
-      buttonBox.button(ButtonBoxButtons.jogUpSwitch).whileTrue(new InstantCommand(() -> armRotationSubsystem.jogRight()));
-      buttonBox.button(ButtonBoxButtons.jogDownSwitch).whileTrue(new InstantCommand(() -> armRotationSubsystem.jogLeft()));
+      buttonBoxButton(ButtonBoxButtons.jogUpSwitch).whileTrue(buttonBoxCommand(new InstantCommand(() -> armRotationSubsystem.jogRight())));
+      buttonBoxButton(ButtonBoxButtons.jogDownSwitch).whileTrue(buttonBoxCommand(new InstantCommand(() -> armRotationSubsystem.jogLeft())));
     }
   }
 
+  // Tells the driver a field relative action was refused, for as long as they hold the button
+  private Command rumbleDriver() {
+    return new StartEndCommand(
+      () -> cmdDriveController.getHID().setRumble(RumbleType.kBothRumble, 1.0),
+      () -> cmdDriveController.getHID().setRumble(RumbleType.kBothRumble, 0.0));
+  }
+
+  private Trigger buttonBoxButton(int button) {
+    return new Trigger(buttonBoxLatency.watch(buttonBox.button(button)));
+  }
+
+  // Only these end a button box trace, anything else starting in the same loop isn't from the press
+  private Command buttonBoxCommand(Command command) {
+    buttonBoxCommands.add(command);
+    return command;
+  }
+
+  /* --------------------> JIT Warmup <-------------------- */
+
+  private JitWarmup createJitWarmup() {
+
+    // Never scheduled, only here so its joystick math gets compiled before the real one runs
+    SwerveJoystickCmd warmupDriveCmd = new SwerveJoystickCmd(swerveSubsystem, () -> 0.0, () -> 0.0, () -> 0.0, () -> false);
+    CenterOfGravityLimiter warmupLimiter = new CenterOfGravityLimiter(() -> 0.0, () -> 0.0, () -> 0.0);
+    SwerveSetpointGenerator warmupGenerator = new SwerveSetpointGenerator(DriveConstants.kSwerveDriveKinematics, 4, DriveConstants.kSetpointGeneratorPeriodSeconds);
+
+    return new JitWarmup(LoopConstants.kJitWarmupIterations,
+      // Joystick -> kinematics -> desaturate -> optimize, same as a teleop loop
+      i -> {
+        double input = Math.sin(i * 0.01);
+        SwerveModuleState[] states = warmupDriveCmd.calculateModuleStates(input, -input, input * 0.5, (i & 1) == 0, Rotation2d.fromRadians(input));
+        SwerveDriveKinematics.desaturateWheelSpeeds(states, DriveConstants.kPhysicalMaxSpeedMetersPerSecond);
+        double sum = 0.0;
+        for (SwerveModuleState state : states) {
+          sum += SwerveModuleState.optimize(state, Rotation2d.fromRadians(input * Math.PI)).speedMetersPerSecond;
+        }
+        return sum;
+      },
+      // Setpoint generator, swinging between requests it can't follow in one step
+      i -> {
+        double input = (i & 64) == 0 ? 1.0 : -1.0;
+        return warmupGenerator.generate(new ChassisSpeeds(input * DriveConstants.kPhysicalMaxSpeedMetersPerSecond, 0.0, input))[0].speedMetersPerSecond;
+      },
+      // CG limits for a sweep of arm poses
+      i -> {
+        warmupLimiter.calculate(i * 0.001, (i & 31) * 0.03, i * 0.002);
+        return warmupLimiter.limit(new ChassisSpeeds(1.0, -1.0, 0.0), TimedRobot.kDefaultPeriod).vxMetersPerSecond;
+      },
+      // Gravity feedforwards over a sweep of superstructure poses
+      i -> ArmRotationSubsystem.calculateGravityFeedForward(i * 0.001, (i & 31) * 0.02, i * 0.002)
+        + WristSubsystem.calculateGravityFeedForward(i * 0.001, i * 0.002) + GravityModel.extensionFeedForward(i * 0.001));
+  }
+
+  public JitWarmup getJitWarmup() {
+    return jitWarmup;
+  }
+
   /* --------------------> Autonomous Commands <-------------------- */
 
+  // Described here, only the one picked on the chooser gets loaded and built (see AutoRegistry)
+  private SequentialCommandGroup balanceTest(boolean naive) {
+    return new SequentialCommandGroup(
+      new InstantCommand(() -> swerveSubsystem.resetOdometry(new Pose2d(2.2, 2.75, new Rotation2d()))),
+      new AutoBalanceCmd(swerveSubsystem, naive).withTimeout(15.0));
+  }
+
+  private void configureAutos() {
+
+    PathConstraints constraints = new PathConstraints(PathConstants.kMaxVelocityMps, PathConstants.kMaxAccelerationMps2);
+
+    autoRegistry.register(new AutoRoutine("Do Nothing", paths -> new InstantCommand()));
+
+    // Starts lined up on the node in front of the station, AutoBalanceCmd picks its direction from the field pose
+    autoRegistry.register(new AutoRoutine("Score High + Balance", paths -> new SequentialCommandGroup(
+      new InstantCommand(() -> swerveSubsystem.resetOdometry(
+        ScoringNodeIndex.nodePose(FieldConstants.kChargeStationColumn, DriverStation.getAlliance()))),
+      new ScoreHighCmd(armRotationSubsystem, armExtensionSubsystem, wristSubsystem, intakeSubsystem),
+      autoStow(),
+      new AutoBalanceCmd(swerveSubsystem))));
+
+    autoRegistry.register(new AutoRoutine("Score High", paths ->
+      new ScoreHighCmd(armRotationSubsystem, armExtensionSubsystem, wristSubsystem, intakeSubsystem)));
+
+    autoRegistry.register(new AutoRoutine("Score High + Example Auto", "Example Auto", constraints, paths -> {
+      SequentialCommandGroup routine = new SequentialCommandGroup(
+        new ScoreHighCmd(armRotationSubsystem, armExtensionSubsystem, wristSubsystem, intakeSubsystem),
+        autoStow());
+      for (int i = 0; i < paths.size(); i++) {
+        routine.addCommands(followPath(paths.get(i), i == 0));
+      }
+      return routine;
+    }));
+
+    autoRegistry.register(new AutoRoutine("New Path", "New Path", constraints, paths -> followPath(paths.get(0), true)));
+  }
+
+  // StowCmd leaves the intake command running, so in an auto it ends once the superstructure is stowed
+  private Command autoStow() {
+    return new StowCmd(armRotationSubsystem, armExtensionSubsystem, wristSubsystem, intakeSubsystem, false)
+      .until(() -> armRotationSubsystem.atGoal() && armExtensionSubsystem.atGoal() && wristSubsystem.atGoal());
+  }
+
+  // Follows a loaded path through the setpoint generator, flipped for the red alliance
+  private Command followPath(PathPlannerTrajectory path, boolean resetPose) {
+    Command follow = new PPSwerveControllerCommand(path, swerveSubsystem::getPose,
+      new PIDController(PathConstants.kTranslationP, 0, 0),
+      new PIDController(PathConstants.kTranslationP, 0, 0),
+      new PIDController(PathConstants.kRotationP, 0, 0),
+      swerveSubsystem::drive, true, swerveSubsystem);
+
+    if (!resetPose) {
+      return follow;
+    }
+    return new InstantCommand(() -> swerveSubsystem.resetOdometry(
+      PathPlannerTrajectory.transformTrajectoryForAlliance(path, DriverStation.getAlliance()).getInitialHolonomicPose())).andThen(follow);
+  }
+
+  public AutoRegistry getAutoRegistry() {
+    return autoRegistry;
+  }
+
   public Command getAutonomousCommand() {
-    
-    return null;
+    return autoRegistry.getCommand();
   }
   
 }
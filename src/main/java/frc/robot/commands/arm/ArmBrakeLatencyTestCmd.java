@@ -0,0 +1,58 @@
+package frc.robot.commands.arm;
+
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import frc.robot.subsystems.ArmRotationSubsystem;
+import frc.robot.utils.ArmBrakeController.BrakeState;
+import frc.robot.utils.Constants.ArmBrakeConstants;
+
+// Measures how long the arm brake takes to let go. Waits for the brake to engage on its own, then
+// steps the setpoint a little with the latency probe on and puts the arm back once it's moved. The
+// measured latency is what the brake uses from then on ("Arm Brake Release Latency s").
+public class ArmBrakeLatencyTestCmd extends CommandBase {
+
+  private static final double kTimeoutSeconds = 5.0;
+
+  private final ArmRotationSubsystem armRotationSubsystem;
+
+  private double startTime;
+  private double startRadians;
+  private boolean probeStarted;
+
+  public ArmBrakeLatencyTestCmd(ArmRotationSubsystem armRotationSubsystem) {
+    this.armRotationSubsystem = armRotationSubsystem;
+    addRequirements(armRotationSubsystem);
+  }
+
+  @Override
+  public void initialize() {
+    armRotationSubsystem.setAutoBrakeEnabled(true);
+    startTime = Timer.getFPGATimestamp();
+    probeStarted = false;
+  }
+
+  @Override
+  public void execute() {
+    if (!probeStarted && armRotationSubsystem.getBrakeState() == BrakeState.ENGAGED) {
+      startRadians = armRotationSubsystem.getArmRotationRadians();
+      // Step toward vertical so the move stays inside the arm's range
+      double direction = startRadians > Math.PI / 2.0 ? -1.0 : 1.0;
+      armRotationSubsystem.probeBrakeLatency();
+      armRotationSubsystem.setArmRotation(startRadians + direction * ArmBrakeConstants.kProbeMoveRadians);
+      probeStarted = true;
+    }
+  }
+
+  @Override
+  public void end(boolean interrupted) {
+    if (probeStarted) {
+      armRotationSubsystem.setArmRotation(startRadians);
+    }
+  }
+
+  @Override
+  public boolean isFinished() {
+    return (probeStarted && !armRotationSubsystem.isProbingBrakeLatency())
+      || Timer.getFPGATimestamp() - startTime > kTimeoutSeconds;
+  }
+}
@@ -0,0 +1,72 @@
+package frc.robot.commands.arm;
+
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import frc.robot.subsystems.ArmRotationSubsystem;
+import frc.robot.subsystems.ArmRotationSubsystem.ArmControlMode;
+import frc.robot.utils.Constants.ArmStateSpaceConstants;
+
+// Simulation only. Puts the arm at a start angle, moves it to a target with the given control mode
+// and publishes how long it took to settle (-1 if it never did) and how far it overshot, per mode so
+// they can be compared.
+public class ArmSettleTestCmd extends CommandBase {
+
+  private final ArmRotationSubsystem armRotationSubsystem;
+  private final ArmControlMode mode;
+  private final double startRadians, targetRadians;
+
+  private double startTime;
+  private double settledSince;
+  private double overshoot;
+  private boolean settled;
+
+  public ArmSettleTestCmd(ArmRotationSubsystem armRotationSubsystem, ArmControlMode mode, double startRadians, double targetRadians) {
+    this.armRotationSubsystem = armRotationSubsystem;
+    this.mode = mode;
+    this.startRadians = startRadians;
+    this.targetRadians = targetRadians;
+    addRequirements(armRotationSubsystem);
+  }
+
+  @Override
+  public void initialize() {
+    armRotationSubsystem.resetSimulation(startRadians);
+    armRotationSubsystem.setControlMode(mode);
+    armRotationSubsystem.setArmRotation(targetRadians);
+
+    startTime = Timer.getFPGATimestamp();
+    settledSince = -1.0;
+    overshoot = 0.0;
+    settled = false;
+  }
+
+  @Override
+  public void execute() {
+    double now = Timer.getFPGATimestamp();
+    double error = armRotationSubsystem.getArmRotationRadians() - targetRadians;
+
+    // Past the target in the direction of travel
+    overshoot = Math.max(overshoot, error * Math.signum(targetRadians - startRadians));
+
+    if (Math.abs(error) < ArmStateSpaceConstants.kSettleToleranceRadians) {
+      if (settledSince < 0.0) {
+        settledSince = now;
+      }
+      settled = now - settledSince >= ArmStateSpaceConstants.kSettleHoldSeconds;
+    } else {
+      settledSince = -1.0;
+    }
+  }
+
+  @Override
+  public void end(boolean interrupted) {
+    SmartDashboard.putNumber("Arm Settle Time s " + mode, settled ? settledSince - startTime : -1.0);
+    SmartDashboard.putNumber("Arm Overshoot deg " + mode, Math.toDegrees(overshoot));
+  }
+
+  @Override
+  public boolean isFinished() {
+    return settled || Timer.getFPGATimestamp() - startTime > ArmStateSpaceConstants.kSettleTestTimeoutSeconds;
+  }
+}
@@ -19,7 +19,7 @@ public class IntakeHoldCmd extends CommandBase{
 
     @Override
     public void execute(){
-        intakeSubsystem.setIntakeSpeed(-0.1);
+        intakeSubsystem.holdGamePiece();
     }
 
     @Override
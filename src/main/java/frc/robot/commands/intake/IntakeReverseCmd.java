@@ -29,7 +29,8 @@ public class IntakeReverseCmd extends CommandBase{
 
     @Override
     public boolean isFinished(){
-        return false;
+        // Lets scoring sequences move on as soon as the piece is out
+        return intakeSubsystem.hasEjected();
     }
     
 }
\ No newline at end of file
@@ -1,24 +1,35 @@
 package frc.robot.commands.routines;
 
 import edu.wpi.first.math.util.Units;
+import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.ParallelCommandGroup;
+import edu.wpi.first.wpilibj2.command.WaitUntilCommand;
 import frc.robot.commands.arm.ExtendArmCmd;
 import frc.robot.commands.arm.RotateArmCmd;
+import frc.robot.commands.intake.IntakeHoldCmd;
 import frc.robot.commands.intake.IntakeMoveCmd;
 import frc.robot.commands.wrist.RotateWristCmd;
 import frc.robot.subsystems.ArmExtensionSubsystem;
 import frc.robot.subsystems.ArmRotationSubsystem;
 import frc.robot.subsystems.IntakeSubsystem;
 import frc.robot.subsystems.WristSubsystem;
+import frc.robot.utils.Constants.IntakeConstants;
 
 public class StowCmd extends ParallelCommandGroup{
 
-  private IntakeMoveCmd intakeMoveCmd;
+  private Command intakeMoveCmd;
 
   public StowCmd(ArmRotationSubsystem armRotationSubsystem, ArmExtensionSubsystem armExtensionSubsystem, WristSubsystem wristSubsystem, IntakeSubsystem intakeSubsystem, boolean hasGamePiece){
     
     if (hasGamePiece == true){
-      intakeMoveCmd = new IntakeMoveCmd(intakeSubsystem, -0.1);
+      intakeMoveCmd = new IntakeHoldCmd(intakeSubsystem);
+
+      // Time from the intake seeing the piece to the superstructure being stowed
+      addCommands(new WaitUntilCommand(() ->
+        Math.abs(armRotationSubsystem.getArmRotationRadians() - Math.PI / 2.0) < IntakeConstants.kStowedRotationToleranceRadians
+        && Math.abs(armExtensionSubsystem.getArmExtension()) < IntakeConstants.kStowedExtensionToleranceMeters
+        && Math.abs(wristSubsystem.getWristPosition()) < IntakeConstants.kStowedWristToleranceRadians)
+        .andThen(intakeSubsystem::reportStowed));
     } else{
       intakeMoveCmd = new IntakeMoveCmd(intakeSubsystem, 0.0);
     }
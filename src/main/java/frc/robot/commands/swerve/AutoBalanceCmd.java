@@ -0,0 +1,136 @@
+package frc.robot.commands.swerve;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.DriverStation.Alliance;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import frc.robot.subsystems.SwerveSubsystem;
+import frc.robot.utils.Constants.BalanceConstants;
+import frc.robot.utils.Constants.FieldConstants;
+
+// Drives onto the charge station and balances it. Climbs at a fixed speed until the station starts
+// tipping, then drives on tilt plus tilt rate so it slows down as soon as the station starts to fall
+// instead of overshooting, and locks the wheels in an X once it's level. The naive mode is a plain
+// proportional controller on tilt to compare against. Time to balanced is published once the station
+// has stayed level for kSettleSeconds.
+public class AutoBalanceCmd extends CommandBase{
+
+    private enum State {CLIMBING, BALANCING, LOCKED}
+
+    private final SwerveSubsystem swerveSubsystem;
+    private final boolean naive;
+
+    private State state;
+    private double direction;
+    private boolean onStation;
+    private double startTime;
+    private double levelSince;
+    private boolean balancePublished;
+
+    public AutoBalanceCmd(SwerveSubsystem swerveSubsystem, boolean naive){
+        this.swerveSubsystem = swerveSubsystem;
+        this.naive = naive;
+        addRequirements(swerveSubsystem);
+    }
+
+    public AutoBalanceCmd(SwerveSubsystem swerveSubsystem){
+        this(swerveSubsystem, false);
+    }
+
+    @Override
+    public void initialize(){
+        // Climb toward the station center from whichever side the robot is on
+        double centerX = DriverStation.getAlliance() == Alliance.Red
+            ? FieldConstants.kFieldLengthMeters - FieldConstants.kBlueChargeStationCenterX
+            : FieldConstants.kBlueChargeStationCenterX;
+        direction = Math.signum(centerX - swerveSubsystem.getPose().getX());
+
+        state = State.CLIMBING;
+        onStation = false;
+        swerveSubsystem.resetSetpoint();
+        startTime = Timer.getFPGATimestamp();
+        levelSince = -1.0;
+        balancePublished = false;
+    }
+
+    @Override
+    public void execute(){
+        double tilt = swerveSubsystem.getChargeStationTilt();
+        double tiltRate = swerveSubsystem.getChargeStationTiltRate();
+        boolean level = Math.abs(tilt) < BalanceConstants.kLevelDegrees && Math.abs(tiltRate) < BalanceConstants.kLevelRateDegPerSec;
+
+        switch (state){
+            case CLIMBING:
+                // Tipping point is when the high end starts coming down fast
+                onStation |= Math.abs(tilt) > BalanceConstants.kOnStationDegrees;
+                if (onStation && (naive || tiltRate * Math.signum(tilt) < -BalanceConstants.kTipRateDegPerSec)){
+                    state = State.BALANCING;
+                }
+                break;
+            case BALANCING:
+                if (level && !naive){
+                    state = State.LOCKED;
+                }
+                break;
+            case LOCKED:
+                if (Math.abs(tilt) > BalanceConstants.kUnlockDegrees){
+                    state = State.BALANCING;
+                }
+                break;
+        }
+
+        switch (state){
+            case CLIMBING:
+                driveFieldRelative(direction * (onStation ? BalanceConstants.kClimbOnStationSpeedMps : BalanceConstants.kClimbSpeedMps));
+                break;
+            case BALANCING:
+                // Drive toward the high end, tilt positive means the +X end is up
+                double speed = naive
+                    ? BalanceConstants.kNaiveP * tilt
+                    : BalanceConstants.kBalanceP * tilt + BalanceConstants.kBalanceD * tiltRate;
+                if (naive && Math.abs(tilt) < BalanceConstants.kLevelDegrees){
+                    speed = 0.0;
+                }
+                driveFieldRelative(MathUtil.clamp(speed, -BalanceConstants.kMaxBalanceSpeedMps, BalanceConstants.kMaxBalanceSpeedMps));
+                break;
+            case LOCKED:
+                swerveSubsystem.lockWheels();
+                break;
+        }
+
+        recordBalanceTime(level);
+    }
+
+    private void driveFieldRelative(double vx){
+        swerveSubsystem.drive(ChassisSpeeds.fromFieldRelativeSpeeds(vx, 0.0, 0.0, swerveSubsystem.getPose().getRotation()));
+    }
+
+    private void recordBalanceTime(boolean level){
+        double now = Timer.getFPGATimestamp();
+        if (!level || state == State.CLIMBING){
+            levelSince = -1.0;
+            return;
+        }
+        if (levelSince < 0.0){
+            levelSince = now;
+        }
+        if (!balancePublished && now - levelSince >= BalanceConstants.kSettleSeconds){
+            SmartDashboard.putNumber(naive ? "Naive Balance Time s" : "Balance Time s", levelSince - startTime);
+            balancePublished = true;
+        }
+    }
+
+    @Override
+    public void end(boolean interrupted){
+        swerveSubsystem.stopSwerve();
+        SmartDashboard.putBoolean("Balanced", balancePublished);
+    }
+
+    @Override
+    public boolean isFinished(){
+        return false;
+    }
+}
@@ -0,0 +1,79 @@
+package frc.robot.commands.swerve;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import frc.robot.subsystems.SwerveSubsystem;
+
+// Drives field relative along +X while rotating, then reports how long it took to reach 95% of the
+// requested speed and how far the direction of travel drifted from +X on average. Run it with the
+// setpoint generator on and off to compare.
+public class DriveResponseTestCmd extends CommandBase{
+
+    private final SwerveSubsystem swerveSubsystem;
+    private final double speed, turningSpeed, durationSeconds;
+
+    private double startTime, lastTime;
+    private Pose2d lastPose;
+    private double timeToSpeed;
+    private double driftSum;
+    private int driftSamples;
+
+    public DriveResponseTestCmd(SwerveSubsystem swerveSubsystem, double speed, double turningSpeed, double durationSeconds){
+        this.swerveSubsystem = swerveSubsystem;
+        this.speed = speed;
+        this.turningSpeed = turningSpeed;
+        this.durationSeconds = durationSeconds;
+        addRequirements(swerveSubsystem);
+    }
+
+    @Override
+    public void initialize(){
+        swerveSubsystem.resetSetpoint();
+        startTime = Timer.getFPGATimestamp();
+        lastTime = startTime;
+        lastPose = swerveSubsystem.getPose();
+        timeToSpeed = -1.0;
+        driftSum = 0.0;
+        driftSamples = 0;
+    }
+
+    @Override
+    public void execute(){
+        swerveSubsystem.drive(ChassisSpeeds.fromFieldRelativeSpeeds(speed, 0.0, turningSpeed, swerveSubsystem.getRotation2d()));
+
+        double now = Timer.getFPGATimestamp();
+        Pose2d pose = swerveSubsystem.getPose();
+        double dt = now - lastTime;
+        if (dt > 0.0){
+            double vx = (pose.getX() - lastPose.getX()) / dt;
+            double vy = (pose.getY() - lastPose.getY()) / dt;
+
+            if (timeToSpeed < 0.0 && Math.hypot(vx, vy) >= 0.95 * Math.abs(speed)){
+                timeToSpeed = now - startTime;
+            }
+            // Only count drift once up to speed, the direction is meaningless while starting
+            if (timeToSpeed >= 0.0){
+                driftSum += Math.abs(Math.atan2(vy, vx * Math.signum(speed)));
+                driftSamples++;
+            }
+        }
+        lastTime = now;
+        lastPose = pose;
+    }
+
+    @Override
+    public void end(boolean interrupted){
+        swerveSubsystem.stopSwerve();
+        SmartDashboard.putNumber("Drive Response Time s", timeToSpeed);
+        SmartDashboard.putNumber("Drive Heading Drift deg", driftSamples > 0 ? Math.toDegrees(driftSum / driftSamples) : 0.0);
+    }
+
+    @Override
+    public boolean isFinished(){
+        return Timer.getFPGATimestamp() - startTime >= durationSeconds;
+    }
+    
+}
@@ -0,0 +1,102 @@
+package frc.robot.commands.swerve;
+
+import java.util.function.Supplier;
+
+import edu.wpi.first.math.controller.ProfiledPIDController;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import frc.robot.subsystems.SwerveSubsystem;
+import frc.robot.utils.Constants.AlignConstants;
+
+// Drives to a field pose with profiled x, y and theta control. The target is picked once when the
+// command starts (e.g. the nearest node), and time-to-aligned and final error are published when it ends.
+public class DriveToPoseCmd extends CommandBase{
+
+    private final SwerveSubsystem swerveSubsystem;
+    private final Supplier<Pose2d> targetSupplier;
+
+    private final ProfiledPIDController xController, yController, thetaController;
+
+    private Pose2d target;
+    private double startTime;
+    private double alignedTime;
+    private int alignCount = 0;
+
+    public DriveToPoseCmd(SwerveSubsystem swerveSubsystem, Supplier<Pose2d> targetSupplier){
+        this.swerveSubsystem = swerveSubsystem;
+        this.targetSupplier = targetSupplier;
+
+        TrapezoidProfile.Constraints translationConstraints = new TrapezoidProfile.Constraints(
+            AlignConstants.kMaxTranslationSpeedMps, AlignConstants.kMaxTranslationAccelMps2);
+        xController = new ProfiledPIDController(AlignConstants.kTranslationP, 0, 0, translationConstraints);
+        yController = new ProfiledPIDController(AlignConstants.kTranslationP, 0, 0, translationConstraints);
+        thetaController = new ProfiledPIDController(AlignConstants.kThetaP, 0, 0, new TrapezoidProfile.Constraints(
+            AlignConstants.kMaxAngularSpeedRadPerSec, AlignConstants.kMaxAngularAccelRadPerSec2));
+        thetaController.enableContinuousInput(-Math.PI, Math.PI);
+
+        addRequirements(swerveSubsystem);
+    }
+
+    @Override
+    public void initialize(){
+        target = targetSupplier.get();
+        Pose2d pose = swerveSubsystem.getPose();
+
+        // Start the profiles from where the robot is and how it's moving, not from rest at zero
+        Translation2d velocity = swerveSubsystem.getFieldVelocity();
+        xController.reset(pose.getX(), velocity.getX());
+        yController.reset(pose.getY(), velocity.getY());
+        thetaController.reset(pose.getRotation().getRadians(), swerveSubsystem.getTurnRate());
+        xController.setGoal(target.getX());
+        yController.setGoal(target.getY());
+        thetaController.setGoal(target.getRotation().getRadians());
+
+        swerveSubsystem.resetSetpoint();
+        startTime = Timer.getFPGATimestamp();
+        alignedTime = -1.0;
+    }
+
+    @Override
+    public void execute(){
+        Pose2d pose = swerveSubsystem.getPose();
+
+        // Profile velocity as feedforward, PID on the profile position
+        double xSpeed = xController.calculate(pose.getX()) + xController.getSetpoint().velocity;
+        double ySpeed = yController.calculate(pose.getY()) + yController.getSetpoint().velocity;
+        double turningSpeed = thetaController.calculate(pose.getRotation().getRadians()) + thetaController.getSetpoint().velocity;
+
+        swerveSubsystem.drive(ChassisSpeeds.fromFieldRelativeSpeeds(xSpeed, ySpeed, turningSpeed, pose.getRotation()));
+
+        if (alignedTime < 0.0 && isAligned(pose)){
+            alignedTime = Timer.getFPGATimestamp() - startTime;
+        }
+    }
+
+    private boolean isAligned(Pose2d pose){
+        return pose.getTranslation().getDistance(target.getTranslation()) < AlignConstants.kTranslationToleranceMeters
+            && Math.abs(pose.getRotation().minus(target.getRotation()).getRadians()) < AlignConstants.kThetaToleranceRadians;
+    }
+
+    @Override
+    public void end(boolean interrupted){
+        swerveSubsystem.stopSwerve();
+
+        Pose2d pose = swerveSubsystem.getPose();
+        alignCount++;
+        SmartDashboard.putNumber("Align Time s", alignedTime);
+        SmartDashboard.putNumber("Align Error m", pose.getTranslation().getDistance(target.getTranslation()));
+        SmartDashboard.putNumber("Align Error deg", Math.abs(pose.getRotation().minus(target.getRotation()).getDegrees()));
+        SmartDashboard.putNumber("Align Count", alignCount);
+    }
+
+    @Override
+    public boolean isFinished(){
+        return alignedTime >= 0.0;
+    }
+    
+}
@@ -0,0 +1,99 @@
+package frc.robot.commands.swerve;
+
+import java.util.function.Supplier;
+
+import com.pathplanner.lib.PathPlannerTrajectory;
+import com.pathplanner.lib.PathPlannerTrajectory.PathPlannerState;
+import com.pathplanner.lib.controllers.PPHolonomicDriveController;
+
+import edu.wpi.first.math.controller.PIDController;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import frc.robot.subsystems.SwerveSubsystem;
+import frc.robot.utils.PathGenerationService;
+import frc.robot.utils.Constants.AlignConstants;
+import frc.robot.utils.Constants.PathConstants;
+
+// Follows a path generated on the fly from the current pose and velocity to a target. A cached path
+// from the same area is followed right away if there is one, and the exact path takes over as soon
+// as the background thread finishes it. It starts where the robot was when it was requested, so
+// sampling it by time since the request picks up where the robot is now.
+public class GeneratedPathCmd extends CommandBase{
+
+    private final SwerveSubsystem swerveSubsystem;
+    private final Supplier<Pose2d> targetSupplier;
+    private final PathGenerationService pathGenerationService;
+    private final PPHolonomicDriveController controller;
+
+    private Pose2d target;
+    private PathGenerationService.Request request;
+    private PathPlannerTrajectory trajectory;
+    private double startTime;
+    private boolean followingExactPath;
+
+    public GeneratedPathCmd(SwerveSubsystem swerveSubsystem, Supplier<Pose2d> targetSupplier, PathGenerationService pathGenerationService){
+        this.swerveSubsystem = swerveSubsystem;
+        this.targetSupplier = targetSupplier;
+        this.pathGenerationService = pathGenerationService;
+        this.controller = new PPHolonomicDriveController(
+            new PIDController(PathConstants.kTranslationP, 0, 0),
+            new PIDController(PathConstants.kTranslationP, 0, 0),
+            new PIDController(PathConstants.kRotationP, 0, 0));
+        addRequirements(swerveSubsystem);
+    }
+
+    @Override
+    public void initialize(){
+        target = targetSupplier.get();
+        Pose2d pose = swerveSubsystem.getPose();
+
+        request = pathGenerationService.generate(pose, swerveSubsystem.getFieldVelocity(), target);
+        trajectory = pathGenerationService.getCached(pose, target);
+        startTime = Timer.getFPGATimestamp();
+        followingExactPath = false;
+
+        swerveSubsystem.resetSetpoint();
+    }
+
+    @Override
+    public void execute(){
+
+        // Swap in the exact path once it's ready
+        if (!followingExactPath && request.isReady()){
+            trajectory = request.getTrajectory();
+            startTime = request.getRequestTime();
+            followingExactPath = true;
+        }
+
+        // Nothing to follow for the first loop or two without a cached path, the modules keep their
+        // last setpoint so the robot carries on the way it was going
+        if (trajectory == null){
+            return;
+        }
+
+        PathPlannerState state = (PathPlannerState) trajectory.sample(Timer.getFPGATimestamp() - startTime);
+        swerveSubsystem.drive(controller.calculate(swerveSubsystem.getPose(), state));
+    }
+
+    @Override
+    public void end(boolean interrupted){
+        swerveSubsystem.stopSwerve();
+    }
+
+    @Override
+    public boolean isFinished(){
+        if (request.hasFailed() && trajectory == null){
+            return true;
+        }
+        // The cached path is only a stand-in while the exact one is coming, if that failed it's all there is
+        if (!followingExactPath && !request.hasFailed()){
+            return false;
+        }
+
+        double elapsed = Timer.getFPGATimestamp() - startTime;
+        boolean atTarget = swerveSubsystem.getPose().getTranslation().getDistance(target.getTranslation()) < AlignConstants.kTranslationToleranceMeters;
+        return elapsed >= trajectory.getTotalTimeSeconds() && (atTarget || elapsed >= trajectory.getTotalTimeSeconds() + PathConstants.kEndTimeoutSeconds);
+    }
+    
+}
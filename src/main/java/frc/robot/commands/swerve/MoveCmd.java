@@ -1,10 +1,8 @@
 package frc.robot.commands.swerve;
 
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
-import edu.wpi.first.math.kinematics.SwerveModuleState;
 import edu.wpi.first.wpilibj2.command.CommandBase;
 import frc.robot.subsystems.SwerveSubsystem;
-import frc.robot.utils.Constants.DriveConstants;
 
 public class MoveCmd extends CommandBase{
 
@@ -22,6 +20,7 @@ public class MoveCmd extends CommandBase{
 
     @Override
     public void initialize(){
+        swerveSubsystem.resetSetpoint();
     }
 
     @Override
@@ -29,8 +28,7 @@ public class MoveCmd extends CommandBase{
         ChassisSpeeds chassisSpeeds;
         chassisSpeeds = new ChassisSpeeds(xSpeed, ySpeed, turningSpeed);
 
-        SwerveModuleState[] moduleStates = DriveConstants.kSwerveDriveKinematics.toSwerveModuleStates(chassisSpeeds);
-        swerveSubsystem.setModuleStates(moduleStates);
+        swerveSubsystem.drive(chassisSpeeds);
     }
 
     @Override
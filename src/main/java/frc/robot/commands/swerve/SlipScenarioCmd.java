@@ -0,0 +1,29 @@
+package frc.robot.commands.swerve;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.wpilibj2.command.InstantCommand;
+import edu.wpi.first.wpilibj2.command.SequentialCommandGroup;
+import edu.wpi.first.wpilibj2.command.WaitCommand;
+import frc.robot.subsystems.SwerveSubsystem;
+import frc.robot.utils.Constants.DriveConstants;
+
+// Simulation only: full speed launches, a spin and a hit from the side. Compare "Odometry Error"
+// (slip rejecting) against "Raw Odometry Error" on the dashboard once it finishes.
+public class SlipScenarioCmd extends SequentialCommandGroup{
+
+    public SlipScenarioCmd(SwerveSubsystem swerveSubsystem){
+
+        double speed = DriveConstants.kPhysicalMaxSpeedMetersPerSecond;
+
+        addCommands(
+            new InstantCommand(() -> swerveSubsystem.resetOdometry(new Pose2d(2.0, 2.75, new Rotation2d())), swerveSubsystem),
+            new MoveCmd(swerveSubsystem, speed, 0.0, 0.0).withTimeout(0.75),
+            new MoveCmd(swerveSubsystem, -speed, 0.0, 0.0).withTimeout(0.75),
+            new MoveCmd(swerveSubsystem, 0.0, speed, 0.0).withTimeout(0.5),
+            new MoveCmd(swerveSubsystem, speed / 2, -speed / 2, DriveConstants.kDriveMaxAngularSpeedRadiansPerSecond).withTimeout(1.0),
+            new InstantCommand(() -> swerveSubsystem.simulateCollision(0.0, 0.3)),
+            new MoveCmd(swerveSubsystem, -speed, 0.0, 0.0).withTimeout(0.75),
+            new WaitCommand(0.5));
+    }
+}
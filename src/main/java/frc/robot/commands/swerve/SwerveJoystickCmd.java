@@ -3,13 +3,20 @@ package frc.robot.commands.swerve;
 import java.util.function.Supplier;
 
 import edu.wpi.first.math.filter.SlewRateLimiter;
+import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
+import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.CommandBase;
 import frc.robot.subsystems.SwerveSubsystem;
+import frc.robot.utils.CenterOfGravityLimiter;
+import frc.robot.utils.HeadingSnapController;
+import frc.robot.utils.LatencyTracer;
 import frc.robot.utils.Constants.DriveConstants;
 import frc.robot.utils.Constants.IOConstants;
+import frc.robot.utils.Constants.LatencyConstants;
 
 public class SwerveJoystickCmd extends CommandBase{
     
@@ -17,15 +24,35 @@ public class SwerveJoystickCmd extends CommandBase{
     private final Supplier<Double> xSpdFunction, ySpdFunction, turningSpdFunction;
     private final Supplier<Boolean> fieldOrientedFunction;
     private final SlewRateLimiter xLimiter, yLimiter, turningLimiter;
+    private final Supplier<Integer> headingSnapFunction;
+    private final HeadingSnapController headingSnapController = new HeadingSnapController();
+    private int lastPov = -1;
+    private final CenterOfGravityLimiter cgLimiter;
+    private double xSpeed, ySpeed, turningSpeed;
+    private double lastExecuteTime = -1.0;
+
+    // A stick step starts a trace, see LatencyTracer
+    private final LatencyTracer.Source latencySource = LatencyTracer.getInstance().addSource("Drive Sticks", "Swerve");
+    private double lastXInput, lastYInput, lastTurningInput;
 
     public SwerveJoystickCmd(SwerveSubsystem swerveSubsystem, 
     Supplier<Double> xSpdFunction, Supplier<Double> ySpdFunction, Supplier<Double> turningSpdFunction,
     Supplier<Boolean> fieldOrientedFunction){
+        this(swerveSubsystem, xSpdFunction, ySpdFunction, turningSpdFunction, fieldOrientedFunction, () -> -1, null);
+    }
+
+    // Heading snap takes a POV angle (-1 when released). With a limiter, speed and acceleration are
+    // capped by where the arm puts the center of gravity.
+    public SwerveJoystickCmd(SwerveSubsystem swerveSubsystem, 
+    Supplier<Double> xSpdFunction, Supplier<Double> ySpdFunction, Supplier<Double> turningSpdFunction,
+    Supplier<Boolean> fieldOrientedFunction, Supplier<Integer> headingSnapFunction, CenterOfGravityLimiter cgLimiter){
         this.swerveSubsystem = swerveSubsystem;
+        this.cgLimiter = DriveConstants.kUseCenterOfGravityLimits ? cgLimiter : null;
         this.xSpdFunction = xSpdFunction;
         this.ySpdFunction = ySpdFunction;
         this.turningSpdFunction = turningSpdFunction;
         this.fieldOrientedFunction = fieldOrientedFunction;
+        this.headingSnapFunction = headingSnapFunction;
         this.xLimiter = new SlewRateLimiter(DriveConstants.kMaxAccelerationRateUnitsPerSecond);
         this.yLimiter = new SlewRateLimiter(DriveConstants.kMaxAccelerationRateUnitsPerSecond);
         this.turningLimiter = new SlewRateLimiter(DriveConstants.kMaxTurningRateUnitsPerSecond);
@@ -34,45 +61,108 @@ public class SwerveJoystickCmd extends CommandBase{
 
     @Override
     public void initialize(){
+        swerveSubsystem.resetSetpoint();
+        if (cgLimiter != null){
+            cgLimiter.reset();
+        }
+        headingSnapController.cancel();
+        lastExecuteTime = -1.0;
     }
 
     @Override
     public void execute(){
 
-        double xSpeed = xSpdFunction.get();
-        double ySpeed = ySpdFunction.get();
-        double turningSpeed = turningSpdFunction.get();
+        // POV picks a preset heading, the driver keeps translation. The gyro is zeroed facing away from
+        // the driver, so up faces the far end (substations), down faces the grid. POV angles are clockwise.
+        int pov = headingSnapFunction.get();
+        if (pov >= 0 && pov != lastPov){
+            headingSnapController.setTarget(Rotation2d.fromDegrees(-pov), swerveSubsystem.getRotation2d(),
+                swerveSubsystem.getTurnRate());
+        }
+        lastPov = pov;
 
-        xSpeed = Math.abs(xSpeed) > IOConstants.kDeadband ? xSpeed : 0.0;
-        ySpeed = Math.abs(ySpeed) > IOConstants.kDeadband ? ySpeed : 0.0;
-        turningSpeed = Math.abs(turningSpeed) > IOConstants.kDeadband ? turningSpeed : 0.0;
+        double xInput = xSpdFunction.get();
+        double yInput = ySpdFunction.get();
+        double turningInput = turningSpdFunction.get();
+        if (Math.abs(xInput - lastXInput) > LatencyConstants.kStickStepThreshold
+                || Math.abs(yInput - lastYInput) > LatencyConstants.kStickStepThreshold
+                || Math.abs(turningInput - lastTurningInput) > LatencyConstants.kStickStepThreshold){
+            latencySource.sample();
+        }
+        lastXInput = xInput;
+        lastYInput = yInput;
+        lastTurningInput = turningInput;
 
-        xSpeed = xLimiter.calculate(xSpeed) * DriveConstants.kDriveMaxSpeedMetersPerSecond;
-        ySpeed = yLimiter.calculate(ySpeed) * DriveConstants.kDriveMaxSpeedMetersPerSecond;
-        turningSpeed = turningLimiter.calculate(turningSpeed) * DriveConstants.kDriveMaxAngularSpeedRadiansPerSecond;
+        ChassisSpeeds chassisSpeeds = calculateChassisSpeeds(xInput, yInput, turningInput,
+            fieldOrientedFunction.get(), swerveSubsystem.getRotation2d());
+
+        // Acceleration limits over the time since the last loop, not the nominal period
+        double now = Timer.getFPGATimestamp();
+        double dt = lastExecuteTime < 0.0 ? TimedRobot.kDefaultPeriod : now - lastExecuteTime;
+        lastExecuteTime = now;
+        if (cgLimiter != null){
+            cgLimiter.update();
+            chassisSpeeds = cgLimiter.limit(chassisSpeeds, dt);
+        }
 
         SmartDashboard.putNumber("X Speed", xSpeed);
         SmartDashboard.putNumber("Y Speed", ySpeed);
         SmartDashboard.putNumber("Turn Speed", turningSpeed);
         SmartDashboard.putBoolean("A", fieldOrientedFunction.get());
 
+        swerveSubsystem.drive(chassisSpeeds);
+        latencySource.dispatch();
+    }
+
+    // Joystick math split out from execute() so it can be run without driving the modules (JIT warmup)
+    public SwerveModuleState[] calculateModuleStates(double xInput, double yInput, double turningInput, boolean fieldOriented, Rotation2d heading){
+        return DriveConstants.kSwerveDriveKinematics.toSwerveModuleStates(
+            calculateChassisSpeeds(xInput, yInput, turningInput, fieldOriented, heading));
+    }
+
+    public ChassisSpeeds calculateChassisSpeeds(double xInput, double yInput, double turningInput, boolean fieldOriented, Rotation2d heading){
+
+        xSpeed = Math.abs(xInput) > IOConstants.kDeadband ? xInput : 0.0;
+        ySpeed = Math.abs(yInput) > IOConstants.kDeadband ? yInput : 0.0;
+        turningSpeed = Math.abs(turningInput) > IOConstants.kDeadband ? turningInput : 0.0;
+
+        // The setpoint generator limits acceleration along the actual direction of travel, the per axis
+        // limiters would only slow it down
+        if (!DriveConstants.kUseSetpointGenerator){
+            xSpeed = xLimiter.calculate(xSpeed);
+            ySpeed = yLimiter.calculate(ySpeed);
+        }
+        // With the CG limiter the sticks go to full speed and the arm pose sets the cap instead of the
+        // blanket driver limit, so the robot is fast when stowed and slow when extended
+        double maxSpeed = cgLimiter != null ? DriveConstants.kPhysicalMaxSpeedMetersPerSecond : DriveConstants.kDriveMaxSpeedMetersPerSecond;
+        xSpeed *= maxSpeed;
+        ySpeed *= maxSpeed;
+        turningSpeed = turningLimiter.calculate(turningSpeed) * DriveConstants.kDriveMaxAngularSpeedRadiansPerSecond;
+
+        // Touching the rotation stick takes back control from a heading snap
+        if (headingSnapController.isActive()){
+            if (turningSpeed != 0.0){
+                headingSnapController.cancel();
+            } else {
+                turningSpeed = headingSnapController.calculate(heading);
+            }
+        }
+
         ChassisSpeeds chassisSpeeds;
 
         //chassisSpeeds = ChassisSpeeds.fromFieldRelativeSpeeds(xSpeed, ySpeed, turningSpeed, swerveSubsystem.getRotation2d());
 
         // Leave commented for now until other works
-        if (fieldOrientedFunction.get()) {
+        if (fieldOriented) {
             // Relative to field
             chassisSpeeds = ChassisSpeeds.fromFieldRelativeSpeeds(
-                xSpeed, ySpeed, turningSpeed, swerveSubsystem.getRotation2d());
+                xSpeed, ySpeed, turningSpeed, heading);
         } else {
             // Relative to robot
             chassisSpeeds = new ChassisSpeeds(xSpeed, ySpeed, turningSpeed);
         }
-        
-        SwerveModuleState[] moduleStates = DriveConstants.kSwerveDriveKinematics.toSwerveModuleStates(chassisSpeeds);
-        swerveSubsystem.setModuleStates(moduleStates);
-        SmartDashboard.putString("Module States", moduleStates.toString());
+
+        return chassisSpeeds;
     }
 
     @Override
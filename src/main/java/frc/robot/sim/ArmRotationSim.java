@@ -0,0 +1,138 @@
+// Simple arm rotation simulation
+// The arm is the same point mass model the state-space controller uses, with gravity and hard
+// stops added. REV's simulation doesn't run the SparkMax closed loop, so SmartMotion is emulated
+// here (trapezoid profile in encoder rotations, P on the error plus the arbitrary feedforward) to
+// compare against the state-space mode on equal terms. The brake locks the arm where it is once the
+// solenoid has had kSimActuationSeconds to move, and lets go the same time after it's released.
+
+package frc.robot.sim;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
+import edu.wpi.first.math.util.Units;
+
+import frc.robot.utils.ArmStateSpaceController;
+import frc.robot.utils.GravityModel;
+import frc.robot.utils.Constants.ArmBrakeConstants;
+import frc.robot.utils.Constants.ArmConstants;
+import frc.robot.utils.Constants.ArmStateSpaceConstants;
+
+public class ArmRotationSim {
+
+    private final DCMotor motor = DCMotor.getNEO(1);
+
+    private double angleRadians;
+    private double velocityRadPerSec = 0.0;
+    private double currentAmps = 0.0;
+
+    // Brake as commanded, and as the cylinder actually is
+    private boolean brakeCommanded = false;
+    private boolean brakeEngaged = false;
+    private double brakeActuationRemaining = 0.0;
+
+    // Either a voltage from the rio or a SmartMotion reference the "SparkMax" follows
+    private boolean smartMotion = false;
+    private double inputVolts = 0.0;
+    private double smartMotionGoalRotations = 0.0;
+    private double smartMotionArbFF = 0.0;
+    private TrapezoidProfile.State smartMotionReference = new TrapezoidProfile.State();
+    private TrapezoidProfile.Constraints smartMotionConstraints = new TrapezoidProfile.Constraints(
+        ArmConstants.rotateMaxVel / 60.0, ArmConstants.rotateMaxAcc / 60.0);
+
+    public ArmRotationSim(double angleRadians){
+        reset(angleRadians);
+    }
+
+    public void reset(double angleRadians){
+        this.angleRadians = angleRadians;
+        velocityRadPerSec = 0.0;
+        smartMotionReference = new TrapezoidProfile.State(Units.radiansToRotations(angleRadians), 0.0);
+        inputVolts = 0.0;
+        brakeCommanded = false;
+        brakeEngaged = false;
+        brakeActuationRemaining = 0.0;
+    }
+
+    public void setBrake(boolean engaged){
+        if (engaged != brakeCommanded){
+            brakeCommanded = engaged;
+            brakeActuationRemaining = ArmBrakeConstants.kSimActuationSeconds;
+        }
+    }
+
+    public void setInputVoltage(double volts){
+        smartMotion = false;
+        inputVolts = volts;
+    }
+
+    public void setSmartMotionReference(double goalRadians, double arbFFPercent){
+        if (!smartMotion){
+            smartMotionReference = new TrapezoidProfile.State(Units.radiansToRotations(angleRadians), Units.radiansToRotations(velocityRadPerSec));
+        }
+        smartMotion = true;
+        smartMotionGoalRotations = Units.radiansToRotations(goalRadians);
+        smartMotionArbFF = arbFFPercent;
+    }
+
+    public void setSmartMotionScale(double scale){
+        smartMotionConstraints = new TrapezoidProfile.Constraints(
+            ArmConstants.rotateMaxVel * scale / 60.0, ArmConstants.rotateMaxAcc * scale / 60.0);
+    }
+
+    public void update(double dtSeconds, double extensionMeters, double wristRadians){
+        double volts = inputVolts;
+        if (smartMotion){
+            smartMotionReference = new TrapezoidProfile(smartMotionConstraints,
+                new TrapezoidProfile.State(smartMotionGoalRotations, 0.0), smartMotionReference).calculate(dtSeconds);
+            double error = smartMotionReference.position - Units.radiansToRotations(angleRadians);
+            double output = ArmConstants.rotatekP * error + ArmConstants.rotatekFF * smartMotionReference.velocity + smartMotionArbFF;
+            volts = MathUtil.clamp(output, ArmConstants.rotateMinOutput, ArmConstants.rotateMaxOutput) * ArmStateSpaceConstants.kNominalVoltage;
+        }
+        volts = MathUtil.clamp(volts, -ArmStateSpaceConstants.kNominalVoltage, ArmStateSpaceConstants.kNominalVoltage);
+
+        if (brakeEngaged != brakeCommanded){
+            brakeActuationRemaining -= dtSeconds;
+            if (brakeActuationRemaining <= 0.0){
+                brakeEngaged = brakeCommanded;
+            }
+        }
+
+        double gearing = ArmStateSpaceConstants.kArmGearing;
+        currentAmps = motor.getCurrent(velocityRadPerSec * gearing, volts);
+        double motorTorque = motor.getTorque(currentAmps) * gearing;
+
+        // The brake takes whatever load there is
+        if (brakeEngaged){
+            velocityRadPerSec = 0.0;
+            return;
+        }
+
+        double gravityTorque = GravityModel.calculateArmTorque(angleRadians, extensionMeters, wristRadians);
+
+        velocityRadPerSec += (motorTorque - gravityTorque) / ArmStateSpaceController.getMomentOfInertia(extensionMeters) * dtSeconds;
+        angleRadians += velocityRadPerSec * dtSeconds;
+
+        // Hard stops just past the soft limits
+        if (angleRadians < ArmStateSpaceConstants.kSimMinAngleRadians || angleRadians > ArmStateSpaceConstants.kSimMaxAngleRadians){
+            angleRadians = MathUtil.clamp(angleRadians, ArmStateSpaceConstants.kSimMinAngleRadians, ArmStateSpaceConstants.kSimMaxAngleRadians);
+            velocityRadPerSec = 0.0;
+        }
+    }
+
+    public double getAngleRadians(){
+        return angleRadians;
+    }
+
+    public double getVelocityRadPerSec(){
+        return velocityRadPerSec;
+    }
+
+    public double getCurrentAmps(){
+        return Math.abs(currentAmps);
+    }
+
+    public boolean isBrakeEngaged(){
+        return brakeEngaged;
+    }
+}
@@ -0,0 +1,74 @@
+// Charge station as a seesaw hinged at its center
+// The robot's weight times its distance from the hinge tips the station, friction in the hinge damps
+// it, and it stops at the end stops. Tilt is positive when the +X end is up, so a robot on the -X
+// half pushes it positive. Only the blue station is modeled, the red one is its mirror image and
+// tests just use the blue side.
+
+package frc.robot.sim;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+
+import frc.robot.utils.Constants.CenterOfGravityConstants;
+import frc.robot.utils.Constants.FieldConstants;
+import frc.robot.utils.Constants.SimConstants;
+
+public class ChargeStationSim {
+
+    private static final double kGravity = 9.81;
+
+    private final double robotMassKg = CenterOfGravityConstants.kChassisMassKg + CenterOfGravityConstants.kArmMassKg
+        + CenterOfGravityConstants.kWristMassKg;
+
+    private double angleRadians;
+    private double rateRadPerSec = 0.0;
+    private boolean robotOnStation = false;
+
+    public ChargeStationSim(){
+        reset();
+    }
+
+    // Resting on its -X end, the way it sits before a robot drives on from the community
+    public void reset(){
+        angleRadians = SimConstants.kChargeStationMaxAngleRadians;
+        rateRadPerSec = 0.0;
+    }
+
+    public void update(double dtSeconds, Pose2d robotPose){
+        double offset = robotPose.getX() - FieldConstants.kBlueChargeStationCenterX;
+        robotOnStation = Math.abs(offset) < FieldConstants.kChargeStationHalfLengthMeters
+            && robotPose.getY() > FieldConstants.kChargeStationMinY && robotPose.getY() < FieldConstants.kChargeStationMaxY;
+
+        double torque = -SimConstants.kChargeStationDamping * rateRadPerSec;
+        double inertia = SimConstants.kChargeStationInertia;
+        if (robotOnStation){
+            torque += -robotMassKg * kGravity * offset * Math.cos(angleRadians);
+            inertia += robotMassKg * offset * offset;
+        }
+
+        rateRadPerSec += torque / inertia * dtSeconds;
+        angleRadians += rateRadPerSec * dtSeconds;
+
+        // End stops
+        double max = SimConstants.kChargeStationMaxAngleRadians;
+        if (Math.abs(angleRadians) >= max){
+            angleRadians = MathUtil.clamp(angleRadians, -max, max);
+            rateRadPerSec = 0.0;
+        }
+    }
+
+    /* --------------------> Getters <-------------------- */
+
+    // What the robot's IMU sees, zero when it's not on the station
+    public double getRobotTiltRadians(){
+        return robotOnStation ? angleRadians : 0.0;
+    }
+
+    public double getRobotTiltRateRadPerSec(){
+        return robotOnStation ? rateRadPerSec : 0.0;
+    }
+
+    public double getAngleRadians(){
+        return angleRadians;
+    }
+}
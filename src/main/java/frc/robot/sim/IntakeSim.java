@@ -0,0 +1,78 @@
+// Simple intake roller simulation
+// REV's simulation doesn't model the motor, so IntakeSubsystem's game piece detection would never see
+// a piece arrive or leave. The roller is a NEO with a first order spin up, the SparkMax open loop ramp
+// on its output and the current limit on its current. A piece in the rollers stalls them to
+// kSimLoadedSpeedFraction of their speed, and reversing harder than kSimEjectMinOutput (the hold
+// doesn't) pushes it out after kSimEjectSeconds.
+// A piece waiting at the intake (presentGamePiece) is taken in as soon as the rollers run forward.
+
+package frc.robot.sim;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.math.util.Units;
+
+import frc.robot.utils.Constants.IntakeConstants;
+
+public class IntakeSim {
+
+    private final DCMotor motor = DCMotor.getNEO(1);
+
+    private double appliedOutput = 0.0;
+    private double velocityRpm = 0.0;
+    private double currentAmps = 0.0;
+
+    private boolean gamePieceLoaded = false;
+    private boolean gamePieceWaiting = false;
+    private double ejectingSeconds = 0.0;
+
+    public void reset(boolean gamePieceLoaded){
+        this.gamePieceLoaded = gamePieceLoaded;
+        gamePieceWaiting = false;
+        ejectingSeconds = 0.0;
+        appliedOutput = 0.0;
+        velocityRpm = 0.0;
+        currentAmps = 0.0;
+    }
+
+    public void presentGamePiece(){
+        gamePieceWaiting = true;
+    }
+
+    public void update(double dtSeconds, double output, int currentLimit){
+        double ramp = dtSeconds / IntakeConstants.openLoopRampRate;
+        appliedOutput += MathUtil.clamp(output - appliedOutput, -ramp, ramp);
+
+        if (appliedOutput > 0.0 && gamePieceWaiting){
+            gamePieceLoaded = true;
+            gamePieceWaiting = false;
+        }
+        if (gamePieceLoaded && appliedOutput < -IntakeConstants.kSimEjectMinOutput){
+            ejectingSeconds += dtSeconds;
+            if (ejectingSeconds >= IntakeConstants.kSimEjectSeconds){
+                gamePieceLoaded = false;
+            }
+        } else{
+            ejectingSeconds = 0.0;
+        }
+
+        double freeRpm = Units.radiansPerSecondToRotationsPerMinute(motor.freeSpeedRadPerSec) * appliedOutput;
+        double targetRpm = gamePieceLoaded ? freeRpm * IntakeConstants.kSimLoadedSpeedFraction : freeRpm;
+        velocityRpm += (targetRpm - velocityRpm) * Math.min(dtSeconds / IntakeConstants.kSimRollerTimeConstantSeconds, 1.0);
+
+        double volts = appliedOutput * motor.nominalVoltageVolts;
+        currentAmps = Math.min(Math.abs(motor.getCurrent(Units.rotationsPerMinuteToRadiansPerSecond(velocityRpm), volts)), currentLimit);
+    }
+
+    public double getVelocityRpm(){
+        return velocityRpm;
+    }
+
+    public double getCurrentAmps(){
+        return currentAmps;
+    }
+
+    public boolean hasGamePiece(){
+        return gamePieceLoaded;
+    }
+}
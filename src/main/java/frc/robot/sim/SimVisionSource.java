@@ -0,0 +1,89 @@
+// Simulated forward facing AprilTag camera
+// Sees the 2023 tags that are in range, inside the field of view and facing the robot, and reports the
+// ground truth pose plus noise that grows with distance squared. Frames arrive kSimCameraLatencySeconds
+// after they're captured and carry their capture timestamp, like a coprocessor pipeline would.
+
+package frc.robot.sim;
+
+import java.util.Random;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.wpilibj.Timer;
+
+import frc.robot.utils.VisionMeasurement;
+import frc.robot.utils.VisionSource;
+import frc.robot.utils.Constants.FieldConstants;
+import frc.robot.utils.Constants.VisionConstants;
+
+public class SimVisionSource implements VisionSource {
+
+    private final SwerveDriveSim driveSim;
+    private final Random random = new Random(2023);
+
+    // One frame in flight at a time
+    private final VisionMeasurement pending = new VisionMeasurement();
+    private boolean hasPending = false;
+    private double nextCaptureTime = 0.0;
+
+    public SimVisionSource(SwerveDriveSim driveSim){
+        this.driveSim = driveSim;
+    }
+
+    // Called from simulationPeriodic with the current FPGA time
+    public void update(double now){
+        if (hasPending || now < nextCaptureTime){
+            return;
+        }
+        nextCaptureTime = now + VisionConstants.kSimCameraPeriodSeconds;
+
+        Pose2d pose = driveSim.getTruePose();
+        double robotX = pose.getX();
+        double robotY = pose.getY();
+        double robotTheta = pose.getRotation().getRadians();
+
+        int tagCount = 0;
+        double distanceSum = 0.0;
+        for (int i = 0; i < FieldConstants.kTagX.length; i++){
+            double dx = FieldConstants.kTagX[i] - robotX;
+            double dy = FieldConstants.kTagY[i] - robotY;
+            double distance = Math.hypot(dx, dy);
+
+            boolean inRange = distance <= VisionConstants.kSimCameraMaxRangeMeters;
+            boolean inView = Math.abs(MathUtil.angleModulus(Math.atan2(dy, dx) - robotTheta)) <= VisionConstants.kSimCameraHalfFovRadians;
+            // Tag normal has to point back toward the robot
+            boolean facing = -dx * Math.cos(FieldConstants.kTagTheta[i]) - dy * Math.sin(FieldConstants.kTagTheta[i]) > 0.0;
+
+            if (inRange && inView && facing){
+                tagCount++;
+                distanceSum += distance;
+            }
+        }
+
+        if (tagCount == 0){
+            return;
+        }
+
+        double averageDistance = distanceSum / tagCount;
+        double distanceScale = averageDistance * averageDistance / tagCount;
+        double xyNoise = VisionConstants.kSimCameraXYNoisePerMeterSquared * distanceScale;
+        double thetaNoise = VisionConstants.kSimCameraThetaNoisePerMeterSquared * distanceScale;
+
+        pending.set(now,
+            robotX + random.nextGaussian() * xyNoise,
+            robotY + random.nextGaussian() * xyNoise,
+            robotTheta + random.nextGaussian() * thetaNoise,
+            averageDistance, tagCount);
+        hasPending = true;
+    }
+
+    @Override
+    public boolean poll(VisionMeasurement measurement){
+        if (!hasPending || Timer.getFPGATimestamp() < pending.timestampSeconds + VisionConstants.kSimCameraLatencySeconds){
+            return false;
+        }
+        measurement.set(pending.timestampSeconds, pending.x, pending.y, pending.theta, pending.averageTagDistance, pending.tagCount);
+        hasPending = false;
+        return true;
+    }
+}
@@ -0,0 +1,116 @@
+// Simple swerve drivetrain simulation
+// Each module follows its last commanded state (wheel speed through a first order lag, angle at a
+// limited steer rate). The ground under each wheel can only accelerate so fast, anything past that is
+// wheel spin the encoders see but the robot doesn't. The ground truth pose is integrated from the
+// ground speeds and the encoders are fed back through the modules. Wheel distances are also
+// under-reported by kSimWheelDistanceError so odometry drifts the way it does on carpet.
+
+package frc.robot.sim;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Twist2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+
+import frc.robot.subsystems.SwerveModule;
+import frc.robot.utils.Constants.DriveConstants;
+import frc.robot.utils.Constants.SimConstants;
+
+public class SwerveDriveSim {
+
+    private static final double kSteerRateRadPerSec = 4 * Math.PI;
+
+    private final SwerveModule[] modules;
+    private final SwerveModuleState[] trueStates; // Ground speed and angle
+    private final double[] wheelSpeeds;
+    private final double[] drivePositions;
+
+    private Pose2d truePose = new Pose2d();
+
+    // Robot relative chassis acceleration, what a perfect accelerometer would read
+    private double lastVx = 0.0;
+    private double lastVy = 0.0;
+    private double accelX = 0.0;
+    private double accelY = 0.0;
+
+    public SwerveDriveSim(SwerveModule... modules){
+        this.modules = modules;
+        trueStates = new SwerveModuleState[modules.length];
+        wheelSpeeds = new double[modules.length];
+        drivePositions = new double[modules.length];
+        for (int i = 0; i < modules.length; i++){
+            trueStates[i] = new SwerveModuleState();
+        }
+    }
+
+    public void update(double dtSeconds){
+
+        for (int i = 0; i < modules.length; i++){
+            SwerveModuleState desired = modules[i].getLastDesiredState();
+            SwerveModuleState state = trueStates[i];
+
+            // Wheel speed lags the command, the ground follows the wheel as fast as traction allows
+            wheelSpeeds[i] += (desired.speedMetersPerSecond - wheelSpeeds[i])
+                * Math.min(dtSeconds / SimConstants.kSimDriveTimeConstantSeconds, 1.0);
+            double maxSpeedChange = SimConstants.kSimModuleTractionMps2[i] * dtSeconds;
+            state.speedMetersPerSecond += MathUtil.clamp(wheelSpeeds[i] - state.speedMetersPerSecond, -maxSpeedChange, maxSpeedChange);
+
+            // Steering is rate limited along the shortest path
+            double steerError = MathUtil.angleModulus(desired.angle.getRadians() - state.angle.getRadians());
+            double maxStep = kSteerRateRadPerSec * dtSeconds;
+            state.angle = new Rotation2d(state.angle.getRadians() + MathUtil.clamp(steerError, -maxStep, maxStep));
+
+            drivePositions[i] += wheelSpeeds[i] * dtSeconds / SimConstants.kSimWheelDistanceError;
+            modules[i].setSimState(drivePositions[i], wheelSpeeds[i] / SimConstants.kSimWheelDistanceError,
+                state.angle.getRadians());
+        }
+
+        ChassisSpeeds speeds = DriveConstants.kSwerveDriveKinematics.toChassisSpeeds(trueStates);
+        if (dtSeconds > 0.0){
+            accelX = (speeds.vxMetersPerSecond - lastVx) / dtSeconds;
+            accelY = (speeds.vyMetersPerSecond - lastVy) / dtSeconds;
+        }
+        lastVx = speeds.vxMetersPerSecond;
+        lastVy = speeds.vyMetersPerSecond;
+
+        truePose = truePose.exp(new Twist2d(
+            speeds.vxMetersPerSecond * dtSeconds,
+            speeds.vyMetersPerSecond * dtSeconds,
+            speeds.omegaRadiansPerSecond * dtSeconds));
+    }
+
+    // Where the robot really is, which the real robot never gets to know
+    public Pose2d getTruePose(){
+        return truePose;
+    }
+
+    // What a perfect gyro would read
+    public Rotation2d getHeading(){
+        return truePose.getRotation();
+    }
+
+    public double getAccelX(){
+        return accelX;
+    }
+
+    public double getAccelY(){
+        return accelY;
+    }
+
+    // Shoves the robot without the wheels knowing, like getting hit by another robot
+    public void applyCollision(double dx, double dy, double durationSeconds){
+        truePose = new Pose2d(truePose.getX() + dx, truePose.getY() + dy, truePose.getRotation());
+        // Accelerometer spike until the next update(), robot relative
+        double cos = truePose.getRotation().getCos();
+        double sin = truePose.getRotation().getSin();
+        double scale = 1.0 / (durationSeconds * durationSeconds);
+        accelX = (cos * dx + sin * dy) * scale;
+        accelY = (-sin * dx + cos * dy) * scale;
+    }
+
+    public void resetPose(Pose2d pose){
+        truePose = pose;
+    }
+}
@@ -1,105 +1,122 @@
 package frc.robot.subsystems;
 
-import com.revrobotics.CANSparkMax;
-import com.revrobotics.SparkMaxAbsoluteEncoder;
-import com.revrobotics.SparkMaxPIDController;
-import com.revrobotics.CANSparkMax.ControlType;
-import com.revrobotics.CANSparkMax.IdleMode;
-import com.revrobotics.CANSparkMaxLowLevel.MotorType;
-import com.revrobotics.SparkMaxAbsoluteEncoder.Type;
+import java.util.function.DoubleSupplier;
 
 import edu.wpi.first.math.util.Units;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 
+import frc.robot.utils.BackgroundTaskScheduler;
+import frc.robot.utils.GravityModel;
+import frc.robot.utils.IndependentSubsystem;
+import frc.robot.utils.SparkMaxMechanism;
 import frc.robot.utils.Constants.ArmConstants;
+import frc.robot.utils.Constants.LoopConstants;
 
-public class ArmExtensionSubsystem extends SubsystemBase {
-
-    private CANSparkMax extensionMotor;
-
-    private SparkMaxAbsoluteEncoder extensionMotorEncoder;
-
-    private SparkMaxPIDController extensionPidController;
+public class ArmExtensionSubsystem extends SubsystemBase implements IndependentSubsystem {
 
     private final double armMaxExtension = Units.inchesToMeters(35.0);
     private final double armMinExtension = 0.0;
-    private double armExtensionSetpoint = armMinExtension;
+
+    private final SparkMaxMechanism extension = new SparkMaxMechanism(new SparkMaxMechanism.Config("Arm Extension", ArmConstants.extensionMotorId)
+        .inverted(ArmConstants.extensionMotorReversed)
+        .pid(ArmConstants.extensionkP, ArmConstants.extensionkI, ArmConstants.extensionkD, ArmConstants.extensionkIz, ArmConstants.extensionkFF)
+        .outputRange(ArmConstants.extensionMinOutput, ArmConstants.extensionMaxOutput)
+        .smartMotion(ArmConstants.extensionMaxVel, ArmConstants.extensionMinVel, ArmConstants.extensionMaxAcc, ArmConstants.allowedErr)
+        .currentLimit(ArmConstants.extensionMotorCurrentLimit)
+        .absoluteConversionFactor(ArmConstants.extensionEncoderConversionFactor)
+        .units(ArmConstants.extensionMetersPerNative, 0.0)
+        .unitsPerMotorRotation(ArmConstants.extensionMetersPerMotorRotation)
+        .scalingVerified(ArmConstants.extensionCalibrationVerified)
+        .range(armMinExtension, armMaxExtension)
+        .goalTolerance(ArmConstants.extensionGoalToleranceMeters));
+
+    // Gravity pulls the extension in more the higher the arm points. Level until it's set.
+    // Set once at startup, reads the arm's snapshot (see IndependentSubsystem)
+    private volatile DoubleSupplier armRotationSupplier = () -> 0.0;
+    private double lastFeedForward = 0.0;
+    private volatile double extensionSnapshot = 0.0;
 
     public ArmExtensionSubsystem() {
 
-        extensionMotorConfig();
+        extension.setSetpoint(armMinExtension);
+
+        snapshot(); // Seeded so the first loop doesn't see 0
+        BackgroundTaskScheduler.getInstance().register("Arm Extension Telemetry", LoopConstants.kTelemetryPeriodSeconds, this::updateSmartDashboard);
+
+    }
+
+    @Override
+    public void snapshot() {
+        extensionSnapshot = extension.getPosition();
+    }
 
-        armExtensionSetpoint = 0.0;
+    // Run by ParallelPeriodicRunner before the command scheduler
+    @Override
+    public void independentPeriodic() {
+        lastFeedForward = GravityModel.extensionFeedForward(armRotationSupplier.getAsDouble());
+        extension.apply(lastFeedForward);
+    }
 
+    public void updateSmartDashboard() {
+        extension.updateSmartDashboard();
+        SmartDashboard.putNumber("Arm Extension Gravity FF", lastFeedForward);
     }
 
     @Override
-    public void periodic() {
-        setArmExtension(armExtensionSetpoint);
-        SmartDashboard.putNumber("Arm Extension Motor Speed", extensionMotor.get());
-        SmartDashboard.putNumber("Arm Extension setpoint", armExtensionSetpoint);
+    public void simulationPeriodic() {
+        extension.simulationPeriodic();
     }
 
     public void extendArm(double speed) {
-        extensionMotor.set(speed);
+        extension.set(speed);
     }
 
+    // Put setpoint in meters, clamped to the extension's range
     public void setArmExtension(double armExtensionSetpoint) {
-        this.armExtensionSetpoint = armExtensionSetpoint;
-        // Put setpoint in meters
-
-        if (armExtensionSetpoint > armMaxExtension){
-            armExtensionSetpoint = armMaxExtension;
-        } else if (armExtensionSetpoint < armMinExtension){
-            armExtensionSetpoint = armMinExtension;
-        }
+        extension.setSetpoint(armExtensionSetpoint);
+    }
 
-        extensionPidController.setReference(armExtensionSetpoint, ControlType.kSmartMotion);
+    public void setArmRotationSupplier(DoubleSupplier armRotationSupplier){
+        this.armRotationSupplier = armRotationSupplier;
     }
 
     public void jogUp(){
-        armExtensionSetpoint++;
+        extension.adjustSetpoint(ArmConstants.extensionJogStepMeters);
     }
 
     public void jogDown(){
-        armExtensionSetpoint--;
+        extension.adjustSetpoint(-ArmConstants.extensionJogStepMeters);
     }
 
     public double getArmExtension(){
-        return extensionMotorEncoder.getPosition();
+        return extension.getPosition();
     }
 
-    public void extensionMotorConfig(){
-
-        extensionMotor = new CANSparkMax(ArmConstants.extensionMotorId, MotorType.kBrushless);
-        extensionMotor.restoreFactoryDefaults();
-
-        extensionMotorEncoder = extensionMotor.getAbsoluteEncoder(Type.kDutyCycle);
-        extensionMotor.setInverted(ArmConstants.extensionMotorReversed);
-        extensionMotorEncoder.setPositionConversionFactor(ArmConstants.extensionEncoderConversionFactor);
-        extensionPidController = extensionMotor.getPIDController();
-        extensionPidController.setFeedbackDevice(extensionMotorEncoder);
+    // As of the start of this loop's subsystem periodics, safe to read from any of them
+    public double getArmExtensionSnapshot(){
+        return extensionSnapshot;
+    }
 
-        extensionPidController.setP(ArmConstants.extensionkP);
-        extensionPidController.setI(ArmConstants.extensionkI);
-        extensionPidController.setD(ArmConstants.extensionkD);
-        extensionPidController.setIZone(ArmConstants.extensionkIz);
-        extensionPidController.setFF(ArmConstants.extensionkFF);
-        extensionPidController.setOutputRange(ArmConstants.extensionMinOutput, ArmConstants.extensionMaxOutput);
+    public boolean atGoal(){
+        return extension.atGoal();
+    }
 
-        extensionPidController.setSmartMotionMaxVelocity(ArmConstants.extensionMaxVel, 0);
-        extensionPidController.setSmartMotionMinOutputVelocity(ArmConstants.extensionMinVel, 0);
-        extensionPidController.setSmartMotionMaxAccel(ArmConstants.extensionMaxAcc, 0);
-        extensionPidController.setSmartMotionAllowedClosedLoopError(ArmConstants.allowedErr, 0);
+    // Set by PowerManager
+    public void setCurrentLimit(int amps){
+        extension.setCurrentLimit(amps);
+    }
 
-        extensionMotor.setSmartCurrentLimit(50);
-        extensionMotor.setIdleMode(IdleMode.kBrake);
-        extensionMotor.burnFlash();
+    public double getMotorCurrent(){
+        return extension.getCurrent();
+    }
 
+    // Puts the simulated extension somewhere and holds it there
+    public void resetSimulation(double meters){
+        extension.resetSimulation(meters);
     }
 
     public void stopArm(){
-        extensionMotor.set(0);
+        extension.set(0);
     }
 }
@@ -3,103 +3,333 @@ package frc.robot.subsystems;
 import com.ctre.phoenix.sensors.AbsoluteSensorRange;
 import com.ctre.phoenix.sensors.CANCoder;
 import com.ctre.phoenix.sensors.SensorInitializationStrategy;
-import com.revrobotics.CANSparkMax;
-import com.revrobotics.CANSparkMax.ControlType;
-import com.revrobotics.CANSparkMax.IdleMode;
-import com.revrobotics.SparkMaxAbsoluteEncoder;
-import com.revrobotics.SparkMaxPIDController;
-import com.revrobotics.SparkMaxPIDController.ArbFFUnits;
-import com.revrobotics.CANSparkMaxLowLevel.MotorType;
-import com.revrobotics.SparkMaxAbsoluteEncoder.Type;
+
+import java.util.function.DoubleSupplier;
 
 import edu.wpi.first.math.util.Units;
+import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.PneumaticsModuleType;
+import edu.wpi.first.wpilibj.RobotBase;
 import edu.wpi.first.wpilibj.Solenoid;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.smartdashboard.SendableChooser;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.sim.ArmRotationSim;
+import frc.robot.utils.ArmBrakeController;
+import frc.robot.utils.ArmStateSpaceController;
+import frc.robot.utils.BackgroundTaskScheduler;
+import frc.robot.utils.GravityModel;
+import frc.robot.utils.IndependentSubsystem;
+import frc.robot.utils.SparkMaxMechanism;
+import frc.robot.utils.Constants.ArmBrakeConstants;
 import frc.robot.utils.Constants.ArmConstants;
+import frc.robot.utils.Constants.ArmStateSpaceConstants;
+import frc.robot.utils.Constants.LoopConstants;
 
-public class ArmRotationSubsystem extends SubsystemBase {
+public class ArmRotationSubsystem extends SubsystemBase implements IndependentSubsystem {
 
-    private CANSparkMax rotateMotor;
-    private SparkMaxAbsoluteEncoder rotateMotorEncoder;
-    private CANCoder rotateCanCoder;
+    public enum ArmControlMode {SMART_MOTION, STATE_SPACE}
 
-    private SparkMaxPIDController rotatePidController;
+    private CANCoder rotateCanCoder;
+    private SparkMaxMechanism rotation;
 
     private Solenoid armBrakeSolenoid;
 
     private final double armMaxRotation = Math.PI;
     private final double armMinRotation = 0.0;
-    private double armRotationSetpoint = armMinRotation;
-
-    public ArmRotationSubsystem() {
 
+    /* --------------------> Brake <-------------------- */
+
+    // Holds the arm instead of the motor once it's settled, see ArmBrakeController
+    private final ArmBrakeController brakeController = new ArmBrakeController();
+    private boolean brakeOutput = false;
+    private volatile boolean manualBrake = false;
+
+    // Motor load over the match, to compare with the brake on and off
+    private double ampSeconds = 0.0;
+    private double squaredAmpSeconds = 0.0;
+    private double brakedSeconds = 0.0;
+    private double enabledSeconds = 0.0;
+    private double lastTelemetryTimestamp = -1.0;
+
+    /* --------------------> State-Space Control <-------------------- */
+
+    // Runs wherever applyArmRotation() does, so its period matches
+    private final ArmStateSpaceController stateSpaceController = new ArmStateSpaceController(
+        LoopConstants.kUseFastControlLoop ? LoopConstants.kFastLoopPeriodSeconds : 0.02);
+    private volatile ArmControlMode controlMode = ArmStateSpaceConstants.kUseStateSpaceByDefault
+        ? ArmControlMode.STATE_SPACE : ArmControlMode.SMART_MOTION;
+    private volatile boolean resetStateSpace = true;
+    private final SendableChooser<ArmControlMode> controlModeChooser = new SendableChooser<>();
+    private ArmControlMode lastChooserSelection;
+
+    // Only read, the extension and wrist subsystems own those motors. These are their snapshots (see
+    // IndependentSubsystem), the fast loop reads them too and gets the latest one.
+    private final DoubleSupplier armExtensionSupplier;
+    private final DoubleSupplier wristSupplier;
+    private volatile double lastFeedForward = 0.0;
+    private volatile double rotationSnapshot = 0.0;
+
+    /* --------------------> Simulation <-------------------- */
+
+    private final boolean simulated = RobotBase.isSimulation();
+    private final ArmRotationSim armSim;
+    private double lastSimTimestamp = -1.0;
+
+    public ArmRotationSubsystem(DoubleSupplier armExtensionSupplier, DoubleSupplier wristSupplier) {
+        this.armExtensionSupplier = armExtensionSupplier;
+        this.wristSupplier = wristSupplier;
+
+        // The CANCoder and the sim are where the position comes from, so they come before the motor
+        armSim = simulated ? new ArmRotationSim(Math.PI / 2.0) : null;
         rotateMotorConfig();
 
         armBrakeSolenoid = new Solenoid(PneumaticsModuleType.CTREPCM, 1);
 
-        armRotationSetpoint = getArmRotationRadians();
+        if (controlMode == ArmControlMode.STATE_SPACE) {
+            controlModeChooser.setDefaultOption("State Space", ArmControlMode.STATE_SPACE);
+            controlModeChooser.addOption("SmartMotion", ArmControlMode.SMART_MOTION);
+        } else {
+            controlModeChooser.setDefaultOption("SmartMotion", ArmControlMode.SMART_MOTION);
+            controlModeChooser.addOption("State Space", ArmControlMode.STATE_SPACE);
+        }
+        lastChooserSelection = controlMode;
+        SmartDashboard.putData("Arm Control Mode", controlModeChooser);
 
+        snapshot(); // Seeded so the first loop doesn't see 0
+        BackgroundTaskScheduler.getInstance().register("Arm Rotation Telemetry", LoopConstants.kTelemetryPeriodSeconds, this::updateSmartDashboard);
+
+    }
+
+    @Override
+    public void snapshot() {
+        rotationSnapshot = getArmRotationRadians();
     }
 
+    // Run by ParallelPeriodicRunner before the command scheduler
     @Override
-    public void periodic() {
-        setArmRotation(armRotationSetpoint);
-        SmartDashboard.putNumber("Arm Rotation Motor Speed", rotateMotor.get());
+    public void independentPeriodic() {
+        if (!LoopConstants.kUseFastControlLoop){
+            applyArmRotation(rotation.getSetpoint());
+        }
+    }
+
+    public void updateSmartDashboard() {
+        rotation.updateSmartDashboard();
         SmartDashboard.putNumber("Arm Rotation Degrees", rotateCanCoder.getPosition() + ArmConstants.rotateCanCoderOffset);
         SmartDashboard.putNumber("Arm Rotation Radians", getArmRotationRadians());
-        SmartDashboard.putNumber("Arm Rotation Setpoint", armRotationSetpoint);
+
+        // Only a change on the dashboard switches modes, so commands can set it too
+        ArmControlMode selected = controlModeChooser.getSelected();
+        if (selected != null && selected != lastChooserSelection) {
+            lastChooserSelection = selected;
+            setControlMode(selected);
+        }
+        SmartDashboard.putString("Arm Control Mode Active", controlMode.toString());
+        SmartDashboard.putNumber("Arm Gravity FF", lastFeedForward);
+        SmartDashboard.putNumber("Arm Estimated Velocity", stateSpaceController.getEstimatedVelocity());
+        SmartDashboard.putNumber("Arm Reference Radians", stateSpaceController.getReferencePosition());
+
+        // Integrated at the telemetry rate, close enough for comparing whole matches
+        double now = Timer.getFPGATimestamp();
+        double current = getMotorCurrent();
+        if (lastTelemetryTimestamp >= 0.0 && DriverStation.isEnabled()) {
+            double dt = now - lastTelemetryTimestamp;
+            ampSeconds += current * dt;
+            squaredAmpSeconds += current * current * dt;
+            enabledSeconds += dt;
+            if (brakeOutput == ArmBrakeConstants.kBrakeEngagedOutput) {
+                brakedSeconds += dt;
+            }
+        }
+        lastTelemetryTimestamp = now;
+
+        SmartDashboard.putString("Arm Brake State", brakeController.isEnabled() ? brakeController.getState().toString() : "MANUAL");
+        SmartDashboard.putNumber("Arm Brake Release Latency s", brakeController.getReleaseLatencySeconds());
+        SmartDashboard.putNumber("Arm Brake Engaged Fraction", enabledSeconds > 0.0 ? brakedSeconds / enabledSeconds : 0.0);
+        SmartDashboard.putNumber("Arm Rotation Current", current);
+        SmartDashboard.putNumber("Arm Rotation Amp Seconds", ampSeconds);
+        SmartDashboard.putNumber("Arm Rotation I2t", squaredAmpSeconds);
+        if (!simulated) {
+            SmartDashboard.putNumber("Arm Rotation Motor Temp", getMotorTemperature());
+        }
+    }
+
+    @Override
+    public void simulationPeriodic() {
+        double now = Timer.getFPGATimestamp();
+        if (lastSimTimestamp >= 0.0) {
+            armSim.update(now - lastSimTimestamp, armExtensionSupplier.getAsDouble(), wristSupplier.getAsDouble());
+        }
+        lastSimTimestamp = now;
     }
 
     public void rotateArm(double speed) {
-        rotateMotor.set(speed);
+        rotation.set(speed);
+    }
+
+    // Runs on the fast Notifier (see MultiRateScheduler) so the feedforward tracks the arm at the fast rate
+    public void fastPeriodic() {
+        applyArmRotation(rotation.getSetpoint());
     }
 
+    // Put setpoint in radians, clamped to the arm's range. Only stored, the periodic (or the fast loop) acts on it.
     public void setArmRotation(double setpoint) {
-        this.armRotationSetpoint = setpoint;
-        // Put setpoint in radians
+        rotation.setSetpoint(setpoint);
+    }
+
+    private void applyArmRotation(double setpoint) {
+
+        // Gravity feedforward from where the whole superstructure is, not just the arm angle
+        double armRadians = getArmRotationRadians();
+        double armExtension = armExtensionSupplier.getAsDouble();
+
+        // The brake may hold the arm, or hold off the move until it has let go
+        setpoint = brakeController.update(Timer.getFPGATimestamp(), setpoint, armRadians, getArmVelocityRadPerSec());
+        boolean brake = brakeController.isEnabled() ? brakeController.isBrakeCommanded() : manualBrake;
+        if (brake != brakeOutput) {
+            brakeOutput = brake;
+            armBrakeSolenoid.set(brake == ArmBrakeConstants.kBrakeEngagedOutput);
+            if (simulated) {
+                armSim.setBrake(brake);
+            }
+        }
+        if (Double.isNaN(setpoint)) {
+            rotation.stop();
+            lastFeedForward = 0.0;
+            resetStateSpace = true;
+            if (simulated) {
+                armSim.setInputVoltage(0.0);
+            }
+            return;
+        }
+
+        double feedForward = calculateGravityFeedForward(armRadians, armExtension, wristSupplier.getAsDouble());
+        lastFeedForward = feedForward;
+
+        if (controlMode == ArmControlMode.STATE_SPACE) {
+            if (resetStateSpace) {
+                stateSpaceController.reset(armRadians);
+                resetStateSpace = false;
+            }
+            stateSpaceController.setGoal(setpoint);
+            double volts = stateSpaceController.calculate(armRadians, armExtension)
+                + feedForward * ArmStateSpaceConstants.kNominalVoltage;
+            rotation.setVoltage(volts);
+            if (simulated) {
+                armSim.setInputVoltage(volts);
+            }
+            return;
+        }
+
+        rotation.apply(setpoint, feedForward);
+        if (simulated) {
+            armSim.setSmartMotionReference(setpoint, feedForward);
+        }
+    }
 
-        if (setpoint > armMaxRotation){
-            setpoint = armMaxRotation;
-        } else if (setpoint < armMinRotation){
-            setpoint = armMinRotation;
+    public void setControlMode(ArmControlMode mode) {
+        if (mode != controlMode) {
+            resetStateSpace = true;
+            controlMode = mode;
         }
+    }
 
-        // Calculate feed forward based on angle to compensate for gravity
-        double cosineScalar = Math.cos(getArmRotationRadians());
-        double feedForward = ArmConstants.gravityFF * cosineScalar;
-        rotatePidController.setReference(armRadiansToRotations(setpoint),
-        ControlType.kSmartMotion, 0, feedForward, ArbFFUnits.kPercentOut);
+    public ArmControlMode getControlMode() {
+        return controlMode;
+    }
+
+    // Static so the JIT warmup can run it without touching the motor
+    public static double calculateGravityFeedForward(double armRadians, double armExtension, double wristRadians){
+        return GravityModel.armFeedForward(armRadians, armExtension, wristRadians);
     }
 
     public double getArmRotationRadians(){
+        if (simulated){
+            return armSim.getAngleRadians();
+        }
         return Units.degreesToRadians(rotateCanCoder.getPosition() + ArmConstants.rotateCanCoderOffset);
     }
 
-    private double armRadiansToRotations(double rotateRadians) {
-        // Convert input radians to rotations, [0, 1]
-        return Units.radiansToRotations(rotateRadians + Units.degreesToRadians(ArmConstants.rotateCanCoderOffset));
+    // As of the start of this loop's subsystem periodics, safe to read from any of them
+    public double getArmRotationSnapshot(){
+        return rotationSnapshot;
     }
 
+    // Taking the brake by hand turns the automatic brake off until setAutoBrakeEnabled(true)
     public void toggleArmBrake(){
-        armBrakeSolenoid.toggle();
+        brakeController.setEnabled(false);
+        manualBrake = !manualBrake;
+    }
+
+    public void setAutoBrakeEnabled(boolean enabled){
+        manualBrake = false;
+        brakeController.setEnabled(enabled);
+    }
+
+    // Call when a move is coming (lining up to score), so the brake is off before the setpoint changes
+    public void prepareToMove(){
+        brakeController.requestRelease();
+    }
+
+    // The next release measures the brake's release latency instead of waiting it out
+    public void probeBrakeLatency(){
+        brakeController.probeReleaseLatency();
+    }
+
+    public boolean isProbingBrakeLatency(){
+        return brakeController.isProbing();
+    }
+
+    public ArmBrakeController.BrakeState getBrakeState(){
+        return brakeController.getState();
+    }
+
+    public double getArmVelocityRadPerSec(){
+        if (simulated){
+            return armSim.getVelocityRadPerSec();
+        }
+        return Units.degreesToRadians(rotateCanCoder.getVelocity());
+    }
+
+    // Set by ThermalMonitor, slows both the SmartMotion and state-space profiles
+    public void setProfileScale(double scale){
+        rotation.setProfileScale(scale);
+        stateSpaceController.setConstraintScale(scale);
+        if (simulated){
+            armSim.setSmartMotionScale(scale);
+        }
+    }
+
+    // NaN in simulation, there's nothing to read
+    public double getMotorTemperature(){
+        return rotation.getTemperature();
+    }
+
+    // Set by PowerManager
+    public void setCurrentLimit(int amps){
+        rotation.setCurrentLimit(amps);
+    }
+
+    public double getMotorCurrent(){
+        if (simulated){
+            return armSim.getCurrentAmps();
+        }
+        return rotation.getCurrent();
     }
 
     public void jogRight(){
-        armRotationSetpoint -= Units.degreesToRadians(12);
+        rotation.adjustSetpoint(-Units.degreesToRadians(12));
     }
 
     public void jogLeft(){
-        armRotationSetpoint += Units.degreesToRadians(12);
+        rotation.adjustSetpoint(Units.degreesToRadians(12));
     }
 
     public void rotateMotorConfig(){
-        
-        rotateMotor = new CANSparkMax(ArmConstants.rotateMotorId, MotorType.kBrushless);
-        rotateCanCoder = new CANCoder(ArmConstants.rotateCanCoderId, "rio");
 
-        rotateMotor.restoreFactoryDefaults();
+        rotateCanCoder = new CANCoder(ArmConstants.rotateCanCoderId, "rio");
         rotateCanCoder.configFactoryDefault();
 
         rotateCanCoder.configAbsoluteSensorRange(AbsoluteSensorRange.Signed_PlusMinus180);
@@ -107,31 +337,38 @@ public class ArmRotationSubsystem extends SubsystemBase {
         rotateCanCoder.configSensorInitializationStrategy(SensorInitializationStrategy.BootToAbsolutePosition);
         rotateCanCoder.configGetFeedbackTimeBase();
 
-        rotateMotor.setInverted(ArmConstants.rotateMotorReversed);
-
-        rotateMotorEncoder = rotateMotor.getAbsoluteEncoder(Type.kDutyCycle);
-        rotatePidController = rotateMotor.getPIDController();
-        rotatePidController.setFeedbackDevice(rotateMotorEncoder);
+        // Position comes from the CANCoder (or ArmRotationSim), the SparkMax's absolute encoder is only its feedback device
+        rotation = new SparkMaxMechanism(new SparkMaxMechanism.Config("Arm Rotation", ArmConstants.rotateMotorId)
+            .inverted(ArmConstants.rotateMotorReversed)
+            .pid(ArmConstants.rotatekP, ArmConstants.rotatekI, ArmConstants.rotatekD, ArmConstants.rotatekIz, ArmConstants.rotatekFF)
+            .outputRange(ArmConstants.rotateMinOutput, ArmConstants.rotateMaxOutput)
+            .smartMotion(ArmConstants.rotateMaxVel, ArmConstants.rotateMinVel, ArmConstants.rotateMaxAcc, ArmConstants.allowedErr)
+            .currentLimit(ArmConstants.rotateMotorCurrentLimit)
+            .units(2.0 * Math.PI, Units.degreesToRadians(ArmConstants.rotateCanCoderOffset))
+            .unitsPerMotorRotation(2.0 * Math.PI / ArmStateSpaceConstants.kArmGearing)
+            .scalingVerified(ArmStateSpaceConstants.kArmGearingVerified)
+            .range(armMinRotation, armMaxRotation)
+            .goalTolerance(ArmConstants.rotateGoalToleranceRadians)
+            .positionSource(this::getArmRotationRadians)
+            .simulate(false));
 
-        rotatePidController.setP(ArmConstants.rotatekP);
-        rotatePidController.setI(ArmConstants.rotatekI);
-        rotatePidController.setD(ArmConstants.rotatekD);
-        rotatePidController.setIZone(ArmConstants.rotatekIz);
-        rotatePidController.setFF(ArmConstants.rotatekFF);
-        rotatePidController.setOutputRange(ArmConstants.rotateMinOutput, ArmConstants.rotateMaxOutput);
-
-        rotatePidController.setSmartMotionMaxVelocity(ArmConstants.rotateMaxVel, 0);
-        rotatePidController.setSmartMotionMinOutputVelocity(ArmConstants.rotateMinVel, 0);
-        rotatePidController.setSmartMotionMaxAccel(ArmConstants.rotateMaxAcc, 0);
-        rotatePidController.setSmartMotionAllowedClosedLoopError(ArmConstants.allowedErr, 0);
+    }
 
-        rotateMotor.setSmartCurrentLimit(50);
-        rotateMotor.setIdleMode(IdleMode.kBrake);
-        rotateMotor.burnFlash();
+    public boolean atGoal(){
+        return rotation.atGoal();
+    }
 
+    // Puts the simulated arm somewhere and holds it there
+    public void resetSimulation(double radians){
+        if (simulated){
+            armSim.reset(radians);
+            brakeOutput = false;
+            rotation.setSetpoint(radians);
+            resetStateSpace = true;
+        }
     }
 
     public void stopArm(){
-        rotateMotor.set(0);
+        rotation.set(0);
     }
 }
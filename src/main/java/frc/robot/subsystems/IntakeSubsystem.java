@@ -5,16 +5,58 @@ import com.revrobotics.RelativeEncoder;
 import com.revrobotics.CANSparkMax.IdleMode;
 import com.revrobotics.CANSparkMaxLowLevel.MotorType;
 
+import edu.wpi.first.math.filter.Debouncer;
+import edu.wpi.first.math.filter.LinearFilter;
+import edu.wpi.first.math.filter.Debouncer.DebounceType;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 
+import frc.robot.sim.IntakeSim;
+import frc.robot.utils.BackgroundTaskScheduler;
+import frc.robot.utils.IndependentSubsystem;
+import frc.robot.utils.LatencyTracer;
 import frc.robot.utils.Constants.IntakeConstants;
+import frc.robot.utils.Constants.LoopConstants;
 
-public class IntakeSubsystem extends SubsystemBase {
+public class IntakeSubsystem extends SubsystemBase implements IndependentSubsystem {
+
+  // INTAKING and EJECTING watch the motor for a piece arriving or leaving, MANUAL is a fixed speed
+  public enum IntakeState {IDLE, INTAKING, HOLDING, EJECTING, MANUAL}
 
   private CANSparkMax intakeMotor;
   private RelativeEncoder intakeMotorEncoder;
 
+  private volatile IntakeState state = IntakeState.IDLE;
+  private double manualSpeed = 0.0;
+  private int currentLimit = IntakeConstants.intakeMotorStallCurrentLimit; // From PowerManager
+  private final LatencyTracer.Sink latencySink = LatencyTracer.getInstance().addSink("Intake");
+  private double writtenOutput = Double.NaN;
+
+  /* --------------------> Game Piece Detection <-------------------- */
+
+  // A piece stalls the rollers, current goes up while the encoder velocity collapses
+  private final LinearFilter currentFilter = LinearFilter.singlePoleIIR(IntakeConstants.kCurrentFilterSeconds, TimedRobot.kDefaultPeriod);
+  private final LinearFilter velocityFilter = LinearFilter.singlePoleIIR(IntakeConstants.kVelocityFilterSeconds, TimedRobot.kDefaultPeriod);
+  private final Debouncer acquireDebouncer = new Debouncer(IntakeConstants.kAcquireDebounceSeconds, DebounceType.kRising);
+  private final Debouncer ejectDebouncer = new Debouncer(IntakeConstants.kEjectDebounceSeconds, DebounceType.kRising);
+
+  private double filteredCurrent = 0.0;
+  private double filteredVelocity = 0.0;
+  private double stateStartTime = 0.0;
+
+  private volatile boolean hasGamePiece = false;
+  private volatile boolean ejected = false;
+  private double detectedTime = -1.0;
+
+  /* --------------------> Simulation <-------------------- */
+
+  private final boolean simulated = RobotBase.isSimulation();
+  private final IntakeSim intakeSim = simulated ? new IntakeSim() : null;
+  private double lastSimTimestamp = -1.0;
+
   public IntakeSubsystem() {
 
     intakeMotor = new CANSparkMax(IntakeConstants.intakeMotorId, MotorType.kBrushless);
@@ -24,38 +66,195 @@ public class IntakeSubsystem extends SubsystemBase {
     intakeMotor.setOpenLoopRampRate(IntakeConstants.openLoopRampRate);
     intakeMotor.burnFlash();
 
+    // Config is done, later writes (hold and PowerManager current limits) don't wait for a response
+    intakeMotor.setCANTimeout(0);
+
     intakeMotorEncoder = intakeMotor.getEncoder();
 
+    BackgroundTaskScheduler.getInstance().register("Intake Telemetry", LoopConstants.kTelemetryPeriodSeconds, this::updateSmartDashboard);
+
   }
 
+  // Run by ParallelPeriodicRunner before the command scheduler
   @Override
-  public void periodic() {
-    updateSmartDashboard();
+  public void independentPeriodic() {
+    filteredCurrent = currentFilter.calculate(getMotorCurrent());
+    filteredVelocity = velocityFilter.calculate(Math.abs(simulated ? intakeSim.getVelocityRpm() : intakeMotorEncoder.getVelocity()));
+
+    // Current is high and velocity low while the rollers spin up, so give them a moment first
+    boolean spunUp = Timer.getFPGATimestamp() - stateStartTime > IntakeConstants.kSpinUpSeconds;
+
+    switch (state) {
+      case INTAKING:
+        boolean stalled = filteredCurrent > IntakeConstants.kAcquireCurrentAmps && filteredVelocity < IntakeConstants.kAcquireVelocityRpm;
+        if (acquireDebouncer.calculate(spunUp && stalled)) {
+          hasGamePiece = true;
+          detectedTime = Timer.getFPGATimestamp();
+          setState(IntakeState.HOLDING);
+        }
+        break;
+      case EJECTING:
+        // Spinning freely again means the piece is out
+        boolean free = filteredCurrent < IntakeConstants.kEjectCurrentAmps && filteredVelocity > IntakeConstants.kEjectVelocityRpm;
+        if (!ejected && ejectDebouncer.calculate(spunUp && free)) {
+          hasGamePiece = false;
+          ejected = true;
+        }
+        break;
+      default:
+        break;
+    }
+
+    setOutput(getOutput());
+  }
+
+  private double getOutput() {
+    switch (state) {
+      case INTAKING:
+        return IntakeConstants.kIntakeSpeed;
+      case HOLDING:
+        return IntakeConstants.kHoldSpeed;
+      case EJECTING:
+        return IntakeConstants.kEjectSpeed;
+      case MANUAL:
+        return manualSpeed;
+      default:
+        return 0.0;
+    }
+  }
+
+  // The periodic writes the same output every loop, only a change is a latency write
+  private void setOutput(double output) {
+    intakeMotor.set(output);
+    if (output != writtenOutput) {
+      writtenOutput = output;
+      latencySink.write();
+    }
   }
 
+  private void setState(IntakeState newState) {
+    if (newState == state) {
+      return;
+    }
+
+    // Holding stalls the motor on purpose, so it gets a much lower current limit
+    if (newState == IntakeState.HOLDING) {
+      intakeMotor.setSmartCurrentLimit(IntakeConstants.kHoldCurrentLimit);
+    } else if (state == IntakeState.HOLDING) {
+      intakeMotor.setSmartCurrentLimit(currentLimit);
+    }
+
+    state = newState;
+    stateStartTime = Timer.getFPGATimestamp();
+    acquireDebouncer.calculate(false);
+    ejectDebouncer.calculate(false);
+    setOutput(getOutput());
+  }
+
+  /* --------------------> Intake Commands <-------------------- */
+
+  // Runs until a piece is detected, then holds it, calling it again while holding does nothing
   public void startIntake(){
-    intakeMotor.set(0.75);
+    if (state != IntakeState.HOLDING) {
+      setState(IntakeState.INTAKING);
+    }
   }
 
+  // Keeps holding if there's a piece
   public void stopIntake(){
-    intakeMotor.set(0);
+    setState(hasGamePiece ? IntakeState.HOLDING : IntakeState.IDLE);
+  }
+
+  public void holdGamePiece(){
+    setState(IntakeState.HOLDING);
   }
 
   public void reverseIntake(){
-    intakeMotor.set(-0.5);
+    if (state != IntakeState.EJECTING) {
+      ejected = false;
+      setState(IntakeState.EJECTING);
+    }
   }
 
   public void setIntakeSpeed(double speed){
-    intakeMotor.set(speed);
+    manualSpeed = speed;
+    setState(IntakeState.MANUAL);
+  }
+
+  // Set by PowerManager, the hold limit is lower anyway so it only applies outside HOLDING
+  public void setCurrentLimit(int amps) {
+    currentLimit = amps;
+    if (state != IntakeState.HOLDING) {
+      intakeMotor.setSmartCurrentLimit(amps);
+    }
+  }
+
+  public double getMotorCurrent() {
+    if (simulated) {
+      return intakeSim.getCurrentAmps();
+    }
+    return intakeMotor.getOutputCurrent();
   }
 
   public double getIntakeMotorSpeed(){
     return intakeMotor.get();
   }
 
+  public IntakeState getState() {
+    return state;
+  }
+
+  public boolean hasGamePiece() {
+    return hasGamePiece;
+  }
+
+  // True once the piece has left since the last reverseIntake()
+  public boolean hasEjected() {
+    return ejected;
+  }
+
+  // Called once the superstructure is stowed after a detection
+  public void reportStowed() {
+    if (detectedTime >= 0.0) {
+      SmartDashboard.putNumber("Intake Detect to Stow s", Timer.getFPGATimestamp() - detectedTime);
+      detectedTime = -1.0;
+    }
+  }
+
+  @Override
+  public void simulationPeriodic() {
+    double now = Timer.getFPGATimestamp();
+    if (lastSimTimestamp >= 0.0) {
+      intakeSim.update(now - lastSimTimestamp, getOutput(), state == IntakeState.HOLDING ? IntakeConstants.kHoldCurrentLimit : currentLimit);
+    }
+    lastSimTimestamp = now;
+  }
+
+  // Starts the simulated intake empty and idle, or holding a piece
+  public void resetSimulation(boolean hasGamePiece) {
+    if (simulated) {
+      intakeSim.reset(hasGamePiece);
+      this.hasGamePiece = hasGamePiece;
+      ejected = false;
+      detectedTime = -1.0;
+      setState(hasGamePiece ? IntakeState.HOLDING : IntakeState.IDLE);
+    }
+  }
+
+  // A piece at the station, taken in the next time the rollers run forward
+  public void presentGamePieceSimulation() {
+    if (simulated) {
+      intakeSim.presentGamePiece();
+    }
+  }
+
   public void updateSmartDashboard() {
     SmartDashboard.putNumber("Intake Motor Speed", getIntakeMotorSpeed());
     SmartDashboard.putNumber("Intake Motor Encoder Position", intakeMotorEncoder.getPosition());
+    SmartDashboard.putString("Intake State", state.toString());
+    SmartDashboard.putBoolean("Intake Has Game Piece", hasGamePiece);
+    SmartDashboard.putNumber("Intake Filtered Current", filteredCurrent);
+    SmartDashboard.putNumber("Intake Filtered Velocity", filteredVelocity);
   }
 
 }
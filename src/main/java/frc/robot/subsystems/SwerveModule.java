@@ -12,14 +12,21 @@ import com.ctre.phoenix.sensors.AbsoluteSensorRange;
 import com.ctre.phoenix.sensors.CANCoder;
 import com.ctre.phoenix.sensors.SensorInitializationStrategy;
 
+import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.controller.PIDController;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
+import edu.wpi.first.wpilibj.RobotBase;
 import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import frc.robot.utils.LatencyTracer;
+import frc.robot.utils.StateHandoff;
+import frc.robot.utils.TunableGainStore;
 import frc.robot.utils.Constants.DriveConstants;
+import frc.robot.utils.Constants.LoopConstants;
 import frc.robot.utils.Constants.ModuleConstants;
+import frc.robot.utils.Constants.PowerConstants;
 
 public class SwerveModule{
 
@@ -37,6 +44,29 @@ public class SwerveModule{
     private final double turnCanCoderOffsetRad;
     private final boolean turnCanCoderReversed;
     private final String moduleName;
+
+    // Last state sent to the motors, published from update() so the fast control loop doesn't touch NT.
+    // Kept as doubles so the fast loop doesn't allocate, a reader can see the speed from one write and
+    // the angle from the next for a single read.
+    private volatile double lastDesiredSpeed = 0.0;
+    private volatile double lastDesiredAngle = 0.0;
+
+    // Turning gains tuned from the dashboard, {kP, kI, kD}. queuedGains is only touched on the main thread,
+    // appliedGains only on the thread running the turning PID.
+    private final double[] queuedGains = {ModuleConstants.kModuleP, ModuleConstants.kModuleI, ModuleConstants.kModuleD};
+    private final double[] appliedGains = new double[3];
+    private final StateHandoff gainHandoff = new StateHandoff(3);
+    private long appliedGainSequence = 0;
+
+    // Shared by all four modules, the first one written ends the trace
+    private final LatencyTracer.Sink latencySink = LatencyTracer.getInstance().addSink("Swerve");
+
+    // Simulated sensor values, written by SwerveDriveSim. Kept in the kinematics frame (wheel offset
+    // and motor inversion already applied) since the Falcons report nothing in simulation.
+    private final boolean simulated = RobotBase.isSimulation();
+    private volatile double simDrivePosition = 0.0;
+    private volatile double simDriveVelocity = 0.0;
+    private volatile double simTurnPosition = 0.0;
     
     /* --------------------> Swerve Module Constructor <-------------------- */
 
@@ -71,46 +101,113 @@ public class SwerveModule{
         turnCanCoderConfig(turnCanCoder);
 
         /* PID Controller for Turning */
-        turningPidController = new PIDController(ModuleConstants.kModuleP, ModuleConstants.kModuleI, ModuleConstants.kModuleD);
+        // Period matters for I and D, setDesiredState() runs on the fast loop when it's enabled
+        turningPidController = new PIDController(ModuleConstants.kModuleP, ModuleConstants.kModuleI, ModuleConstants.kModuleD,
+            LoopConstants.kUseFastControlLoop ? LoopConstants.kFastLoopPeriodSeconds : 0.02);
         turningPidController.enableContinuousInput(-Math.PI, Math.PI);
 
+        // Shared by all four modules. The store calls these on the main thread, so they only queue the
+        // gains and the thread running calculate() picks them up in applyPendingGains()
+        TunableGainStore.getInstance().register("Swerve Module/kP", ModuleConstants.kModuleP, value -> queueGain(0, value));
+        TunableGainStore.getInstance().register("Swerve Module/kI", ModuleConstants.kModuleI, value -> queueGain(1, value));
+        TunableGainStore.getInstance().register("Swerve Module/kD", ModuleConstants.kModuleD, value -> queueGain(2, value));
+
         /* Timer so stuff can initialize before reset */
         Timer.delay(0.5);
         resetEncoders();
 
     }
 
+    /* --------------------> Turning Gains <-------------------- */
+
+    private void queueGain(int index, double value){
+        queuedGains[index] = value;
+        gainHandoff.write(queuedGains);
+    }
+
+    // Called before each calculate(), so the controller is only ever touched from one thread
+    private void applyPendingGains(){
+        long sequence = gainHandoff.read(appliedGains);
+        if (sequence != appliedGainSequence){
+            turningPidController.setPID(appliedGains[0], appliedGains[1], appliedGains[2]);
+            appliedGainSequence = sequence;
+        }
+    }
+
     /* --------------------> Setting Module States <-------------------- */
 
     public void setDesiredState(SwerveModuleState desiredState){
+        setDesiredState(desiredState.speedMetersPerSecond, desiredState.angle.getRadians());
+    }
+
+    // Primitive version for the fast loop, nothing here allocates
+    public void setDesiredState(double speedMetersPerSecond, double angleRadians){
         
         // Remove unwanted movement commands
-        if (Math.abs(desiredState.speedMetersPerSecond) < 0.001){
+        if (Math.abs(speedMetersPerSecond) < 0.001){
             stop();
             return;
         }
 
-        desiredState = SwerveModuleState.optimize(desiredState, getState().angle); // Optimize the desired state to remove unnecessary turning
+        // Optimize the desired state to remove unnecessary turning, same as SwerveModuleState.optimize()
+        double turningPosition = getTurningPosition();
+        if (Math.abs(MathUtil.angleModulus(angleRadians - turningPosition)) > Math.PI / 2.0){
+            speedMetersPerSecond = -speedMetersPerSecond;
+            angleRadians = MathUtil.angleModulus(angleRadians + Math.PI);
+        }
+        applyPendingGains();
 
         // Set the drive and turn motor speeds
-        driveMotor.set(TalonFXControlMode.PercentOutput, desiredState.speedMetersPerSecond / DriveConstants.kPhysicalMaxSpeedMetersPerSecond);
-        turnMotor.set(TalonFXControlMode.PercentOutput, turningPidController.calculate(getTurningPosition(), desiredState.angle.getRadians() + moduleWheelOffset));
+        driveMotor.set(TalonFXControlMode.PercentOutput, speedMetersPerSecond / DriveConstants.kPhysicalMaxSpeedMetersPerSecond);
+        turnMotor.set(TalonFXControlMode.PercentOutput, turningPidController.calculate(turningPosition, angleRadians + moduleWheelOffset));
 
-        // Output Module States to Smart Dashboard
-        SmartDashboard.putString("Swerve["+moduleName+"] state", desiredState.toString());
+        // The fast loop repeats the last command between main loops, only a new one is a latency write
+        if (speedMetersPerSecond != lastDesiredSpeed || angleRadians != lastDesiredAngle){
+            latencySink.write();
+        }
+        lastDesiredSpeed = speedMetersPerSecond;
+        lastDesiredAngle = angleRadians;
+    }
+
+    // Turns the wheel to an angle without driving, for locking the wheels in an X
+    public void holdAngle(Rotation2d angle){
+        holdAngle(angle.getRadians());
+    }
+
+    public void holdAngle(double angleRadians){
+        double turningPosition = getTurningPosition();
+        if (Math.abs(MathUtil.angleModulus(angleRadians - turningPosition)) > Math.PI / 2.0){
+            angleRadians = MathUtil.angleModulus(angleRadians + Math.PI);
+        }
+        applyPendingGains();
+
+        driveMotor.set(TalonFXControlMode.PercentOutput, 0);
+        turnMotor.set(TalonFXControlMode.PercentOutput, turningPidController.calculate(turningPosition, angleRadians + moduleWheelOffset));
+
+        lastDesiredSpeed = 0.0;
+        lastDesiredAngle = angleRadians;
     }
 
     /* --------------------> Getting Module Positions and Velocities <-------------------- */
 
     public double getDrivePosition(){
+        if (simulated){
+            return simDrivePosition;
+        }
         return driveMotor.getSelectedSensorPosition() * ModuleConstants.kDriveMotorRot2Meter;
     }
 
     public double getTurningPosition(){
+        if (simulated){
+            return simTurnPosition;
+        }
         return turnMotor.getSelectedSensorPosition() * ModuleConstants.kTurningMotorRot2Rad + moduleWheelOffset;
     }
 
     public double getDriveVelocity(){
+        if (simulated){
+            return simDriveVelocity;
+        }
         return driveMotor.getSelectedSensorVelocity() * ModuleConstants.kDriveVelocity2MeterPerSec;
     }
 
@@ -126,6 +223,10 @@ public class SwerveModule{
         return new SwerveModulePosition(getDrivePosition(), new Rotation2d(getTurningPosition()));
     }
 
+    public String getName(){
+        return moduleName;
+    }
+
     public Rotation2d getCanCoder(){
         return Rotation2d.fromDegrees(turnCanCoder.getAbsolutePosition());
     }
@@ -142,14 +243,65 @@ public class SwerveModule{
     public void stop(){
         driveMotor.set(TalonFXControlMode.PercentOutput, 0);
         turnMotor.set(TalonFXControlMode.PercentOutput, 0);
+        if (lastDesiredSpeed != 0.0){
+            latencySink.write();
+        }
+
+        // Wheels stay pointed where they were
+        lastDesiredSpeed = 0.0;
+    }
+
+    /* --------------------> Simulation <-------------------- */
+
+    public SwerveModuleState getLastDesiredState(){
+        return new SwerveModuleState(lastDesiredSpeed, new Rotation2d(lastDesiredAngle));
+    }
+
+    public void setSimState(double drivePosition, double driveVelocity, double turnPosition){
+        simDrivePosition = drivePosition;
+        simDriveVelocity = driveVelocity;
+        simTurnPosition = turnPosition;
     }
     
     /* --------------------> Updating Module CANCoder Values to Smart Dashboard <-------------------- */
     public void update(){ 
         SmartDashboard.putNumber(moduleName + "Absolute-Position", turnCanCoder.getAbsolutePosition()); 
+
+        // Output Module States to Smart Dashboard
+        SmartDashboard.putString("Swerve["+moduleName+"] state", getLastDesiredState().toString());
     }
 
     
+    /* --------------------> Current Limits <-------------------- */
+
+    // Set by PowerManager, the 0 timeout doesn't wait for the Falcon to acknowledge
+    public void setDriveCurrentLimit(int amps){
+        driveMotor.configSupplyCurrentLimit(new SupplyCurrentLimitConfiguration(
+            true, Math.min(amps, PowerConstants.kDriveContinuousAmps), amps, 0.1), 0);
+    }
+
+    public void setTurnCurrentLimit(int amps){
+        turnMotor.configSupplyCurrentLimit(new SupplyCurrentLimitConfiguration(true, amps, amps, 0.1), 0);
+    }
+
+    public double getDriveCurrent(){
+        return driveMotor.getSupplyCurrent();
+    }
+
+    public double getTurnCurrent(){
+        return turnMotor.getSupplyCurrent();
+    }
+
+    // Stator current heats the winding, not supply current
+    public double getDriveStatorCurrent(){
+        return driveMotor.getStatorCurrent();
+    }
+
+    // NaN in simulation, there's nothing to read
+    public double getDriveTemperature(){
+        return simulated ? Double.NaN : driveMotor.getTemperature();
+    }
+
     /* --------------------> Configuring Drive Motor <-------------------- */
 
     private void driveMotorConfig(TalonFX driveMotor){
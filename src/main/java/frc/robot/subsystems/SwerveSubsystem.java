@@ -4,22 +4,43 @@
 
 package frc.robot.subsystems;
 
+import java.util.Arrays;
+
 import com.ctre.phoenix.sensors.Pigeon2;
 
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
 import edu.wpi.first.math.kinematics.SwerveDriveOdometry;
 
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.smartdashboard.Field2d;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.sim.ChargeStationSim;
+import frc.robot.sim.SimVisionSource;
+import frc.robot.sim.SwerveDriveSim;
+import frc.robot.utils.BackgroundTaskScheduler;
+import frc.robot.utils.IndependentSubsystem;
+import frc.robot.utils.SlipRejectingOdometry;
+import frc.robot.utils.StateHandoff;
+import frc.robot.utils.SwerveSetpointGenerator;
+import frc.robot.utils.TractionController;
+import frc.robot.utils.SwervePoseEstimator;
+import frc.robot.utils.VisionMeasurement;
+import frc.robot.utils.VisionSource;
 import frc.robot.utils.Constants.DriveConstants;
+import frc.robot.utils.Constants.LoopConstants;
+import frc.robot.utils.Constants.OdometryConstants;
 import frc.robot.utils.Constants.ModuleConstants.*;
 
 
-public class SwerveSubsystem extends SubsystemBase {
+public class SwerveSubsystem extends SubsystemBase implements IndependentSubsystem {
 
     /* --------------------> Initializing the Swerve Modules <-------------------- */
 
@@ -48,39 +69,218 @@ public class SwerveSubsystem extends SubsystemBase {
         BackRightModule.turnCanCoderId, BackRightModule.absoluteEncoderOffsetRad,
         BackRightModule.absoluteEncoderReversed, BackRightModule.name);
 
+    private final SwerveModule[] modules = {frontLeft, frontRight, backLeft, backRight};
+
     private Pigeon2 gyro = new Pigeon2(50, "Canivore");
 
-    public SwerveDriveOdometry swerveDriveOdometry;
+    // Wheel odometry fused with AprilTag measurements
+    private final SwervePoseEstimator poseEstimator;
+
+    // Robot relative acceleration from the Pigeon2, m/s^2, for slip and collision checks
+    private final short[] accelerometerBuffer = new short[3];
+    private double accelX = 0.0;
+    private double accelY = 0.0;
+
+    // Pitch and roll in degrees (nose up, left side up) and their rates, for balancing
+    private final double[] gyroRateBuffer = new double[3];
+    private double pitch = 0.0;
+    private double roll = 0.0;
+    private double pitchRate = 0.0;
+    private double rollRate = 0.0;
+
+    // Set by lockWheels(), cleared by the next drive or stop command
+    private volatile boolean wheelsLocked = false;
+    private final Rotation2d[] lockAngles = new Rotation2d[4];
+
+    /* --------------------> Vision <-------------------- */
+
+    // No camera on the robot yet, simulation gets a simulated one
+    private final VisionSource[] visionSources;
+    private final VisionMeasurement visionMeasurement = new VisionMeasurement();
+    private boolean fieldPoseKnown = false; // Set by resetOdometry(), see hasFieldPose()
+
+    private final Field2d field = new Field2d();
+
+    /* --------------------> Simulation <-------------------- */
+
+    private final SwerveDriveSim driveSim;
+    private final SimVisionSource simVisionSource;
+    private final ChargeStationSim chargeStationSim;
+    private double simYawOffsetRadians = 0.0;
+    private double lastSimTimestamp = -1.0;
+
+    // Plain odometry with no slip rejection, only to compare drift against in simulation
+    private final SwerveDriveOdometry rawOdometry;
+
+    // Keeps module speed and steer changes within what the modules can do
+    private final SwerveSetpointGenerator setpointGenerator = new SwerveSetpointGenerator(
+        DriveConstants.kSwerveDriveKinematics, 4, DriveConstants.kSetpointGeneratorPeriodSeconds);
+
+    // Cuts drive commands back when a wheel is about to break loose
+    private final TractionController tractionController = new TractionController(DriveConstants.kModuleTranslations);
+    private final double[] wheelSpeeds = new double[4];
+    private final Rotation2d[] wheelAngles = new Rotation2d[4];
+
+    /* --------------------> Fast Control Loop Hand-off <-------------------- */
+
+    // Speed and angle per module, written by the command loop and read by fastPeriodic()
+    private final StateHandoff desiredStateHandoff = new StateHandoff(2 * 4);
+    private final double[] desiredStateBuffer = new double[2 * 4];
+    private final double[] fastDesiredStateBuffer = new double[2 * 4];
+
+    // Drive distance and angle per module, measured in fastPeriodic() and read by odometry
+    private final StateHandoff measuredPositionHandoff = new StateHandoff(2 * 4);
+    private final double[] measuredPositionBuffer = new double[2 * 4];
+    private final double[] fastMeasuredPositionBuffer = new double[2 * 4];
     
 
     /* --------------------> Swerve Drive Constructor <-------------------- */
 
     public SwerveSubsystem() {
 
+        // Simulated drivetrain and camera, the Pigeon and Falcons report nothing in simulation
+        if (RobotBase.isSimulation()){
+            driveSim = new SwerveDriveSim(modules);
+            simVisionSource = new SimVisionSource(driveSim);
+            visionSources = new VisionSource[]{simVisionSource};
+            chargeStationSim = new ChargeStationSim();
+        } else {
+            driveSim = null;
+            simVisionSource = null;
+            chargeStationSim = null;
+            visionSources = new VisionSource[0];
+        }
+
         // Config Gyro
         gyro.configFactoryDefault();
         gyro.setYaw(0);
 
+        // Each wheel points at the robot center, an X that resists being pushed in any direction
+        for (int i = 0; i < lockAngles.length; i++){
+            lockAngles[i] = DriveConstants.kModuleTranslations[i].getAngle();
+        }
+
         // Reset Encoders
         resetModuleEncoders();
+        publishMeasuredPositions(fastMeasuredPositionBuffer);
+
+        // Configure the pose estimator
+        poseEstimator = new SwervePoseEstimator(DriveConstants.kModuleTranslations,
+        getRotation2d(), getModulePositions(), new Pose2d());
+        rawOdometry = driveSim != null ? new SwerveDriveOdometry(DriveConstants.kSwerveDriveKinematics, getRotation2d(), getModulePositions()) : null;
+        SmartDashboard.putData("Field", field);
 
-        // Configure the odometry
-        swerveDriveOdometry = new SwerveDriveOdometry(DriveConstants.kSwerveDriveKinematics, 
-        getRotation2d(), getModulePositions());
+        // Telemetry and CANCoder readouts run when there's time left in the loop
+        BackgroundTaskScheduler.getInstance().register("Swerve Telemetry", LoopConstants.kTelemetryPeriodSeconds, this::updateSmartDashboard);
+        BackgroundTaskScheduler.getInstance().register("Swerve Modules", LoopConstants.kTelemetryPeriodSeconds, this::updateModules);
         
     }
 
     /* --------------------> Periodic Updates <-------------------- */
+    // Run by ParallelPeriodicRunner before the command scheduler
     @Override
-    public void periodic(){
+    public void independentPeriodic(){
+
+        // Update the odometry to the current module positions and heading, modules that slip get dropped
+        readAccelerometer();
+        readTilt();
+        SwerveModulePosition[] positions = getModulePositions();
+        poseEstimator.update(Timer.getFPGATimestamp(), getRotation2d(), positions, accelX, accelY);
+        if (rawOdometry != null){
+            rawOdometry.update(getRotation2d(), positions);
+        }
+
+        // Fuse any camera frames that arrived since last loop
+        for (VisionSource source : visionSources){
+            while (source.poll(visionMeasurement)){
+                poseEstimator.addVisionMeasurement(visionMeasurement);
+            }
+        }
+    }
 
-        // Update the odometry to the current module positions and heading
-        swerveDriveOdometry.update(getRotation2d(), getModulePositions());
+    private void readAccelerometer(){
+        if (driveSim != null){
+            accelX = driveSim.getAccelX();
+            accelY = driveSim.getAccelY();
+            return;
+        }
+        // Horizontal axes only, tilt leaks some gravity in which just makes the checks more lenient
+        gyro.getBiasedAccelerometer(accelerometerBuffer);
+        accelX = accelerometerBuffer[0] / OdometryConstants.kAccelerometerLsbPerG * 9.81;
+        accelY = accelerometerBuffer[1] / OdometryConstants.kAccelerometerLsbPerG * 9.81;
+    }
+
+    private void readTilt(){
+        if (chargeStationSim != null){
+            // The station only tilts about field Y, split it into pitch and roll by heading
+            double heading = driveSim.getTruePose().getRotation().getRadians();
+            double tilt = Math.toDegrees(chargeStationSim.getRobotTiltRadians());
+            double tiltRate = Math.toDegrees(chargeStationSim.getRobotTiltRateRadPerSec());
+            pitch = tilt * Math.cos(heading);
+            roll = -tilt * Math.sin(heading);
+            pitchRate = tiltRate * Math.cos(heading);
+            rollRate = -tiltRate * Math.sin(heading);
+            return;
+        }
+        pitch = gyro.getPitch();
+        roll = gyro.getRoll();
+
+        // Raw gyro is deg/s about the robot axes, turning about +Y puts the nose down
+        gyro.getRawGyro(gyroRateBuffer);
+        pitchRate = -gyroRateBuffer[1];
+        rollRate = gyroRateBuffer[0];
+    }
 
+    @Override
+    public void simulationPeriodic(){
+        double now = Timer.getFPGATimestamp();
+        if (lastSimTimestamp >= 0.0){
+            driveSim.update(now - lastSimTimestamp);
+            chargeStationSim.update(now - lastSimTimestamp, driveSim.getTruePose());
+        }
+        lastSimTimestamp = now;
+        simVisionSource.update(now);
+    }
+
+    public void updateSmartDashboard(){
         // Update SmartDashboard data for the robot heading and location
-        SmartDashboard.putNumber("Robot Heading", gyro.getYaw());
-        SmartDashboard.putString("Robot Location", getPose().getTranslation().toString());
+        Pose2d pose = getPose();
+        SmartDashboard.putNumber("Robot Heading", getRotation2d().getDegrees());
+        SmartDashboard.putString("Robot Location", pose.getTranslation().toString());
+
+        Pose2d odometryPose = poseEstimator.getOdometryPose();
+        field.setRobotPose(pose);
+        field.getObject("Odometry").setPose(odometryPose);
+        SmartDashboard.putNumber("Vision Accepted", poseEstimator.getAcceptedMeasurements());
+        SmartDashboard.putNumber("Vision Rejected", poseEstimator.getRejectedMeasurements());
+
+        // Slip and collision flags from the odometry
+        SlipRejectingOdometry odometry = poseEstimator.getOdometry();
+        for (int i = 0; i < modules.length; i++){
+            SmartDashboard.putBoolean(modules[i].getName() + " Slipping", odometry.isSlipping(i));
+            SmartDashboard.putNumber(modules[i].getName() + " Slip Ratio", tractionController.getSlipRatio(i));
+            SmartDashboard.putBoolean(modules[i].getName() + " Traction Limited", tractionController.isLimited(i));
+        }
+        SmartDashboard.putBoolean("Odometry Collision", odometry.isColliding());
+        SmartDashboard.putBoolean("Odometry Accel Limited", odometry.isAccelerationLimited());
+        SmartDashboard.putNumber("Odometry Slip Count", odometry.getSlipCount());
+        SmartDashboard.putNumber("Odometry Collision Count", odometry.getCollisionCount());
+
+        SmartDashboard.putNumber("Charge Station Tilt", getChargeStationTilt());
+        SmartDashboard.putNumber("Charge Station Tilt Rate", getChargeStationTiltRate());
+        SmartDashboard.putBoolean("Wheels Locked", wheelsLocked);
+
+        // How far the fused estimate and plain odometry are from where the simulated robot really is
+        if (driveSim != null){
+            Pose2d truePose = driveSim.getTruePose();
+            field.getObject("Truth").setPose(truePose);
+            SmartDashboard.putNumber("Pose Error", pose.getTranslation().getDistance(truePose.getTranslation()));
+            SmartDashboard.putNumber("Odometry Error", odometryPose.getTranslation().getDistance(truePose.getTranslation()));
+            SmartDashboard.putNumber("Raw Odometry Error", rawOdometry.getPoseMeters().getTranslation().getDistance(truePose.getTranslation()));
+        }
+    }
 
+    public void updateModules(){
         // Update SmartDashboard data for each module
         frontLeft.update();
         frontRight.update();
@@ -90,9 +290,63 @@ public class SwerveSubsystem extends SubsystemBase {
 
     // Get the Rotation2d of the Robot
     public Rotation2d getRotation2d(){
+        if (driveSim != null){
+            return new Rotation2d(driveSim.getHeading().getRadians() - simYawOffsetRadians);
+        }
         return Rotation2d.fromDegrees(gyro.getYaw());
     }
 
+    // Tilt along field X in degrees, positive when the end of the station farther from the blue wall is up
+    public double getChargeStationTilt(){
+        double heading = getPose().getRotation().getRadians();
+        return pitch * Math.cos(heading) - roll * Math.sin(heading);
+    }
+
+    public double getChargeStationTiltRate(){
+        double heading = getPose().getRotation().getRadians();
+        return pitchRate * Math.cos(heading) - rollRate * Math.sin(heading);
+    }
+
+
+    /* --------------------> Drive with Chassis Speeds <-------------------- */
+
+    // Robot relative speeds, limited by the setpoint generator when it's enabled
+    public void drive(ChassisSpeeds speeds){
+        SwerveModuleState[] states = DriveConstants.kUseSetpointGenerator
+            ? setpointGenerator.generate(speeds)
+            : DriveConstants.kSwerveDriveKinematics.toSwerveModuleStates(speeds);
+
+        if (DriveConstants.kUseTractionControl){
+            SlipRejectingOdometry odometry = poseEstimator.getOdometry();
+            for (int i = 0; i < modules.length; i++){
+                wheelSpeeds[i] = modules[i].getDriveVelocity();
+                wheelAngles[i] = new Rotation2d(modules[i].getTurningPosition());
+            }
+            tractionController.apply(states, wheelSpeeds, wheelAngles, odometry.getVelocityX(), odometry.getVelocityY(), odometry.getOmega());
+        }
+
+        setModuleStates(states);
+
+        // Traction control and the desaturation can cut the setpoint back after the generator, so
+        // the next step has to start from what the modules were actually sent
+        if (DriveConstants.kUseSetpointGenerator){
+            setpointGenerator.reset(states);
+        }
+    }
+
+    // Start the setpoint generator from what the modules are doing now
+    public void resetSetpoint(){
+        SwerveModuleState[] states = getModuleStates();
+        setpointGenerator.reset(DriveConstants.kSwerveDriveKinematics.toChassisSpeeds(states), states);
+    }
+
+    public SwerveModuleState[] getModuleStates(){
+        SwerveModuleState[] states = new SwerveModuleState[modules.length];
+        for (int i = 0; i < modules.length; i++){
+            states[i] = modules[i].getState();
+        }
+        return states;
+    }
 
     /* --------------------> Set the Swerve Module States <-------------------- */
     public void setModuleStates(SwerveModuleState[] desiredStates){
@@ -101,14 +355,64 @@ public class SwerveSubsystem extends SubsystemBase {
         SwerveDriveKinematics.desaturateWheelSpeeds(desiredStates, 
         DriveConstants.kPhysicalMaxSpeedMetersPerSecond);
 
+        wheelsLocked = false;
+
+        // With the fast loop running the modules are written from fastPeriodic() instead
+        if (LoopConstants.kUseFastControlLoop){
+            for (int i = 0; i < modules.length; i++){
+                desiredStateBuffer[2 * i] = desiredStates[i].speedMetersPerSecond;
+                desiredStateBuffer[2 * i + 1] = desiredStates[i].angle.getRadians();
+            }
+            desiredStateHandoff.write(desiredStateBuffer);
+            return;
+        }
+
         frontLeft.setDesiredState(desiredStates[0]);
         frontRight.setDesiredState(desiredStates[1]);
         backLeft.setDesiredState(desiredStates[2]);
         backRight.setDesiredState(desiredStates[3]);
     }
 
+    /* --------------------> Fast Control Loop <-------------------- */
+
+    // Runs on the fast Notifier (see MultiRateScheduler), not the command loop
+    public void fastPeriodic(){
+
+        if (wheelsLocked){
+            for (int i = 0; i < modules.length; i++){
+                modules[i].holdAngle(lockAngles[i]);
+            }
+        } else {
+            desiredStateHandoff.read(fastDesiredStateBuffer);
+            for (int i = 0; i < modules.length; i++){
+                modules[i].setDesiredState(fastDesiredStateBuffer[2 * i], fastDesiredStateBuffer[2 * i + 1]);
+            }
+        }
+
+        publishMeasuredPositions(fastMeasuredPositionBuffer);
+    }
+
+    private void publishMeasuredPositions(double[] buffer){
+        for (int i = 0; i < modules.length; i++){
+            buffer[2 * i] = modules[i].getDrivePosition();
+            buffer[2 * i + 1] = modules[i].getTurningPosition();
+        }
+        measuredPositionHandoff.write(buffer);
+    }
+
     /* --------------------> Get the Swerve Module Positions <-------------------- */
     public SwerveModulePosition[] getModulePositions() {
+
+        // Positions measured by the fast loop, so the command loop doesn't read the encoders again
+        if (LoopConstants.kUseFastControlLoop){
+            measuredPositionHandoff.read(measuredPositionBuffer);
+            SwerveModulePosition[] positions = new SwerveModulePosition[modules.length];
+            for (int i = 0; i < modules.length; i++){
+                positions[i] = new SwerveModulePosition(measuredPositionBuffer[2 * i], new Rotation2d(measuredPositionBuffer[2 * i + 1]));
+            }
+            return positions;
+        }
+
         return( new SwerveModulePosition[]{
             frontLeft.getPosition(),
             frontRight.getPosition(),
@@ -116,24 +420,65 @@ public class SwerveSubsystem extends SubsystemBase {
             backRight.getPosition()});
     }
 
+    // Field relative velocity from the slip rejecting odometry
+    public Translation2d getFieldVelocity(){
+        SlipRejectingOdometry odometry = poseEstimator.getOdometry();
+        return new Translation2d(odometry.getVelocityX(), odometry.getVelocityY()).rotateBy(getPose().getRotation());
+    }
+
+    // Turn rate in rad/s, counterclockwise positive
+    public double getTurnRate(){
+        return poseEstimator.getOdometry().getOmega();
+    }
+
     // Get the current Pose2d of the robot
     public Pose2d getPose(){
-        return swerveDriveOdometry.getPoseMeters();
+        return poseEstimator.getEstimatedPosition();
+    }
+
+
+    // Field targets only mean something once the pose is in the field frame, either reset to a known
+    // start or corrected by vision. Until then it's measured from wherever the robot booted.
+    public boolean hasFieldPose(){
+        return fieldPoseKnown || poseEstimator.getAcceptedMeasurements() > 0;
     }
 
 
     /* --------------------> Reset the Swerve Drive Odometry <-------------------- */
     public void resetOdometry(Pose2d pose){
-        swerveDriveOdometry.resetPosition(getRotation2d(), getModulePositions(), pose);
+        resetSimPose(pose);
+        poseEstimator.resetPosition(getRotation2d(), getModulePositions(), pose);
+        fieldPoseKnown = true;
     }
 
     public void resetOdometry(Pose2d pose, Rotation2d rotation){
-        swerveDriveOdometry.resetPosition(rotation, getModulePositions(), pose);
+        resetSimPose(pose);
+        poseEstimator.resetPosition(rotation, getModulePositions(), pose);
+        fieldPoseKnown = true;
+    }
+
+    // In simulation the robot is placed where the odometry is reset to
+    private void resetSimPose(Pose2d pose){
+        if (driveSim != null){
+            driveSim.resetPose(pose);
+            chargeStationSim.reset();
+            rawOdometry.resetPosition(getRotation2d(), getModulePositions(), pose);
+        }
+    }
+
+    // Shove the simulated robot sideways without the wheels seeing it
+    public void simulateCollision(double dx, double dy){
+        if (driveSim != null){
+            driveSim.applyCollision(dx, dy, 0.05);
+        }
     }
 
     // Reset the gyro heading
     public void resetHeading(){
         gyro.setYaw(0);
+        if (driveSim != null){
+            simYawOffsetRadians = driveSim.getHeading().getRadians();
+        }
     }
     
     // Reset the module encoders
@@ -144,8 +489,72 @@ public class SwerveSubsystem extends SubsystemBase {
         backRight.resetEncoders();
     }
 
+    // Lock the wheels in an X, call every loop while it should hold
+    public void lockWheels(){
+        wheelsLocked = true;
+        if (LoopConstants.kUseFastControlLoop){
+            return;
+        }
+        for (int i = 0; i < modules.length; i++){
+            modules[i].holdAngle(lockAngles[i]);
+        }
+    }
+
+    /* --------------------> Current Limits <-------------------- */
+
+    // Per motor, set by PowerManager
+    public void setDriveCurrentLimit(int amps){
+        for (SwerveModule module : modules){
+            module.setDriveCurrentLimit(amps);
+        }
+    }
+
+    public void setTurnCurrentLimit(int amps){
+        for (SwerveModule module : modules){
+            module.setTurnCurrentLimit(amps);
+        }
+    }
+
+    // All four modules together
+    public double getDriveCurrent(){
+        double current = 0.0;
+        for (SwerveModule module : modules){
+            current += module.getDriveCurrent();
+        }
+        return current;
+    }
+
+    public double getTurnCurrent(){
+        double current = 0.0;
+        for (SwerveModule module : modules){
+            current += module.getTurnCurrent();
+        }
+        return current;
+    }
+
+    public int getModuleCount(){
+        return modules.length;
+    }
+
+    public SwerveModule getModule(int index){
+        return modules[index];
+    }
+
+    // Set by ThermalMonitor, lowers the setpoint generator's acceleration limit
+    public void setAccelerationScale(double scale){
+        setpointGenerator.setAccelerationScale(scale);
+    }
+
     // Stop the swerve drive
     public void stopSwerve(){
+        wheelsLocked = false;
+        if (LoopConstants.kUseFastControlLoop){
+            // Zero speed setpoints make the fast loop stop each module
+            Arrays.fill(desiredStateBuffer, 0.0);
+            desiredStateHandoff.write(desiredStateBuffer);
+            return;
+        }
+
         frontLeft.stop();
         frontRight.stop();
         backLeft.stop();
@@ -3,35 +3,33 @@ package frc.robot.subsystems;
 import com.ctre.phoenix.sensors.AbsoluteSensorRange;
 import com.ctre.phoenix.sensors.CANCoder;
 import com.ctre.phoenix.sensors.SensorInitializationStrategy;
-import com.revrobotics.CANSparkMax;
-import com.revrobotics.SparkMaxAbsoluteEncoder;
-import com.revrobotics.SparkMaxPIDController;
-import com.revrobotics.CANSparkMax.ControlType;
-import com.revrobotics.CANSparkMax.IdleMode;
-import com.revrobotics.CANSparkMaxLowLevel.MotorType;
-import com.revrobotics.SparkMaxAbsoluteEncoder.Type;
-import com.revrobotics.SparkMaxPIDController.ArbFFUnits;
+
+import java.util.function.DoubleSupplier;
 
 import edu.wpi.first.math.util.Units;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.utils.BackgroundTaskScheduler;
+import frc.robot.utils.GravityModel;
+import frc.robot.utils.IndependentSubsystem;
+import frc.robot.utils.SparkMaxMechanism;
+import frc.robot.utils.Constants.LoopConstants;
 import frc.robot.utils.Constants.WristConstants;
 
-public class WristSubsystem extends SubsystemBase {
-
-  private CANSparkMax wristMotor;
-  private SparkMaxAbsoluteEncoder wristMotorEncoder;
-  private SparkMaxPIDController wristPidController;
-  private CANCoder wristCanCoder;
+public class WristSubsystem extends SubsystemBase implements IndependentSubsystem {
 
   private final double wristMaxRotationRadians = Math.PI;
   private final double wristMinRotationRadians = 0.0;
-  private Double wristSetpoint = null;
 
-  public WristSubsystem() {
+  private CANCoder wristCanCoder;
+  private SparkMaxMechanism wrist;
+
+  // Wrist angle is relative to the arm, so gravity needs the arm angle too. Level until it's set.
+  private volatile DoubleSupplier armRotationSupplier = () -> 0.0; // Set once at startup, reads the arm's snapshot
+  private volatile double wristSnapshot = 0.0;
+  private volatile double lastFeedForward = 0.0;
 
-    wristMotor = new CANSparkMax(WristConstants.wristMotorId, MotorType.kBrushless);
-    wristMotor.restoreFactoryDefaults();
+  public WristSubsystem() {
 
     wristCanCoder = new CANCoder(WristConstants.wristCanCoderId);
     wristCanCoder.configFactoryDefault();
@@ -41,77 +39,114 @@ public class WristSubsystem extends SubsystemBase {
     wristCanCoder.configSensorInitializationStrategy(SensorInitializationStrategy.BootToAbsolutePosition);
     wristCanCoder.configGetFeedbackTimeBase();
 
-    wristSetpoint = Units.degreesToRadians(wristCanCoder.getAbsolutePosition() + WristConstants.wristCanCoderOffset);
-
-    wristMotor.setInverted(WristConstants.wristMotorReversed);
-    wristMotorEncoder = wristMotor.getAbsoluteEncoder(Type.kDutyCycle);
-    wristPidController = wristMotor.getPIDController();
-    wristPidController.setFeedbackDevice(wristMotorEncoder);
-
-    wristPidController.setP(WristConstants.kP);
-    wristPidController.setI(WristConstants.kI);
-    wristPidController.setD(WristConstants.kD);
-    wristPidController.setIZone(WristConstants.kIz);
-    wristPidController.setFF(WristConstants.kFF);
-    wristPidController.setOutputRange(WristConstants.wristMinOutput, WristConstants.wristMaxOutput);
-
-    wristPidController.setSmartMotionMaxVelocity(WristConstants.wristMaxVel, 0);
-    wristPidController.setSmartMotionMinOutputVelocity(WristConstants.wristMinVel, 0);
-    wristPidController.setSmartMotionMaxAccel(WristConstants.wristMaxAccel, 0);
-    wristPidController.setSmartMotionAllowedClosedLoopError(WristConstants.allowedError, 0);
+    // Position comes from the CANCoder, the SparkMax's absolute encoder is only its feedback device
+    wrist = new SparkMaxMechanism(new SparkMaxMechanism.Config("Wrist", WristConstants.wristMotorId)
+      .inverted(WristConstants.wristMotorReversed)
+      .pid(WristConstants.kP, WristConstants.kI, WristConstants.kD, WristConstants.kIz, WristConstants.kFF)
+      .outputRange(WristConstants.wristMinOutput, WristConstants.wristMaxOutput)
+      .smartMotion(WristConstants.wristMaxVel, WristConstants.wristMinVel, WristConstants.wristMaxAccel, WristConstants.allowedError)
+      .currentLimit(WristConstants.wristMotorCurrentLimit)
+      .units(2.0 * Math.PI, Units.degreesToRadians(WristConstants.wristCanCoderOffset))
+      .unitsPerMotorRotation(2.0 * Math.PI / WristConstants.wristGearing)
+      .scalingVerified(WristConstants.wristGearingVerified)
+      .range(wristMinRotationRadians, wristMaxRotationRadians)
+      .goalTolerance(WristConstants.wristGoalToleranceRadians)
+      .positionSource(() -> Units.degreesToRadians(wristCanCoder.getPosition() + WristConstants.wristCanCoderOffset)));
+
+    snapshot(); // Seeded so the first loop doesn't see 0
+    BackgroundTaskScheduler.getInstance().register("Wrist Telemetry", LoopConstants.kTelemetryPeriodSeconds, this::updateSmartDashboard);
+  }
 
-    wristMotor.setSmartCurrentLimit(WristConstants.wristMotorCurrentLimit);
-    wristMotor.setIdleMode(IdleMode.kBrake);
-    wristMotor.burnFlash();
+  @Override
+  public void snapshot() {
+    wristSnapshot = wrist.getPosition();
   }
 
+  // Run by ParallelPeriodicRunner before the command scheduler
   @Override
-  public void periodic() {
-    if (wristSetpoint != null){
-      if (wristSetpoint > wristMaxRotationRadians){
-        wristSetpoint = wristMaxRotationRadians;
-      } else if (wristSetpoint < wristMinRotationRadians){
-        wristSetpoint = wristMinRotationRadians;
-      }
-
-      double cosineScalar = Math.cos(getWristPosition());
-      double feedForward = WristConstants.gravityFF * cosineScalar;
-      wristPidController.setReference(rotateRadiansToRotations(wristSetpoint), ControlType.kSmartMotion, 0, feedForward, ArbFFUnits.kPercentOut);
+  public void independentPeriodic() {
+    if (!LoopConstants.kUseFastControlLoop){
+      applyWristSetpoint();
     }
+  }
 
-    SmartDashboard.putNumber("Wrist Position Radians", getWristPosition());
+  public void updateSmartDashboard(){
+    wrist.updateSmartDashboard();
     SmartDashboard.putNumber("Wrist Position Raw", wristCanCoder.getAbsolutePosition());
-    SmartDashboard.putNumber("Wrist Setpoint", wristSetpoint);
+    SmartDashboard.putNumber("Wrist Gravity FF", lastFeedForward);
+  }
+
+  @Override
+  public void simulationPeriodic() {
+    wrist.simulationPeriodic();
+  }
+
+  // Runs on the fast Notifier (see MultiRateScheduler) so the feedforward tracks the wrist at the fast rate
+  public void fastPeriodic(){
+    applyWristSetpoint();
+  }
+
+  private void applyWristSetpoint(){
+    double feedForward = calculateGravityFeedForward(armRotationSupplier.getAsDouble(), getWristPosition());
+    lastFeedForward = feedForward;
+    wrist.apply(feedForward);
   }
 
   public void rotateWrist(double speed){
-    wristMotor.set(speed);
+    wrist.set(speed);
   }
 
   public void jogRight(){
-    wristSetpoint -= Units.degreesToRadians(12);
+    wrist.adjustSetpoint(-Units.degreesToRadians(12));
   }
 
   public void jogLeft(){
-    wristSetpoint += Units.degreesToRadians(12);
+    wrist.adjustSetpoint(Units.degreesToRadians(12));
   }
 
+  // Clamped to the wrist's range
   public void setWristPosition(double radians){
-    this.wristSetpoint = radians;
-    wristSetpoint = radians;
+    wrist.setSetpoint(radians);
+  }
+
+  // Static so the JIT warmup can run it without touching the motor
+  public static double calculateGravityFeedForward(double armRadians, double wristRadians){
+    return GravityModel.wristFeedForward(armRadians, wristRadians);
+  }
+
+  public void setArmRotationSupplier(DoubleSupplier armRotationSupplier){
+    this.armRotationSupplier = armRotationSupplier;
   }
 
   public double getWristPosition(){
-    return Units.degreesToRadians(wristCanCoder.getPosition() + WristConstants.wristCanCoderOffset);
+    return wrist.getPosition();
+  }
+
+  // As of the start of this loop's subsystem periodics, safe to read from any of them
+  public double getWristPositionSnapshot(){
+    return wristSnapshot;
+  }
+
+  public boolean atGoal(){
+    return wrist.atGoal();
+  }
+
+  // Set by PowerManager
+  public void setCurrentLimit(int amps){
+    wrist.setCurrentLimit(amps);
+  }
+
+  public double getMotorCurrent(){
+    return wrist.getCurrent();
   }
 
-  private double rotateRadiansToRotations(double rotateRadians) {
-    // Convert input radians to rotations, [0, 1]
-    return Units.radiansToRotations(rotateRadians + Units.degreesToRadians(WristConstants.wristCanCoderOffset));
+  // Puts the simulated wrist somewhere and holds it there
+  public void resetSimulation(double radians){
+    wrist.resetSimulation(radians);
   }
 
   public void stopWrist(){
-    wristMotor.set(0);
+    wrist.set(0);
   }
 
 }
@@ -0,0 +1,170 @@
+// Decides when the arm brake holds the arm instead of the motor
+// The brake engages once the arm has sat at its setpoint for kSettleSeconds, and once the solenoid
+// has had time to grip the motor is turned off instead of stalling against gravity. A new setpoint
+// releases it, and the motor holds the old setpoint until the release latency has passed so the arm
+// doesn't fight the brake. Commands that know a move is coming call requestRelease() early, so by the
+// time the setpoint changes the brake is already off and the motion starts right away.
+//
+// The release latency starts at kReleaseLatencySeconds and is measured by probeReleaseLatency(): on
+// the next release the new setpoint is applied immediately, and the time until the arm starts moving
+// is the latency.
+
+package frc.robot.utils;
+
+import frc.robot.utils.Constants.ArmBrakeConstants;
+
+public class ArmBrakeController {
+
+    public enum BrakeState {RELEASED, ENGAGING, ENGAGED, RELEASING}
+
+    // Written on the loop running update(), read from the main thread by the getters
+    private volatile BrakeState state = BrakeState.RELEASED;
+    private double stateStartTime = 0.0;
+    private double settledSince = -1.0;
+    private double holdOffUntil = 0.0;
+    private double heldSetpoint = 0.0;
+    private double angleAtRelease = 0.0;
+
+    private volatile boolean enabled = ArmBrakeConstants.kAutoBrakeEnabled;
+    private volatile boolean releaseRequested = false;
+    private volatile boolean probeRequested = false;
+    private volatile boolean probing = false;
+    private volatile double releaseLatencySeconds = ArmBrakeConstants.kReleaseLatencySeconds;
+
+    // Returns the setpoint the motor should hold this loop, or NaN when the brake has the arm
+    public double update(double now, double setpoint, double angle, double velocity){
+
+        if (!enabled){
+            if (state != BrakeState.RELEASED){
+                setState(BrakeState.RELEASED, now);
+            }
+            releaseRequested = false;
+            return setpoint;
+        }
+
+        // Already off or on its way off, the request only keeps it from grabbing again before the move
+        if (releaseRequested && (state == BrakeState.RELEASED || state == BrakeState.RELEASING)){
+            holdOffUntil = now + ArmBrakeConstants.kPreReleaseHoldSeconds;
+            settledSince = -1.0;
+            releaseRequested = false;
+        }
+
+        boolean newSetpoint = Math.abs(setpoint - heldSetpoint) > ArmBrakeConstants.kSettleToleranceRadians;
+
+        switch (state){
+            case RELEASED:
+                boolean settled = Math.abs(setpoint - angle) < ArmBrakeConstants.kSettleToleranceRadians
+                    && Math.abs(velocity) < ArmBrakeConstants.kSettleVelocityRadPerSec;
+                if (!settled || now < holdOffUntil){
+                    settledSince = -1.0;
+                    return setpoint;
+                }
+                if (settledSince < 0.0){
+                    settledSince = now;
+                }
+                if (now - settledSince >= ArmBrakeConstants.kSettleSeconds){
+                    heldSetpoint = setpoint;
+                    setState(BrakeState.ENGAGING, now);
+                }
+                return setpoint;
+
+            case ENGAGING:
+                // Keep holding with the motor until the brake has actually gripped
+                if (newSetpoint || releaseRequested){
+                    release(now, angle);
+                    return heldSetpoint;
+                }
+                if (now - stateStartTime >= ArmBrakeConstants.kEngageLatencySeconds){
+                    setState(BrakeState.ENGAGED, now);
+                    return Double.NaN;
+                }
+                return heldSetpoint;
+
+            case ENGAGED:
+                if (newSetpoint || releaseRequested){
+                    release(now, angle);
+                    return probing ? setpoint : heldSetpoint;
+                }
+                return Double.NaN;
+
+            case RELEASING:
+                if (probing){
+                    // Measuring, so the move starts now and the brake decides when the arm moves
+                    if (Math.abs(angle - angleAtRelease) > ArmBrakeConstants.kProbeOnsetRadians){
+                        releaseLatencySeconds = now - stateStartTime;
+                        probing = false;
+                        setState(BrakeState.RELEASED, now);
+                    } else if (now - stateStartTime > ArmBrakeConstants.kProbeTimeoutSeconds){
+                        probing = false;
+                        setState(BrakeState.RELEASED, now);
+                    }
+                    return setpoint;
+                }
+                if (now - stateStartTime >= releaseLatencySeconds){
+                    setState(BrakeState.RELEASED, now);
+                    return setpoint;
+                }
+                return heldSetpoint;
+
+            default:
+                return setpoint;
+        }
+    }
+
+    private void release(double now, double angle){
+        // A release with no new setpoint is ahead of a planned move, don't grab again right away
+        if (releaseRequested){
+            holdOffUntil = now + ArmBrakeConstants.kPreReleaseHoldSeconds;
+            releaseRequested = false;
+        }
+        probing = probeRequested;
+        probeRequested = false;
+        angleAtRelease = angle;
+        setState(BrakeState.RELEASING, now);
+    }
+
+    private void setState(BrakeState newState, double now){
+        state = newState;
+        stateStartTime = now;
+        settledSince = -1.0;
+    }
+
+    /* --------------------> Requests <-------------------- */
+
+    // Release ahead of a move that's about to be commanded
+    public void requestRelease(){
+        releaseRequested = true;
+    }
+
+    // Measure the release latency the next time the brake lets go
+    public void probeReleaseLatency(){
+        probeRequested = true;
+    }
+
+    public void setEnabled(boolean enabled){
+        this.enabled = enabled;
+    }
+
+    /* --------------------> Getters <-------------------- */
+
+    // What the solenoid should be doing, the brake is applied as soon as it's commanded
+    public boolean isBrakeCommanded(){
+        return state == BrakeState.ENGAGING || state == BrakeState.ENGAGED;
+    }
+
+    public BrakeState getState(){
+        return state;
+    }
+
+    public boolean isEnabled(){
+        return enabled;
+    }
+
+    public boolean isProbing(){
+        return probing || probeRequested;
+    }
+
+    public double getReleaseLatencySeconds(){
+        return releaseLatencySeconds;
+    }
+}
@@ -0,0 +1,137 @@
+// LQR + Kalman filter arm rotation controller, gain scheduled on arm extension
+// The arm is modeled as a single jointed arm (angle, angular velocity) driven by a NEO through
+// kArmGearing. Extending the arm moves mass outward, so the plant's moment of inertia changes a lot
+// from retracted to full extension. One LinearSystemLoop (plant, LQR, Kalman filter over the CANCoder
+// angle) is built per extension breakpoint up front, and the loop nearest the current extension is
+// used. The reference follows a trapezoid profile to the goal. Gravity isn't part of the linear
+// model, the caller adds its own feedforward on top of the returned voltage.
+
+package frc.robot.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.Nat;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.controller.LinearQuadraticRegulator;
+import edu.wpi.first.math.estimator.KalmanFilter;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N2;
+import edu.wpi.first.math.system.LinearSystem;
+import edu.wpi.first.math.system.LinearSystemLoop;
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.math.system.plant.LinearSystemId;
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
+
+import frc.robot.utils.Constants.ArmStateSpaceConstants;
+import frc.robot.utils.Constants.CenterOfGravityConstants;
+
+public class ArmStateSpaceController {
+
+    private final double dtSeconds;
+    private final List<LinearSystemLoop<N2, N1, N1>> loops = new ArrayList<>();
+    private int activeLoop = -1;
+
+    // Replaced from the main thread when derating, read on the fast loop
+    private volatile TrapezoidProfile.Constraints constraints = new TrapezoidProfile.Constraints(
+        ArmStateSpaceConstants.kMaxVelocityRadPerSec, ArmStateSpaceConstants.kMaxAccelerationRadPerSec2);
+    private TrapezoidProfile.State reference = new TrapezoidProfile.State();
+    private final TrapezoidProfile.State goal = new TrapezoidProfile.State();
+
+    // Reused every loop instead of building new vectors
+    private final Matrix<N1, N1> measurement = VecBuilder.fill(0.0);
+    private final Matrix<N2, N1> nextReference = VecBuilder.fill(0.0, 0.0);
+
+    public ArmStateSpaceController(double dtSeconds){
+        this.dtSeconds = dtSeconds;
+
+        // Solving the LQR and Kalman gains is slow, so every breakpoint is done here
+        for (int i = 0; i < ArmStateSpaceConstants.kExtensionBreakpoints; i++){
+            double extension = ArmStateSpaceConstants.kMaxExtensionMeters * i / (ArmStateSpaceConstants.kExtensionBreakpoints - 1);
+            LinearSystem<N2, N1, N1> plant = LinearSystemId.createSingleJointedArmSystem(
+                DCMotor.getNEO(1), getMomentOfInertia(extension), ArmStateSpaceConstants.kArmGearing);
+
+            LinearQuadraticRegulator<N2, N1, N1> regulator = new LinearQuadraticRegulator<>(plant,
+                VecBuilder.fill(ArmStateSpaceConstants.kPositionToleranceRadians, ArmStateSpaceConstants.kVelocityToleranceRadPerSec),
+                VecBuilder.fill(ArmStateSpaceConstants.kMaxVoltage), dtSeconds);
+            KalmanFilter<N2, N1, N1> observer = new KalmanFilter<>(Nat.N2(), Nat.N1(), plant,
+                VecBuilder.fill(ArmStateSpaceConstants.kModelPositionStdDev, ArmStateSpaceConstants.kModelVelocityStdDev),
+                VecBuilder.fill(ArmStateSpaceConstants.kEncoderStdDevRadians), dtSeconds);
+
+            loops.add(new LinearSystemLoop<>(plant, regulator, observer, ArmStateSpaceConstants.kMaxVoltage, dtSeconds));
+        }
+    }
+
+    // Arm and wrist as point masses at their CGs, same geometry as CenterOfGravityLimiter
+    public static double getMomentOfInertia(double extensionMeters){
+        double armCg = CenterOfGravityConstants.kArmBaseCgMeters + 0.5 * extensionMeters;
+        double wristCg = CenterOfGravityConstants.kArmBaseLengthMeters + extensionMeters + CenterOfGravityConstants.kWristCgOffsetMeters;
+        return CenterOfGravityConstants.kArmMassKg * armCg * armCg + CenterOfGravityConstants.kWristMassKg * wristCg * wristCg;
+    }
+
+    /* --------------------> Control <-------------------- */
+
+    // Start from rest at the measured angle, call when switching into this mode
+    public void reset(double measuredRadians){
+        reference = new TrapezoidProfile.State(measuredRadians, 0.0);
+        goal.position = measuredRadians;
+        goal.velocity = 0.0;
+        activeLoop = -1;
+    }
+
+    public void setGoal(double radians){
+        goal.position = radians;
+    }
+
+    // Slows the profile down, for thermal derating
+    public void setConstraintScale(double scale){
+        constraints = new TrapezoidProfile.Constraints(
+            ArmStateSpaceConstants.kMaxVelocityRadPerSec * scale, ArmStateSpaceConstants.kMaxAccelerationRadPerSec2 * scale);
+    }
+
+    // Voltage to apply this loop, without gravity
+    public double calculate(double measuredRadians, double extensionMeters){
+        LinearSystemLoop<N2, N1, N1> loop = selectLoop(measuredRadians, extensionMeters);
+
+        reference = new TrapezoidProfile(constraints, goal, reference).calculate(dtSeconds);
+        nextReference.set(0, 0, reference.position);
+        nextReference.set(1, 0, reference.velocity);
+        loop.setNextR(nextReference);
+
+        measurement.set(0, 0, measuredRadians);
+        loop.correct(measurement);
+        loop.predict(dtSeconds);
+
+        return loop.getU(0);
+    }
+
+    private LinearSystemLoop<N2, N1, N1> selectLoop(double measuredRadians, double extensionMeters){
+        int index = (int) Math.round(MathUtil.clamp(extensionMeters / ArmStateSpaceConstants.kMaxExtensionMeters, 0.0, 1.0)
+            * (ArmStateSpaceConstants.kExtensionBreakpoints - 1));
+
+        if (index != activeLoop){
+            LinearSystemLoop<N2, N1, N1> next = loops.get(index);
+            // Carry the estimate over so switching loops doesn't bump the arm
+            if (activeLoop < 0){
+                next.reset(VecBuilder.fill(measuredRadians, 0.0));
+            } else {
+                LinearSystemLoop<N2, N1, N1> previous = loops.get(activeLoop);
+                next.reset(VecBuilder.fill(previous.getXHat(0), previous.getXHat(1)));
+            }
+            activeLoop = index;
+        }
+        return loops.get(activeLoop);
+    }
+
+    /* --------------------> Getters <-------------------- */
+
+    public double getEstimatedVelocity(){
+        return activeLoop < 0 ? 0.0 : loops.get(activeLoop).getXHat(1);
+    }
+
+    public double getReferencePosition(){
+        return reference.position;
+    }
+}
@@ -0,0 +1,131 @@
+// Builds only the selected autonomous routine, in the background while disabled
+//
+// Loading and generating the path group is the slow part, so it runs on a background thread as soon
+// as a routine is picked on the chooser. The command itself is composed on the main thread once the
+// paths are in (composition isn't thread safe, and it's quick). Picking a different routine drops
+// the old one so only one is ever held in memory. If autonomous starts before the build is done the
+// robot gets a do-nothing command instead of blocking the loop.
+
+package frc.robot.utils;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.pathplanner.lib.PathPlanner;
+import com.pathplanner.lib.PathPlannerTrajectory;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.smartdashboard.SendableChooser;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.InstantCommand;
+
+public class AutoRegistry {
+
+    private final SendableChooser<AutoRoutine> chooser = new SendableChooser<>();
+    private boolean hasDefault = false;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Auto Builder");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    // The routine being built or ready, only touched from the main thread
+    private AutoRoutine selected;
+    private Future<List<PathPlannerTrajectory>> loading;
+    private Command command;
+    private long buildStartNanos;
+    private long heapBeforeBytes;
+
+    public AutoRegistry(){
+        SmartDashboard.putData("Auto Routine", chooser);
+    }
+
+    // The first routine registered is the default
+    public void register(AutoRoutine routine){
+        if (!hasDefault){
+            chooser.setDefaultOption(routine.getName(), routine);
+            hasDefault = true;
+        } else {
+            chooser.addOption(routine.getName(), routine);
+        }
+    }
+
+    /* --------------------> Background Build <-------------------- */
+
+    // Run every disabled loop
+    public void update(){
+        AutoRoutine routine = chooser.getSelected();
+        if (routine != selected){
+            startBuild(routine);
+        }
+
+        if (loading != null && loading.isDone()){
+            finishBuild();
+        }
+    }
+
+    private void startBuild(AutoRoutine routine){
+        if (loading != null){
+            loading.cancel(false);
+        }
+        selected = routine;
+        command = null;
+        loading = null;
+        SmartDashboard.putBoolean("Auto Ready", false);
+        if (routine == null){
+            return;
+        }
+
+        Runtime runtime = Runtime.getRuntime();
+        heapBeforeBytes = runtime.totalMemory() - runtime.freeMemory();
+        buildStartNanos = System.nanoTime();
+        loading = executor.submit(() -> loadPaths(routine));
+    }
+
+    private static List<PathPlannerTrajectory> loadPaths(AutoRoutine routine){
+        if (routine.getPathGroup() == null){
+            return Collections.emptyList();
+        }
+        return PathPlanner.loadPathGroup(routine.getPathGroup(), routine.getConstraints());
+    }
+
+    private void finishBuild(){
+        List<PathPlannerTrajectory> paths;
+        try {
+            paths = loading.get();
+        } catch (InterruptedException | ExecutionException e){
+            DriverStation.reportError("Failed to load auto " + selected.getName() + ": " + e, e.getStackTrace());
+            loading = null;
+            return;
+        }
+        loading = null;
+
+        command = selected.getBuilder().build(paths);
+
+        // Heap is approximate, other threads allocate too
+        Runtime runtime = Runtime.getRuntime();
+        double buildMillis = (System.nanoTime() - buildStartNanos) / 1e6;
+        double heapKilobytes = (runtime.totalMemory() - runtime.freeMemory() - heapBeforeBytes) / 1024.0;
+        SmartDashboard.putNumber("Auto " + selected.getName() + " Build ms", buildMillis);
+        SmartDashboard.putNumber("Auto " + selected.getName() + " Heap KB", heapKilobytes);
+        SmartDashboard.putBoolean("Auto Ready", true);
+    }
+
+    /* --------------------> Autonomous Init <-------------------- */
+
+    public Command getCommand(){
+        update();
+        if (command != null){
+            return command;
+        }
+        DriverStation.reportWarning("Auto " + (selected == null ? "none" : selected.getName()) + " not built in time, doing nothing", false);
+        return new InstantCommand();
+    }
+}
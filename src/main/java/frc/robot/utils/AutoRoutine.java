@@ -0,0 +1,53 @@
+// Declarative description of an autonomous routine: the PathPlanner path group it drives and how to
+// turn the loaded paths into a command. Nothing is loaded or built until the routine is selected,
+// see AutoRegistry.
+
+package frc.robot.utils;
+
+import java.util.List;
+
+import com.pathplanner.lib.PathConstraints;
+import com.pathplanner.lib.PathPlannerTrajectory;
+
+import edu.wpi.first.wpilibj2.command.Command;
+
+public class AutoRoutine {
+
+    public interface Builder {
+        // Runs on the main thread, command composition isn't thread safe
+        Command build(List<PathPlannerTrajectory> paths);
+    }
+
+    private final String name;
+    private final String pathGroup; // null for routines that don't drive a path
+    private final PathConstraints constraints;
+    private final Builder builder;
+
+    public AutoRoutine(String name, String pathGroup, PathConstraints constraints, Builder builder){
+        this.name = name;
+        this.pathGroup = pathGroup;
+        this.constraints = constraints;
+        this.builder = builder;
+    }
+
+    // Routine with no paths
+    public AutoRoutine(String name, Builder builder){
+        this(name, null, null, builder);
+    }
+
+    public String getName(){
+        return name;
+    }
+
+    public String getPathGroup(){
+        return pathGroup;
+    }
+
+    public PathConstraints getConstraints(){
+        return constraints;
+    }
+
+    public Builder getBuilder(){
+        return builder;
+    }
+}
@@ -0,0 +1,127 @@
+// Low priority periodic work (telemetry, diagnostics, slow sensor readouts) that only runs
+// while there's time left in the current loop. Tasks that don't fit are deferred to the
+// next loop, and the round robin picks up where it left off. The task the round robin starts on
+// runs as long as the deadline hasn't passed, even if its estimate doesn't fit. Past the deadline
+// nothing runs, except a task that has been deferred kBackgroundMaxConsecutiveSkips loops in a row,
+// so a loop that's always late still can't starve one forever.
+
+package frc.robot.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+import frc.robot.utils.Constants.LoopConstants;
+
+public class BackgroundTaskScheduler {
+
+    private static BackgroundTaskScheduler instance;
+
+    // Global like the CommandScheduler so subsystems can register from their constructors
+    public static synchronized BackgroundTaskScheduler getInstance(){
+        if (instance == null){
+            instance = new BackgroundTaskScheduler();
+        }
+        return instance;
+    }
+
+    /* --------------------> Task <-------------------- */
+
+    private static class Task {
+        private final String name;
+        private final long periodMicros;
+        private final Runnable action;
+
+        private long lastRunMicros = 0;
+        private double estimatedRunMs = 0.0; // Smoothed run time, used to decide whether it fits
+        private long skips = 0;
+        private int consecutiveSkips = 0;
+        private double lastLatencyMs = 0.0; // Time between the task coming due and actually running
+        private double maxLatencyMs = 0.0;
+
+        private Task(String name, double periodSeconds, Runnable action){
+            this.name = name;
+            this.periodMicros = (long) (periodSeconds * 1e6);
+            this.action = action;
+        }
+
+        private boolean isDue(long now){
+            return now - lastRunMicros >= periodMicros;
+        }
+    }
+
+    private final List<Task> tasks = new ArrayList<>();
+    private int nextTask = 0;
+
+    private BackgroundTaskScheduler(){}
+
+    public void register(String name, double periodSeconds, Runnable action){
+        tasks.add(new Task(name, periodSeconds, action));
+    }
+
+    /* --------------------> Run Whatever Fits in the Budget <-------------------- */
+
+    // Call at the end of robotPeriodic() with the time the loop started
+    public void run(long loopStartMicros){
+
+        long deadline = loopStartMicros + (long) ((LoopConstants.kLoopBudgetSeconds - LoopConstants.kBackgroundReserveSeconds) * 1e6);
+        int taskCount = tasks.size();
+        boolean outOfTime = false;
+        int firstDeferred = -1;
+
+        for (int n = 0; n < taskCount; n++){
+            int index = (nextTask + n) % taskCount;
+            Task task = tasks.get(index);
+
+            long now = RobotController.getFPGATime();
+            if (!task.isDue(now)){
+                continue;
+            }
+
+            // Once one task doesn't fit, defer everything else that's due so the order is kept.
+            // The first one was deferred last loop (or is first in line), so it runs if there's any time left.
+            boolean starving = task.consecutiveSkips >= LoopConstants.kBackgroundMaxConsecutiveSkips;
+            boolean fits = now + (long) (task.estimatedRunMs * 1000.0) <= deadline;
+            if (!starving && (outOfTime || now > deadline || (n > 0 && !fits))){
+                outOfTime = true;
+                task.skips++;
+                task.consecutiveSkips++;
+                if (firstDeferred < 0){
+                    firstDeferred = index;
+                }
+                continue;
+            }
+
+            if (task.lastRunMicros != 0){
+                task.lastLatencyMs = (now - task.lastRunMicros - task.periodMicros) / 1000.0;
+                task.maxLatencyMs = Math.max(task.maxLatencyMs, task.lastLatencyMs);
+            }
+
+            task.action.run();
+
+            long end = RobotController.getFPGATime();
+            double runMs = (end - now) / 1000.0;
+            task.estimatedRunMs = task.estimatedRunMs == 0.0 ? runMs : 0.8 * task.estimatedRunMs + 0.2 * runMs;
+            task.lastRunMicros = now;
+            task.consecutiveSkips = 0;
+        }
+
+        // Next loop starts with whatever got deferred first
+        if (firstDeferred >= 0){
+            nextTask = firstDeferred;
+        }
+    }
+
+    /* --------------------> Stats <-------------------- */
+
+    public void publishStats(){
+        for (Task task : tasks){
+            SmartDashboard.putNumber("Background/" + task.name + " Skips", task.skips);
+            SmartDashboard.putNumber("Background/" + task.name + " Latency ms", task.lastLatencyMs);
+            SmartDashboard.putNumber("Background/" + task.name + " Max Latency ms", task.maxLatencyMs);
+            SmartDashboard.putNumber("Background/" + task.name + " Run ms", task.estimatedRunMs);
+        }
+    }
+}
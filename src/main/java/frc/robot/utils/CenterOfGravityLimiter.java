@@ -0,0 +1,137 @@
+// Drive speed and acceleration limits from where the arm puts the center of gravity
+//
+// The CG is the mass weighted sum of the chassis, the arm (its CG slides out with the extension) and
+// the wrist/intake at the end of the arm. Accelerating one way pushes the CG toward the opposite
+// wheel line, so the robot tips once a * h > g * (distance from the CG to that wheel line). That
+// gives a max acceleration per direction, scaled by kTipSafetyFactor. Speed in a direction is
+// capped so the robot can still stop within kStopTimeSeconds using the acceleration the other way.
+// All robot relative, x forward, y left, z up.
+
+package frc.robot.utils;
+
+import java.util.function.DoubleSupplier;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+import frc.robot.utils.Constants.CenterOfGravityConstants;
+import frc.robot.utils.Constants.DriveConstants;
+
+public class CenterOfGravityLimiter {
+
+    private static final double kGravity = 9.81;
+
+    private final DoubleSupplier armRotationSupplier;
+    private final DoubleSupplier armExtensionSupplier;
+    private final DoubleSupplier wristSupplier;
+
+    private double cgX, cgZ;
+
+    // Max acceleration in each robot relative direction, m/s^2
+    private double maxAccelForward, maxAccelBackward, maxAccelLeft, maxAccelRight;
+
+    private double lastVx = 0.0;
+    private double lastVy = 0.0;
+
+    public CenterOfGravityLimiter(DoubleSupplier armRotationSupplier, DoubleSupplier armExtensionSupplier, DoubleSupplier wristSupplier){
+        this.armRotationSupplier = armRotationSupplier;
+        this.armExtensionSupplier = armExtensionSupplier;
+        this.wristSupplier = wristSupplier;
+        update();
+    }
+
+    /* --------------------> Center of Gravity <-------------------- */
+
+    public void update(){
+        calculate(armRotationSupplier.getAsDouble(), armExtensionSupplier.getAsDouble(), wristSupplier.getAsDouble());
+    }
+
+    // Static inputs so it can be run for any arm pose (JIT warmup, dashboard checks)
+    public void calculate(double armRadians, double extensionMeters, double wristRadians){
+
+        double armCos = Math.cos(armRadians);
+        double armSin = Math.sin(armRadians);
+
+        // Arm CG moves out by half the extension, the wrist rides on the end
+        double armCgDistance = CenterOfGravityConstants.kArmBaseCgMeters + 0.5 * extensionMeters;
+        double armX = CenterOfGravityConstants.kArmPivotXMeters + armCgDistance * armCos;
+        double armZ = CenterOfGravityConstants.kArmPivotZMeters + armCgDistance * armSin;
+
+        double armEnd = CenterOfGravityConstants.kArmBaseLengthMeters + extensionMeters;
+        // Wrist angle is relative to the arm
+        double wristX = CenterOfGravityConstants.kArmPivotXMeters + armEnd * armCos + CenterOfGravityConstants.kWristCgOffsetMeters * Math.cos(armRadians + wristRadians);
+        double wristZ = CenterOfGravityConstants.kArmPivotZMeters + armEnd * armSin + CenterOfGravityConstants.kWristCgOffsetMeters * Math.sin(armRadians + wristRadians);
+
+        double totalMass = CenterOfGravityConstants.kChassisMassKg + CenterOfGravityConstants.kArmMassKg + CenterOfGravityConstants.kWristMassKg;
+        cgX = (CenterOfGravityConstants.kArmMassKg * armX + CenterOfGravityConstants.kWristMassKg * wristX) / totalMass;
+        cgZ = (CenterOfGravityConstants.kChassisMassKg * CenterOfGravityConstants.kChassisCgHeightMeters
+            + CenterOfGravityConstants.kArmMassKg * armZ + CenterOfGravityConstants.kWristMassKg * wristZ) / totalMass;
+
+        // The arm swings in the x-z plane, so the CG stays centered side to side
+        double halfLength = CenterOfGravityConstants.kWheelHalfLengthMeters;
+        double halfWidth = CenterOfGravityConstants.kWheelHalfWidthMeters;
+        double scale = CenterOfGravityConstants.kTipSafetyFactor * kGravity / Math.max(cgZ, 0.01);
+
+        maxAccelForward = Math.max(scale * (cgX + halfLength), 0.0); // Tips back over the rear wheels
+        maxAccelBackward = Math.max(scale * (halfLength - cgX), 0.0);
+        maxAccelLeft = scale * halfWidth;
+        maxAccelRight = scale * halfWidth;
+    }
+
+    /* --------------------> Limiting <-------------------- */
+
+    // Robot relative speeds in, robot relative speeds out
+    public ChassisSpeeds limit(ChassisSpeeds speeds, double dtSeconds){
+
+        // Fast enough that stopping in kStopTimeSeconds needs the acceleration the other way
+        double stopTime = CenterOfGravityConstants.kStopTimeSeconds;
+        double maxSpeed = DriveConstants.kPhysicalMaxSpeedMetersPerSecond;
+        double vx = MathUtil.clamp(speeds.vxMetersPerSecond,
+            -Math.min(maxAccelForward * stopTime, maxSpeed), Math.min(maxAccelBackward * stopTime, maxSpeed));
+        double vy = MathUtil.clamp(speeds.vyMetersPerSecond,
+            -Math.min(maxAccelLeft * stopTime, maxSpeed), Math.min(maxAccelRight * stopTime, maxSpeed));
+
+        vx = lastVx + MathUtil.clamp(vx - lastVx, -maxAccelBackward * dtSeconds, maxAccelForward * dtSeconds);
+        vy = lastVy + MathUtil.clamp(vy - lastVy, -maxAccelRight * dtSeconds, maxAccelLeft * dtSeconds);
+        lastVx = vx;
+        lastVy = vy;
+
+        return new ChassisSpeeds(vx, vy, speeds.omegaRadiansPerSecond);
+    }
+
+    public void reset(){
+        lastVx = 0.0;
+        lastVy = 0.0;
+    }
+
+    public void updateSmartDashboard(){
+        SmartDashboard.putNumber("CG X", cgX);
+        SmartDashboard.putNumber("CG Height", cgZ);
+        SmartDashboard.putNumber("CG Max Accel Forward", maxAccelForward);
+        SmartDashboard.putNumber("CG Max Accel Backward", maxAccelBackward);
+        SmartDashboard.putNumber("CG Max Accel Sideways", maxAccelLeft);
+    }
+
+    /* --------------------> Getters <-------------------- */
+
+    public double getCgX(){
+        return cgX;
+    }
+
+    public double getCgHeight(){
+        return cgZ;
+    }
+
+    public double getMaxAccelForward(){
+        return maxAccelForward;
+    }
+
+    public double getMaxAccelBackward(){
+        return maxAccelBackward;
+    }
+
+    public double getMaxAccelSideways(){
+        return maxAccelLeft;
+    }
+}
@@ -10,6 +10,135 @@ import edu.wpi.first.math.util.Units;
 
 public final class Constants {
 
+    /* --------------------> Robot Loop Constants <-------------------- */
+
+    public static final class LoopConstants{
+
+        // JIT warmup run while disabled, see JitWarmup
+        public static final boolean kJitWarmupEnabled = true;
+        public static final int kJitWarmupIterations = 20000; // Comfortably past the C2 compile thresholds
+        public static final double kJitWarmupBudgetSeconds = 0.005; // Per disabled loop, leaves room in the 20 ms period
+
+        // Loop times are recorded for this long after enabling to compare warm vs cold starts
+        public static final double kEnableStatsWindowSeconds = 1.0;
+
+        // Fast control loop for swerve module and arm/wrist feedforward writes, see MultiRateScheduler
+        public static final boolean kUseFastControlLoop = true;
+        public static final double kFastLoopPeriodSeconds = 0.005; // 200 Hz
+        public static final int kFastLoopPriority = 20; // Real-time priority, 1-99
+
+        // Dashboard and timing stats don't need to update every command loop
+        public static final double kTelemetryPeriodSeconds = 0.1;
+
+        // Background tasks only run until this far into the loop, see BackgroundTaskScheduler
+        public static final double kLoopBudgetSeconds = 0.02;
+        public static final double kBackgroundReserveSeconds = 0.004; // Left for NT and LiveWindow updates after robotPeriodic
+        public static final int kBackgroundMaxConsecutiveSkips = 10; // A task deferred this many loops in a row runs anyway
+
+        // Opt-in: run independent subsystem periodics concurrently, see ParallelPeriodicRunner
+        public static final boolean kParallelPeriodicEnabled = false;
+        public static final int kParallelPeriodicThreads = 2; // roboRIO has two cores
+    }
+
+    /* --------------------> Boot Constants <-------------------- */
+
+    public static final class BootConstants{
+
+        // How long the CDS training boot runs in simulation before exiting, long enough for the
+        // disabled loop and JIT warmup classes to load
+        public static final long kCdsTrainingMillis = 15000;
+    }
+
+    /* --------------------> Power Constants <-------------------- */
+
+    public static final class PowerConstants{
+
+        // TODO: ADJUST CONSTANTS, measure the resistance from a log of voltage vs current under load
+        public static final boolean kPowerManagerEnabled = true;
+        public static final double kBatteryResistanceOhms = 0.025; // Battery, main breaker and wiring
+        public static final double kMinVoltage = 7.5; // Stay this far above the 6.8 V brownout
+        public static final double kVoltageFilterSeconds = 0.1;
+        public static final double kDemandFilterSeconds = 0.08;
+        public static final double kDemandHeadroom = 1.25; // Room over what a consumer draws now to accelerate into
+        public static final int kMinChangeAmps = 2; // Smaller changes aren't written to the controllers
+
+        // Priority (lower first), min and max amps per motor. Steering and the joints holding the
+        // superstructure up come before driving, the intake last.
+        public static final int kSteerPriority = 0;
+        public static final double kSteerMinAmps = 15;
+        public static final double kSteerMaxAmps = 35;
+        public static final int kArmRotationPriority = 1;
+        public static final double kArmRotationMinAmps = 30;
+        public static final double kArmRotationMaxAmps = 50;
+        public static final int kWristPriority = 2;
+        public static final double kWristMinAmps = 10;
+        public static final double kWristMaxAmps = 20;
+        public static final int kDrivePriority = 3;
+        public static final double kDriveMinAmps = 20;
+        public static final double kDriveMaxAmps = 60;
+        public static final double kDriveContinuousAmps = 35; // Supply limit after the peak has lasted 0.1 s
+        public static final int kExtensionPriority = 4;
+        public static final double kExtensionMinAmps = 15;
+        public static final double kExtensionMaxAmps = 50;
+        public static final int kIntakePriority = 5;
+        public static final double kIntakeMinAmps = 15;
+        public static final double kIntakeMaxAmps = 40;
+    }
+
+    /* --------------------> Thermal Constants <-------------------- */
+
+    public static final class ThermalConstants{
+
+        // TODO: ADJUST CONSTANTS, fit the capacity and resistance to a logged heat up and cool down
+        public static final boolean kThermalMonitorEnabled = true;
+        public static final double kSamplePeriodSeconds = 0.1;
+        public static final double kLoadFilterSeconds = 10.0; // Load the time to limit assumes continues
+        public static final double kAmbientCelsius = 25.0;
+        public static final double kMeasurementGain = 0.05; // Per second, pull toward the controller's reading
+
+        // Winding resistance is stall voltage over stall current
+        public static final double kNeoWindingOhms = 12.0 / 105.0;
+        public static final double kNeoHeatCapacity = 250.0; // J / C
+        public static final double kNeoThermalResistance = 1.2; // C / W
+        public static final double kNeoLimitCelsius = 100.0;
+        public static final double kFalconWindingOhms = 12.0 / 257.0;
+        public static final double kFalconHeatCapacity = 350.0;
+        public static final double kFalconThermalResistance = 0.9;
+        public static final double kFalconLimitCelsius = 100.0;
+
+        // Derating
+        public static final double kDerateStartCelsius = 70.0;
+        public static final double kDerateHorizonSeconds = 60.0; // Start slowing once the limit is this close
+        public static final double kMinScale = 0.5;
+        public static final double kDerateRatePerSecond = 0.05;
+        public static final double kMinScaleChange = 0.02;
+        public static final double kMaxReportedSeconds = 600.0; // Stands in for infinity in logs
+    }
+
+    /* --------------------> Tuning Constants <-------------------- */
+
+    public static final class TuningConstants{
+
+        // Live gain tuning from the dashboard, see TunableGainStore
+        public static final boolean kTuningEnabled = true;
+        public static final String kTableName = "Tuning";
+        public static final String kFileName = "tunables.properties"; // In the deploy directory
+    }
+
+    /* --------------------> Latency Constants <-------------------- */
+
+    public static final class LatencyConstants{
+
+        // Driver input to motor write tracing, see LatencyTracer
+        public static final boolean kLatencyTracingEnabled = true;
+        public static final double kStickStepThreshold = 0.1; // Stick movement since the last loop that starts a trace
+        public static final double kTraceTimeoutSeconds = 0.25; // Writes after this long aren't from the input anymore
+
+        // Histogram, latencies past the last bucket land in it
+        public static final double kBucketMs = 0.5;
+        public static final int kBucketCount = 400;
+    }
+
     /* --------------------> Wrist Constants <-------------------- */
 
     public static final class WristConstants{
@@ -39,6 +168,12 @@ public final class Constants {
 
         public static final int wristMotorCurrentLimit = 20;
 
+        // Built-in encoder scaling for the controller soft limits, and how close counts as at the goal.
+        // TODO: ADJUST CONSTANTS, count motor turns for one wrist turn, the soft limits stay off until verified
+        public static final double wristGearing = 60.0;
+        public static final boolean wristGearingVerified = false;
+        public static final double wristGoalToleranceRadians = Units.degreesToRadians(3.0);
+
     }
 
     /* --------------------> Intake Constants <-------------------- */
@@ -51,6 +186,34 @@ public final class Constants {
         public static final int intakeMotorFreeSpinCurrentLimit = 40;
         public static final boolean intakeMotorReversed = false;
         public static final double openLoopRampRate = 1.0;
+
+        public static final double kIntakeSpeed = 0.75;
+        public static final double kHoldSpeed = -0.1;
+        public static final double kEjectSpeed = -0.5;
+        public static final int kHoldCurrentLimit = 10; // Amps, the hold stalls the motor on purpose
+
+        // Game piece detection, filtered current and velocity (RPM) debounced so a bump doesn't count
+        public static final double kCurrentFilterSeconds = 0.06;
+        public static final double kVelocityFilterSeconds = 0.04;
+        public static final double kSpinUpSeconds = 0.25;
+        public static final double kAcquireCurrentAmps = 25.0;
+        public static final double kAcquireVelocityRpm = 1000.0;
+        public static final double kAcquireDebounceSeconds = 0.08;
+        public static final double kEjectCurrentAmps = 12.0;
+        public static final double kEjectVelocityRpm = 2000.0; // A free NEO at kEjectSpeed only makes ~2800
+        public static final double kEjectDebounceSeconds = 0.1;
+
+        // Stow as soon as a piece is detected
+        public static final boolean kAutoStowOnAcquire = true;
+        public static final double kStowedRotationToleranceRadians = Units.degreesToRadians(5.0);
+        public static final double kStowedExtensionToleranceMeters = Units.inchesToMeters(0.5);
+        public static final double kStowedWristToleranceRadians = Units.degreesToRadians(5.0);
+
+        // Simulation, see IntakeSim
+        public static final double kSimEjectSeconds = 0.15;
+        public static final double kSimEjectMinOutput = 0.25;
+        public static final double kSimLoadedSpeedFraction = 0.1;
+        public static final double kSimRollerTimeConstantSeconds = 0.05;
     }
 
     /* --------------------> Arm Constants <-------------------- */
@@ -71,6 +234,12 @@ public final class Constants {
         public static final int rotateMotorCurrentLimit = 50;
         public static final int extensionMotorCurrentLimit = 50;
 
+        // Built-in encoder scaling for the controller soft limits, and how close counts as at the goal
+        public static final double extensionMetersPerMotorRotation = Units.inchesToMeters(0.25);
+        public static final double rotateGoalToleranceRadians = Units.degreesToRadians(2.0);
+        public static final double extensionGoalToleranceMeters = Units.inchesToMeters(0.5);
+        public static final double extensionJogStepMeters = Units.inchesToMeters(1.0);
+
         public static final double rotateMotorOpenLoopRampRate = 1.0;
         public static final double extensionMotorOpenLoopRampRate = 1.0;
 
@@ -97,13 +266,93 @@ public final class Constants {
         public static final double extensionMaxOutput = 1;
         public static final double extensionMinOutput = -1;
         public static final double extensionAllowedErr = 0.002;
-        public static final double extensionEncoderConversionFactor = 0.65625; // 0.65625 rotations per inch
-
-        public static final double extensionMaxVel = 1500;
+        // The absolute encoder turns 0.65625 rotations per inch, the conversion factor makes its position inches.
+        // TODO: ADJUST CONSTANTS, confirm on the robot which way 0.65625 goes. Extend a taped 10 in and check
+        // Arm Extension reads 0.254 m. If it reads about 0.59 m the encoder turns once per 0.65625 in, so the
+        // factor should be 0.65625 itself. Check extensionMetersPerMotorRotation the same way, then set the
+        // flag. The soft limits stay off until it's set.
+        public static final double extensionEncoderRotationsPerInch = 0.65625;
+        public static final double extensionEncoderConversionFactor = 1.0 / extensionEncoderRotationsPerInch;
+        public static final double extensionMetersPerNative = Units.inchesToMeters(1.0);
+        public static final boolean extensionCalibrationVerified = false;
+
+        public static final double extensionMaxVel = 1500; // Inches per minute
         public static final double extensionMinVel = 0;
         public static final double extensionMaxAcc = 1000;
     }
 
+    /* --------------------> Gravity Model Constants <-------------------- */
+
+    public static final class GravityConstants{
+
+        // Lookup table resolution, see GravityModel
+        public static final int kArmAngleSamples = 361; // 1 degree over a full turn
+        public static final int kExtensionSamples = 8;
+        public static final int kWristAngleSamples = 361; // 1 degree
+
+        // TODO: ADJUST CONSTANTS, percent output that holds the extension with the arm straight up
+        public static final double kExtensionGravityFF = 0.05;
+    }
+
+    /* --------------------> Arm State-Space Constants <-------------------- */
+
+    public static final class ArmStateSpaceConstants{
+
+        // TODO: ADJUST CONSTANTS, gearing from the design, masses from CenterOfGravityConstants
+        public static final boolean kUseStateSpaceByDefault = false;
+        public static final double kArmGearing = 100.0;
+        public static final boolean kArmGearingVerified = false; // Arm soft limits stay off until kArmGearing is checked on the robot
+        public static final double kMaxExtensionMeters = Units.inchesToMeters(35.0);
+        public static final int kExtensionBreakpoints = 4; // One LQR/Kalman loop per breakpoint
+
+        // LQR, how far off each state can be before using the full voltage
+        public static final double kPositionToleranceRadians = Units.degreesToRadians(1.0);
+        public static final double kVelocityToleranceRadPerSec = Units.degreesToRadians(20.0);
+        public static final double kMaxVoltage = 10.0;
+        public static final double kNominalVoltage = 12.0; // For turning percent output feedforwards into volts
+
+        // Kalman filter, model and CANCoder noise
+        public static final double kModelPositionStdDev = 0.015;
+        public static final double kModelVelocityStdDev = 0.17;
+        public static final double kEncoderStdDevRadians = Units.degreesToRadians(0.1);
+
+        // Reference profile
+        public static final double kMaxVelocityRadPerSec = 3.0;
+        public static final double kMaxAccelerationRadPerSec2 = 8.0;
+
+        // Simulated hard stops and settle test
+        public static final double kSimMinAngleRadians = Units.degreesToRadians(-10.0);
+        public static final double kSimMaxAngleRadians = Units.degreesToRadians(190.0);
+        public static final double kSettleToleranceRadians = Units.degreesToRadians(1.0);
+        public static final double kSettleHoldSeconds = 0.25;
+        public static final double kSettleTestTimeoutSeconds = 10.0;
+    }
+
+    public static final class ArmBrakeConstants{
+
+        // TODO: ADJUST CONSTANTS, latencies from the valve and cylinder, measure with the latency test
+        public static final boolean kAutoBrakeEnabled = true;
+        public static final boolean kBrakeEngagedOutput = true; // Solenoid output that applies the brake
+        public static final boolean kLatencyTestEnabled = false; // Puts the latency test on the dashboard, it moves the arm
+
+        // Engage once the arm has sat this close to its setpoint this long
+        public static final double kSettleToleranceRadians = Units.degreesToRadians(1.5);
+        public static final double kSettleVelocityRadPerSec = Units.degreesToRadians(3.0);
+        public static final double kSettleSeconds = 0.3;
+
+        // Pneumatic actuation time, the motor keeps holding through it
+        public static final double kEngageLatencySeconds = 0.1;
+        public static final double kReleaseLatencySeconds = 0.08; // Starting estimate until it's measured
+        public static final double kPreReleaseHoldSeconds = 1.5; // Don't grab again right after an early release
+
+        // Latency measurement, the arm has started moving once it's this far from where it was released
+        public static final double kProbeOnsetRadians = Units.degreesToRadians(0.5);
+        public static final double kProbeTimeoutSeconds = 1.0;
+        public static final double kProbeMoveRadians = Units.degreesToRadians(10.0);
+
+        public static final double kSimActuationSeconds = 0.07;
+    }
+
     /* --------------------> Swerve Drive Constants <-------------------- */
 
     public static final class DriveConstants{
@@ -111,12 +360,15 @@ public final class Constants {
         public static final double kTrackWidth = 16; // Distance between centers of right and left wheels on robot (Width, X)
         public static final double kWheelBase = 23.5; // Distance between centers of front and back wheels on robot (Length, Y)
 
-        // Swerve Drive Kinematics
-        public static final SwerveDriveKinematics kSwerveDriveKinematics = new SwerveDriveKinematics(
+        // Module locations, same order as the modules everywhere else
+        public static final Translation2d[] kModuleTranslations = {
             new Translation2d(kTrackWidth / 2, kWheelBase / 2), // Front Left
             new Translation2d(-kTrackWidth / 2, kWheelBase / 2), // Front Right
             new Translation2d(kTrackWidth / 2, -kWheelBase / 2), // Back Left
-            new Translation2d(-kTrackWidth / 2, -kWheelBase / 2)); // Back Right
+            new Translation2d(-kTrackWidth / 2, -kWheelBase / 2)}; // Back Right
+
+        // Swerve Drive Kinematics
+        public static final SwerveDriveKinematics kSwerveDriveKinematics = new SwerveDriveKinematics(kModuleTranslations);
 
         // Max Speed of Robot
         public static final double kPhysicalMaxSpeedMetersPerSecond = 5.0;
@@ -126,6 +378,215 @@ public final class Constants {
 
         public static final double kDriveMaxSpeedMetersPerSecond = 1.0;
         public static final double kDriveMaxAngularSpeedRadiansPerSecond = kPhysicalMaxAngularSpeedRadiansPerSecond / 8;
+
+        // Setpoint generator between the requested ChassisSpeeds and the modules, see SwerveSetpointGenerator
+        public static final boolean kUseSetpointGenerator = true;
+        public static final double kSetpointGeneratorPeriodSeconds = 0.02; // How often drive() runs, the command loop
+        public static final double kMaxModuleAccelerationMps2 = 8.0;
+        public static final double kMaxModuleSteerRateRadPerSec = 3 * Math.PI;
+        public static final double kSteerLimitMinSpeedMps = 0.05; // Slower modules can steer freely
+
+        // Traction control on the drive commands, see TractionController
+        public static final boolean kUseTractionControl = true;
+        public static final double kTractionTargetSlipRatio = 0.15; // Roughly peak friction on carpet
+        public static final double kTractionSlipMarginMps = 0.3; // Lets the robot start from rest
+        public static final double kTractionMinGroundSpeedMps = 0.1; // Keeps slip ratios finite near zero
+
+        // Speed and acceleration limits from the arm pose, see CenterOfGravityLimiter. With them on the
+        // joysticks map to full speed instead of kDriveMaxSpeedMetersPerSecond.
+        public static final boolean kUseCenterOfGravityLimits = true;
+    }
+
+    /* --------------------> Vision Constants <-------------------- */
+
+    public static final class VisionConstants{
+
+        // Odometry samples kept for latency compensation, 1.5 s of 20 ms loops
+        public static final int kPoseHistoryCapacity = 75;
+
+        // How much odometry is trusted, x, y (meters) and theta (radians)
+        public static final double[] kStateStdDevs = {0.1, 0.1, 0.05};
+
+        // Measurement std devs scale with (average tag distance)^2 / tag count, clamped to these minimums
+        public static final double kVisionXYStdDevPerMeterSquared = 0.05;
+        public static final double kVisionMinXYStdDev = 0.05;
+        public static final double kVisionThetaStdDevPerMeterSquared = 0.1;
+        public static final double kVisionMinThetaStdDev = 0.05;
+
+        // Single tag solves are ambiguous past this distance
+        public static final double kMaxSingleTagDistanceMeters = 4.0;
+
+        // Simulated camera, see SimVisionSource
+        public static final double kSimCameraLatencySeconds = 0.05;
+        public static final double kSimCameraPeriodSeconds = 0.05; // 20 fps
+        public static final double kSimCameraMaxRangeMeters = 6.0;
+        public static final double kSimCameraHalfFovRadians = Units.degreesToRadians(35);
+        public static final double kSimCameraXYNoisePerMeterSquared = 0.02;
+        public static final double kSimCameraThetaNoisePerMeterSquared = 0.01;
+
+    }
+
+    /* --------------------> Odometry Constants <-------------------- */
+
+    public static final class OdometryConstants{
+
+        // A module whose translation estimate is this far from the median (per second) is slipping
+        public static final double kSlipToleranceMps = 0.3;
+
+        // Odometry velocity can change this much faster than the accelerometer measured before it's limited
+        public static final boolean kAccelerometerCheckEnabled = true;
+        public static final double kSlipAccelToleranceMps2 = 3.0;
+
+        // Horizontal acceleration above this is a collision
+        public static final double kCollisionAccelMps2 = 2.0 * 9.81;
+
+        // Pigeon2 biased accelerometer units
+        public static final double kAccelerometerLsbPerG = 16384.0;
+    }
+
+    /* --------------------> Simulation Constants <-------------------- */
+
+    public static final class SimConstants{
+
+        // Simulated wheels travel this much further than odometry thinks, so the estimate drifts
+        public static final double kSimWheelDistanceError = 1.03;
+
+        // Wheel speed follows the command with this lag, the carpet only lets each module accelerate
+        // so fast before the wheel spins. Less grip up front, the arm sits over the back.
+        public static final double kSimDriveTimeConstantSeconds = 0.05;
+        public static final double[] kSimModuleTractionMps2 = {7.0, 7.0, 10.0, 10.0};
+
+        // Charge station seesaw, see ChargeStationSim
+        public static final double kChargeStationMaxAngleRadians = Units.degreesToRadians(15.0);
+        public static final double kChargeStationInertia = 30.0; // kg m^2, the station itself
+        public static final double kChargeStationDamping = 150.0; // N m s, hinge friction
+    }
+
+    /* --------------------> Field Constants <-------------------- */
+
+    public static final class FieldConstants{
+
+        // 2023 AprilTag layout, ids 1-8, blue origin
+        public static final double[] kTagX = {15.513558, 15.513558, 15.513558, 16.178784, 0.36195, 1.02743, 1.02743, 1.02743};
+        public static final double[] kTagY = {1.071626, 2.748026, 4.424426, 6.749796, 6.749796, 4.424426, 2.748026, 1.071626};
+        public static final double[] kTagTheta = {Math.PI, Math.PI, Math.PI, Math.PI, 0.0, 0.0, 0.0, 0.0};
+
+        public static final double kFieldLengthMeters = 16.54175; // Red side is mirrored across the center line
+
+        // Grid node columns, blue side, right to left as seen from the driver station. Columns 1, 4 and 7
+        // (in line with the tags) take cubes, the rest cones. Low nodes take either.
+        public static final double kGridFirstNodeY = 0.512826;
+        public static final double kGridNodeSpacingMeters = Units.inchesToMeters(22.0);
+        public static final int kGridColumns = 9;
+
+        // Robot center when lined up on a node, bumpers against the grid
+        public static final double kBlueScoringX = 1.38 + Units.inchesToMeters(17.0);
+
+        // Where to stop for the blue substations (across the field, on the red side)
+        public static final double kBlueDoubleSubstationX = 15.55;
+        public static final double[] kBlueDoubleSubstationY = {6.13, 7.35};
+        public static final double kBlueSingleSubstationX = 14.25;
+        public static final double kBlueSingleSubstationY = 7.2;
+
+        // Blue charge station, hinge in the middle, ramps included in the length
+        public static final double kBlueChargeStationCenterX = 3.88;
+        public static final double kChargeStationHalfLengthMeters = 0.97;
+        public static final double kChargeStationMinY = 1.51;
+        public static final double kChargeStationMaxY = 3.98;
+        public static final int kChargeStationColumn = 4; // Cube node in line with the middle of the station
+    }
+
+    /* --------------------> Auto Align Constants <-------------------- */
+
+    public static final class AlignConstants{
+
+        public static final double kTranslationP = 3.0;
+        public static final double kThetaP = 4.0;
+        public static final double kMaxTranslationSpeedMps = 3.0;
+        public static final double kMaxTranslationAccelMps2 = 3.0;
+        public static final double kMaxAngularSpeedRadPerSec = 2 * Math.PI;
+        public static final double kMaxAngularAccelRadPerSec2 = 4 * Math.PI;
+
+        public static final double kTranslationToleranceMeters = 0.03;
+        public static final double kThetaToleranceRadians = Units.degreesToRadians(2.0);
+    }
+
+    /* --------------------> Heading Snap Constants <-------------------- */
+
+    public static final class HeadingConstants{
+
+        public static final double kP = 4.0;
+        public static final double kMaxAngularSpeedRadPerSec = 2 * Math.PI;
+        public static final double kMaxAngularAccelRadPerSec2 = 6 * Math.PI;
+        public static final double kToleranceRadians = Units.degreesToRadians(2.0);
+    }
+
+    /* --------------------> Auto Balance Constants <-------------------- */
+
+    public static final class BalanceConstants{
+
+        // Drive up the ramp, slower once on the station, until it starts tipping (tilt falling faster than this)
+        public static final double kClimbSpeedMps = 1.2;
+        public static final double kClimbOnStationSpeedMps = 0.9;
+        public static final double kOnStationDegrees = 8.0;
+        public static final double kTipRateDegPerSec = 5.0;
+
+        // Tilt-rate aware balancing, the D term backs off as soon as the station starts to fall
+        public static final double kBalanceP = 0.01; // m/s per degree
+        public static final double kBalanceD = 0.02; // m/s per degree/s
+        public static final double kMaxBalanceSpeedMps = 0.5;
+
+        // Level enough to X-lock, and how far off before unlocking again
+        public static final double kLevelDegrees = 2.5;
+        public static final double kLevelRateDegPerSec = 4.0;
+        public static final double kUnlockDegrees = 6.0;
+        public static final double kSettleSeconds = 1.0; // Level this long counts as balanced
+
+        // Plain proportional controller to compare against
+        public static final double kNaiveP = 0.03;
+    }
+
+    /* --------------------> On the Fly Path Constants <-------------------- */
+
+    public static final class PathConstants{
+
+        public static final double kMaxVelocityMps = 3.0;
+        public static final double kMaxAccelerationMps2 = 2.5;
+        public static final double kMinMovingSpeedMps = 0.2; // Slower than this a path leaves toward the target
+
+        public static final double kTranslationP = 5.0;
+        public static final double kRotationP = 3.0;
+        public static final double kEndTimeoutSeconds = 0.5; // Extra time past the end of the path to settle
+
+        // Paths are cached by start square and target
+        public static final double kPathCacheRegionMeters = 1.0;
+        public static final int kPathCacheSize = 32;
+    }
+
+    /* --------------------> Center of Gravity Constants <-------------------- */
+
+    public static final class CenterOfGravityConstants{
+
+        // TODO: ADJUST CONSTANTS, rough CAD numbers
+        public static final double kChassisMassKg = 45.0; // Frame, swerve, battery and bumpers
+        public static final double kChassisCgHeightMeters = Units.inchesToMeters(5.0);
+
+        public static final double kArmMassKg = 6.0;
+        public static final double kArmPivotXMeters = Units.inchesToMeters(-6.0);
+        public static final double kArmPivotZMeters = Units.inchesToMeters(38.0);
+        public static final double kArmBaseLengthMeters = Units.inchesToMeters(24.0); // Pivot to wrist, fully retracted
+        public static final double kArmBaseCgMeters = Units.inchesToMeters(12.0);
+
+        public static final double kWristMassKg = 4.0; // Wrist, intake and a game piece
+        public static final double kWristCgOffsetMeters = Units.inchesToMeters(6.0);
+        public static final double kExtensionMovingMassKg = 2.5; // Inner stage, moves with the extension
+
+        // Wheel contact points, same layout as the kinematics
+        public static final double kWheelHalfLengthMeters = Units.inchesToMeters(DriveConstants.kTrackWidth / 2);
+        public static final double kWheelHalfWidthMeters = Units.inchesToMeters(DriveConstants.kWheelBase / 2);
+
+        public static final double kTipSafetyFactor = 0.6;
+        public static final double kStopTimeSeconds = 1.0; // Fastest we want to have to stop from full speed
     }
 
     /* --------------------> Swerve Modules Constants <-------------------- */
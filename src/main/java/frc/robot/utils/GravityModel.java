@@ -0,0 +1,150 @@
+// Gravity load on each superstructure joint from all three joint positions
+// Arm rotation (0 = level forward, PI / 2 = straight up), extension in meters and the wrist angle
+// relative to the arm. The arm and the moving extension stage are point masses along the arm, the
+// wrist/intake is a point mass kWristCgOffsetMeters past the end of the arm at the wrist angle. That
+// gives the torque the arm pivot and the wrist hold and the force along the arm the extension holds.
+//
+// The loads are tabulated once at class load over the arm angle and extension (arm and extension)
+// and the absolute wrist angle (wrist), and looked up with linear interpolation each loop. Everything
+// is static and immutable, so the fast loop and the main loop can both use it without locking.
+//
+// Feedforwards are scaled so the existing tuned gains still hold where they were tuned: the arm's
+// gravityFF at level and retracted with the wrist in line, the wrist's at level.
+
+package frc.robot.utils;
+
+import frc.robot.utils.Constants.ArmConstants;
+import frc.robot.utils.Constants.ArmStateSpaceConstants;
+import frc.robot.utils.Constants.CenterOfGravityConstants;
+import frc.robot.utils.Constants.GravityConstants;
+import frc.robot.utils.Constants.WristConstants;
+
+public final class GravityModel {
+
+    private static final double kGravity = 9.81;
+
+    // Arm angle range covers the arm's hard stops with margin, the wrist table covers a full turn
+    private static final double kMinArmAngle = -Math.PI / 2.0;
+    private static final double kMaxArmAngle = 3.0 * Math.PI / 2.0;
+    private static final int kArmSamples = GravityConstants.kArmAngleSamples;
+    private static final int kExtensionSamples = GravityConstants.kExtensionSamples;
+    private static final int kWristSamples = GravityConstants.kWristAngleSamples;
+
+    private static final double kArmStep = (kMaxArmAngle - kMinArmAngle) / (kArmSamples - 1);
+    private static final double kExtensionStep = ArmStateSpaceConstants.kMaxExtensionMeters / (kExtensionSamples - 1);
+    private static final double kWristStep = 2.0 * Math.PI / (kWristSamples - 1);
+
+    // Arm pivot torque without the wrist offset term, [arm angle][extension] flattened
+    private static final double[] armTorqueTable = new double[kArmSamples * kExtensionSamples];
+    // Torque of the wrist mass about the wrist, by absolute wrist angle
+    private static final double[] wristTorqueTable = new double[kWristSamples];
+    // Force pulling the extension back in, by arm angle
+    private static final double[] extensionForceTable = new double[kArmSamples];
+
+    private static final double kArmPercentPerNm;
+    private static final double kWristPercentPerNm;
+    private static final double kExtensionPercentPerNewton;
+
+    static {
+        for (int a = 0; a < kArmSamples; a++){
+            double armRadians = kMinArmAngle + a * kArmStep;
+            for (int e = 0; e < kExtensionSamples; e++){
+                armTorqueTable[a * kExtensionSamples + e] = armTorqueInLine(armRadians, e * kExtensionStep);
+            }
+            extensionForceTable[a] = calculateExtensionForce(armRadians);
+        }
+        for (int w = 0; w < kWristSamples; w++){
+            wristTorqueTable[w] = wristTorque(w * kWristStep);
+        }
+
+        kArmPercentPerNm = ArmConstants.gravityFF / calculateArmTorque(0.0, 0.0, 0.0);
+        kWristPercentPerNm = WristConstants.gravityFF / calculateWristTorque(0.0, 0.0);
+        kExtensionPercentPerNewton = GravityConstants.kExtensionGravityFF / calculateExtensionForce(Math.PI / 2.0);
+    }
+
+    private GravityModel(){}
+
+    /* --------------------> Exact Loads <-------------------- */
+
+    // Arm pivot torque, N m, positive lifts the arm toward straight up
+    public static double calculateArmTorque(double armRadians, double extensionMeters, double wristRadians){
+        return armTorqueInLine(armRadians, extensionMeters) + wristTorque(armRadians + wristRadians);
+    }
+
+    // Wrist torque, N m
+    public static double calculateWristTorque(double armRadians, double wristRadians){
+        return wristTorque(armRadians + wristRadians);
+    }
+
+    // Force along the arm, N, positive holds the extension out
+    public static double calculateExtensionForce(double armRadians){
+        double movingMass = CenterOfGravityConstants.kExtensionMovingMassKg + CenterOfGravityConstants.kWristMassKg;
+        return movingMass * kGravity * Math.sin(armRadians);
+    }
+
+    private static double armTorqueInLine(double armRadians, double extensionMeters){
+        double armCg = CenterOfGravityConstants.kArmBaseCgMeters + 0.5 * extensionMeters;
+        double armEnd = CenterOfGravityConstants.kArmBaseLengthMeters + extensionMeters;
+        return kGravity * Math.cos(armRadians) * (CenterOfGravityConstants.kArmMassKg * armCg + CenterOfGravityConstants.kWristMassKg * armEnd);
+    }
+
+    private static double wristTorque(double absoluteWristRadians){
+        return CenterOfGravityConstants.kWristMassKg * kGravity * CenterOfGravityConstants.kWristCgOffsetMeters * Math.cos(absoluteWristRadians);
+    }
+
+    /* --------------------> Table Lookups <-------------------- */
+
+    public static double lookupArmTorque(double armRadians, double extensionMeters, double wristRadians){
+        double a = clampIndex((armRadians - kMinArmAngle) / kArmStep, kArmSamples);
+        double e = clampIndex(extensionMeters / kExtensionStep, kExtensionSamples);
+        int a0 = (int) a;
+        int e0 = (int) e;
+        int a1 = Math.min(a0 + 1, kArmSamples - 1);
+        int e1 = Math.min(e0 + 1, kExtensionSamples - 1);
+        double ta = a - a0;
+        double te = e - e0;
+
+        double low = interpolate(armTorqueTable[a0 * kExtensionSamples + e0], armTorqueTable[a0 * kExtensionSamples + e1], te);
+        double high = interpolate(armTorqueTable[a1 * kExtensionSamples + e0], armTorqueTable[a1 * kExtensionSamples + e1], te);
+        return interpolate(low, high, ta) + lookupWristTorque(armRadians, wristRadians);
+    }
+
+    public static double lookupWristTorque(double armRadians, double wristRadians){
+        double absolute = (armRadians + wristRadians) % (2.0 * Math.PI);
+        if (absolute < 0.0){
+            absolute += 2.0 * Math.PI;
+        }
+        double w = clampIndex(absolute / kWristStep, kWristSamples);
+        int w0 = (int) w;
+        return interpolate(wristTorqueTable[w0], wristTorqueTable[Math.min(w0 + 1, kWristSamples - 1)], w - w0);
+    }
+
+    public static double lookupExtensionForce(double armRadians){
+        double a = clampIndex((armRadians - kMinArmAngle) / kArmStep, kArmSamples);
+        int a0 = (int) a;
+        return interpolate(extensionForceTable[a0], extensionForceTable[Math.min(a0 + 1, kArmSamples - 1)], a - a0);
+    }
+
+    private static double clampIndex(double index, int samples){
+        return Math.max(0.0, Math.min(index, samples - 1));
+    }
+
+    private static double interpolate(double a, double b, double t){
+        return a + (b - a) * t;
+    }
+
+    /* --------------------> Feedforwards <-------------------- */
+
+    // Percent output, for the SparkMax arbitrary feedforward
+    public static double armFeedForward(double armRadians, double extensionMeters, double wristRadians){
+        return lookupArmTorque(armRadians, extensionMeters, wristRadians) * kArmPercentPerNm;
+    }
+
+    public static double wristFeedForward(double armRadians, double wristRadians){
+        return lookupWristTorque(armRadians, wristRadians) * kWristPercentPerNm;
+    }
+
+    public static double extensionFeedForward(double armRadians){
+        return lookupExtensionForce(armRadians) * kExtensionPercentPerNewton;
+    }
+}
@@ -0,0 +1,58 @@
+// Turns the robot to a preset heading as fast as the rotation limits allow
+// A trapezoid profile from the current heading and turn rate to the target, with the profile's
+// velocity as feedforward and P on the remaining error. Settle time is published per snap.
+
+package frc.robot.utils;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.controller.ProfiledPIDController;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+import frc.robot.utils.Constants.HeadingConstants;
+
+public class HeadingSnapController {
+
+    private final ProfiledPIDController controller = new ProfiledPIDController(HeadingConstants.kP, 0, 0,
+        new TrapezoidProfile.Constraints(HeadingConstants.kMaxAngularSpeedRadPerSec, HeadingConstants.kMaxAngularAccelRadPerSec2));
+
+    private boolean active = false;
+    private double snapStartTime;
+    private boolean settled;
+
+    public HeadingSnapController(){
+        controller.enableContinuousInput(-Math.PI, Math.PI);
+    }
+
+    // Starts a snap from where the robot is pointed and how fast it's already turning
+    public void setTarget(Rotation2d target, Rotation2d heading, double turnRate){
+        controller.reset(heading.getRadians(), turnRate);
+        controller.setGoal(target.getRadians());
+        active = true;
+        settled = false;
+        snapStartTime = Timer.getFPGATimestamp();
+    }
+
+    public void cancel(){
+        active = false;
+    }
+
+    public boolean isActive(){
+        return active;
+    }
+
+    // Turn rate in rad/s
+    public double calculate(Rotation2d heading){
+        double output = controller.calculate(heading.getRadians()) + controller.getSetpoint().velocity;
+
+        // Settled once the profile has finished and the heading is inside the tolerance
+        if (!settled && controller.getSetpoint().velocity == 0.0
+            && Math.abs(MathUtil.angleModulus(controller.getGoal().position - heading.getRadians())) < HeadingConstants.kToleranceRadians){
+            settled = true;
+            SmartDashboard.putNumber("Heading Snap Settle s", Timer.getFPGATimestamp() - snapStartTime);
+        }
+        return output;
+    }
+}
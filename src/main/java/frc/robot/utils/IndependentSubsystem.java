@@ -0,0 +1,17 @@
+// Marks a subsystem whose periodic work only touches its own state and hardware,
+// so ParallelPeriodicRunner can run it at the same time as the others
+//
+// When one needs another's sensor (the gravity feedforwards need every joint), it reads the other's
+// snapshot, never the sensor itself. snapshot() runs for every subsystem on the main thread before any
+// independentPeriodic() starts, so the value is the same one whichever order they run in.
+
+package frc.robot.utils;
+
+public interface IndependentSubsystem {
+
+    // Takes the place of periodic(), runs once per loop before the command scheduler
+    void independentPeriodic();
+
+    // Stores whatever the other subsystems read into volatile fields, on the main thread
+    default void snapshot(){}
+}
@@ -0,0 +1,62 @@
+// Exercises hot control paths while disabled so the JIT has compiled them before enable
+// Tasks must only do math on dummy inputs, never write to hardware
+
+package frc.robot.utils;
+
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+public class JitWarmup {
+
+    // Gets fed each iteration number so tasks can vary their dummy inputs
+    public interface WarmupTask {
+        double run(int iteration);
+    }
+
+    private final WarmupTask[] tasks;
+    private final int targetIterations;
+
+    private int iterations = 0;
+    private boolean gcPending = true;
+
+    // Results are summed here so the JIT can't throw away the work as dead code
+    private volatile double sink;
+
+    public JitWarmup(int targetIterations, WarmupTask... tasks){
+        this.targetIterations = targetIterations;
+        this.tasks = tasks;
+    }
+
+    /* --------------------> Run Warmup for One Disabled Loop <-------------------- */
+
+    public void run(double budgetSeconds){
+
+        long deadline = RobotController.getFPGATime() + (long) (budgetSeconds * 1e6);
+        double sum = 0.0;
+
+        while (iterations < targetIterations && RobotController.getFPGATime() < deadline){
+            for (WarmupTask task : tasks){
+                sum += task.run(iterations);
+            }
+            iterations++;
+        }
+        sink += sum;
+
+        // Only collect once warmup is done so the boot and warmup garbage both go in one pass
+        if (isComplete() && gcPending){
+            System.gc();
+            gcPending = false;
+        }
+
+        SmartDashboard.putNumber("JIT Warmup Iterations", iterations);
+    }
+
+    // Request another collection the next time run() is called (e.g. each time we're disabled)
+    public void requestCollection(){
+        gcPending = true;
+    }
+
+    public boolean isComplete(){
+        return iterations >= targetIterations;
+    }
+}
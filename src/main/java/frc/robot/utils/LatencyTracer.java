@@ -0,0 +1,329 @@
+// Time from a driver input to the motor write it causes, split into the layers in between
+// A source is where input is sampled (the drive sticks, the button box), a sink is a motor write
+// (the swerve modules, each SparkMax mechanism, the intake). An input change starts a trace on its
+// source, and each trace goes through four stamps:
+//   Packet   - the Driver Station packet carrying the input reached the rio
+//   Sample   - robot code read the input and saw the change
+//   Dispatch - the command it triggered was initialized, or the drive command handed its output to the subsystem
+//   Write    - the first write to each sink after the dispatch, the vendor call that queues the CAN frame
+// Writes before the dispatch aren't from the input, the fast loop keeps writing the old setpoint until
+// then. A source only records against the sinks it was registered as driving (the sticks never move
+// the arm), and sinks only write when their output changes, so a write is something the input did
+// rather than the next loop's copy of the last output. Phoenix sends its control frames on their own period, so Falcon writes go out up to that much later.
+//
+// The packet time comes from a thread waiting on the HAL's new DS data event. The loop only sees the
+// packets that arrived before its refreshData(), so the first one since the last loop is the one with
+// the change in it. Each source and source/sink pair keeps a fixed bucket histogram, so recording
+// never allocates, and the percentiles go to the dashboard and every total to the DataLog.
+
+package frc.robot.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import edu.wpi.first.hal.DriverStationJNI;
+import edu.wpi.first.util.WPIUtilJNI;
+import edu.wpi.first.util.datalog.DoubleLogEntry;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import frc.robot.utils.Constants.LatencyConstants;
+
+public final class LatencyTracer {
+
+    private static LatencyTracer instance;
+
+    /* --------------------> Histogram <-------------------- */
+
+    private static class Distribution {
+        final String name;
+        final int[] buckets = new int[LatencyConstants.kBucketCount];
+        long count;
+        double maxMs;
+
+        Distribution(String name){
+            this.name = name;
+        }
+
+        void add(long micros){
+            double ms = micros / 1000.0;
+            int bucket = (int) (ms / LatencyConstants.kBucketMs);
+            buckets[Math.min(Math.max(bucket, 0), buckets.length - 1)]++;
+            count++;
+            maxMs = Math.max(maxMs, ms);
+        }
+
+        // Upper edge of the bucket the percentile falls in
+        double percentileMs(double fraction){
+            long target = (long) Math.ceil(count * fraction);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++){
+                seen += buckets[i];
+                if (seen >= target){
+                    return Math.min((i + 1) * LatencyConstants.kBucketMs, maxMs);
+                }
+            }
+            return maxMs;
+        }
+    }
+
+    /* --------------------> Sources and Sinks <-------------------- */
+
+    public class Source {
+        private final String name;
+        private final List<String> drivenSinks;
+        private final Distribution packetToSample;
+        private final Distribution sampleToDispatch;
+        private final List<Distribution> dispatchToWrite = new ArrayList<>(); // By sink index
+        private final List<Distribution> total = new ArrayList<>();
+        private final List<DoubleLogEntry> totalLogs = new ArrayList<>();
+
+        // Current trace, 0 when a stamp hasn't happened
+        private long packetMicros, sampleMicros, dispatchMicros;
+        private boolean[] written = new boolean[0];
+        private boolean[] drives = new boolean[0];
+
+        private Source(String name, String... drivenSinks){
+            this.name = name;
+            this.drivenSinks = List.of(drivenSinks);
+            packetToSample = new Distribution(name + " Packet to Sample");
+            sampleToDispatch = new Distribution(name + " Sample to Dispatch");
+        }
+
+        // The input changed this loop
+        public void sample(){
+            if (!LatencyConstants.kLatencyTracingEnabled){
+                return;
+            }
+            long now = RobotController.getFPGATime();
+            synchronized (LatencyTracer.this){
+                packetMicros = loopPacketMicros;
+                sampleMicros = now;
+                dispatchMicros = 0;
+                Arrays.fill(written, false);
+                if (packetMicros != 0){
+                    packetToSample.add(sampleMicros - packetMicros);
+                }
+            }
+        }
+
+        // Whatever the input triggered has been handed on, the next write to each sink is its result
+        public void dispatch(){
+            if (!LatencyConstants.kLatencyTracingEnabled){
+                return;
+            }
+            long now = RobotController.getFPGATime();
+            synchronized (LatencyTracer.this){
+                if (sampleMicros == 0 || dispatchMicros != 0){
+                    return;
+                }
+                if (now - sampleMicros > timeoutMicros){
+                    sampleMicros = 0;
+                    return;
+                }
+                dispatchMicros = now;
+                sampleToDispatch.add(dispatchMicros - sampleMicros);
+                dispatched = true;
+            }
+        }
+
+        // Wraps a button so pressing it samples this source, read when the trigger is polled
+        public BooleanSupplier watch(BooleanSupplier button){
+            boolean[] wasPressed = {false};
+            return () -> {
+                boolean pressed = button.getAsBoolean();
+                if (pressed && !wasPressed[0]){
+                    sample();
+                }
+                wasPressed[0] = pressed;
+                return pressed;
+            };
+        }
+
+        private void addSink(Sink sink){
+            dispatchToWrite.add(new Distribution(name + " to " + sink.name + " Dispatch to Write"));
+            total.add(new Distribution(name + " to " + sink.name + " Total"));
+            boolean driven = drivenSinks.contains(sink.name);
+            totalLogs.add(driven ? new DoubleLogEntry(DataLogManager.getLog(), "/Latency/" + name + "/" + sink.name) : null);
+            written = new boolean[sinks.size()];
+            drives = Arrays.copyOf(drives, sinks.size());
+            drives[sink.index] = driven;
+        }
+
+        // Called with the tracer locked
+        private boolean record(Sink sink, long now){
+            if (dispatchMicros == 0){
+                return false;
+            }
+            if (now - sampleMicros > timeoutMicros){
+                sampleMicros = 0;
+                dispatchMicros = 0;
+                return false;
+            }
+            if (!drives[sink.index] || written[sink.index]){
+                return true;
+            }
+            written[sink.index] = true;
+            dispatchToWrite.get(sink.index).add(now - dispatchMicros);
+
+            // Only with a packet stamp, a total that starts at the sample would hide the DS side
+            if (packetMicros != 0){
+                total.get(sink.index).add(now - packetMicros);
+                totalLogs.get(sink.index).append((now - packetMicros) / 1000.0);
+            }
+            return true;
+        }
+    }
+
+    public class Sink {
+        private final String name;
+        private final int index;
+
+        private Sink(String name, int index){
+            this.name = name;
+            this.index = index;
+        }
+
+        // Right after the motor write, cheap when nothing is being traced
+        public void write(){
+            if (!dispatched){
+                return;
+            }
+            long now = RobotController.getFPGATime();
+            synchronized (LatencyTracer.this){
+                boolean waiting = false;
+                for (Source source : sources){
+                    waiting |= source.record(this, now);
+                }
+                dispatched = waiting;
+            }
+        }
+    }
+
+    private final List<Source> sources = new ArrayList<>();
+    private final List<Sink> sinks = new ArrayList<>();
+    private final long timeoutMicros = (long) (LatencyConstants.kTraceTimeoutSeconds * 1e6);
+
+    // Some trace is waiting for writes, checked before locking
+    private volatile boolean dispatched = false;
+
+    // First packet since the last loop, from the packet thread
+    private final AtomicLong firstPacketMicros = new AtomicLong(0);
+    private long loopPacketMicros = 0;
+    private Thread packetThread;
+
+    private LatencyTracer(){}
+
+    public static synchronized LatencyTracer getInstance(){
+        if (instance == null){
+            instance = new LatencyTracer();
+        }
+        return instance;
+    }
+
+    /* --------------------> Registering <-------------------- */
+
+    // Registering the same name again gives back the same source or sink (all four swerve modules share one)
+    // A source is only traced to the sinks it names
+    public synchronized Source addSource(String name, String... drivenSinks){
+        for (Source source : sources){
+            if (source.name.equals(name)){
+                return source;
+            }
+        }
+        Source source = new Source(name, drivenSinks);
+        sources.add(source);
+        for (Sink sink : sinks){
+            source.addSink(sink);
+        }
+        return source;
+    }
+
+    public synchronized Sink addSink(String name){
+        for (Sink sink : sinks){
+            if (sink.name.equals(name)){
+                return sink;
+            }
+        }
+        Sink sink = new Sink(name, sinks.size());
+        sinks.add(sink);
+        for (Source source : sources){
+            source.addSink(sink);
+        }
+        return sink;
+    }
+
+    /* --------------------> Packet Timing <-------------------- */
+
+    public synchronized void start(){
+        if (!LatencyConstants.kLatencyTracingEnabled || packetThread != null){
+            return;
+        }
+        packetThread = new Thread(this::watchPackets, "DS Packet Timing");
+        packetThread.setDaemon(true);
+        packetThread.start();
+    }
+
+    private void watchPackets(){
+        int event = WPIUtilJNI.createEvent(false, false);
+        DriverStationJNI.provideNewDataEventHandle(event);
+        try {
+            while (!Thread.currentThread().isInterrupted()){
+                WPIUtilJNI.waitForObject(event);
+                firstPacketMicros.compareAndSet(0, RobotController.getFPGATime());
+            }
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        } finally {
+            DriverStationJNI.removeNewDataEventHandle(event);
+            WPIUtilJNI.destroyEvent(event);
+        }
+    }
+
+    // Start of robotPeriodic, the DS data was refreshed just before it
+    public synchronized void onLoopStart(){
+        loopPacketMicros = firstPacketMicros.getAndSet(0);
+    }
+
+    /* --------------------> Telemetry <-------------------- */
+
+    public void publish(){
+        List<Distribution> snapshot = new ArrayList<>();
+        List<double[]> values = new ArrayList<>();
+
+        // Percentiles under the lock, NT outside it so writers never wait on it
+        synchronized (this){
+            for (Source source : sources){
+                collect(source.packetToSample, snapshot, values);
+                collect(source.sampleToDispatch, snapshot, values);
+                for (int i = 0; i < sinks.size(); i++){
+                    collect(source.dispatchToWrite.get(i), snapshot, values);
+                    collect(source.total.get(i), snapshot, values);
+                }
+            }
+        }
+
+        for (int i = 0; i < snapshot.size(); i++){
+            String name = "Latency " + snapshot.get(i).name;
+            double[] value = values.get(i);
+            SmartDashboard.putNumber(name + " p50 ms", value[0]);
+            SmartDashboard.putNumber(name + " p90 ms", value[1]);
+            SmartDashboard.putNumber(name + " p99 ms", value[2]);
+            SmartDashboard.putNumber(name + " Max ms", value[3]);
+            SmartDashboard.putNumber(name + " Samples", value[4]);
+        }
+    }
+
+    // Paths that never happened (a source that never reaches a sink) stay off the dashboard
+    private static void collect(Distribution distribution, List<Distribution> snapshot, List<double[]> values){
+        if (distribution.count == 0){
+            return;
+        }
+        snapshot.add(distribution);
+        values.add(new double[] {distribution.percentileMs(0.5), distribution.percentileMs(0.9),
+            distribution.percentileMs(0.99), distribution.maxMs, distribution.count});
+    }
+}
@@ -0,0 +1,74 @@
+// Running timing statistics for a periodic loop
+// Samples are kept as primitives so recording never allocates
+// Synchronized since fast-rate loops record on their own thread while the main loop publishes
+
+package frc.robot.utils;
+
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+public class LoopStats {
+
+    private final String name;
+
+    private long count;
+    private double sumMs;
+    private double maxMs;
+    private double lastMs;
+
+    public LoopStats(String name){
+        this.name = name;
+    }
+
+    public synchronized void addSample(double ms){
+        count++;
+        sumMs += ms;
+        lastMs = ms;
+        if (ms > maxMs){
+            maxMs = ms;
+        }
+    }
+
+    // Helper for callers timing with RobotController.getFPGATime()
+    public void addSampleMicros(long startMicros, long endMicros){
+        addSample((endMicros - startMicros) / 1000.0);
+    }
+
+    public synchronized void reset(){
+        count = 0;
+        sumMs = 0;
+        maxMs = 0;
+        lastMs = 0;
+    }
+
+    public synchronized long getCount(){
+        return count;
+    }
+
+    public synchronized double getMeanMs(){
+        return count == 0 ? 0.0 : sumMs / count;
+    }
+
+    public synchronized double getMaxMs(){
+        return maxMs;
+    }
+
+    public synchronized double getLastMs(){
+        return lastMs;
+    }
+
+    public void publish(){
+        // Copy under the lock, then publish without holding it so the recording thread never waits on NT
+        double mean, max, last;
+        long samples;
+        synchronized (this){
+            mean = getMeanMs();
+            max = maxMs;
+            last = lastMs;
+            samples = count;
+        }
+        SmartDashboard.putNumber(name + " Mean ms", mean);
+        SmartDashboard.putNumber(name + " Max ms", max);
+        SmartDashboard.putNumber(name + " Last ms", last);
+        SmartDashboard.putNumber(name + " Samples", samples);
+    }
+}
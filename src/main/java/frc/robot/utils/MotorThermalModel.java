@@ -0,0 +1,94 @@
+// Winding temperature estimate for one motor
+// One thermal mass heated by the copper loss (I^2 R of the winding) and cooled through a thermal
+// resistance to the air: C dT/dt = I^2 R - (T - ambient) / Rth. The controller's temperature reading
+// lags the winding and is only a few degrees of resolution, so it doesn't drive the estimate, it pulls
+// it slowly toward itself and the estimate is never allowed below it.
+//
+// The time to the limit assumes the load stays at the recent average (kLoadFilterSeconds), which is
+// what matters for planning the rest of a match, not the last half second.
+
+package frc.robot.utils;
+
+import java.util.function.DoubleSupplier;
+
+import edu.wpi.first.math.filter.LinearFilter;
+import frc.robot.utils.Constants.ThermalConstants;
+
+public class MotorThermalModel {
+
+    private final String name;
+    private final double windingOhms;
+    private final double heatCapacity; // J / C
+    private final double thermalResistance; // C / W
+    private final double limitCelsius;
+    private final DoubleSupplier currentAmps; // Stator current
+    private final DoubleSupplier measuredCelsius; // NaN when there's no reading (simulation)
+
+    private final LinearFilter loadFilter = LinearFilter.singlePoleIIR(ThermalConstants.kLoadFilterSeconds, ThermalConstants.kSamplePeriodSeconds);
+
+    private double temperature = ThermalConstants.kAmbientCelsius;
+    private double averagePower = 0.0;
+    private double timeToLimit = Double.POSITIVE_INFINITY;
+
+    public MotorThermalModel(String name, double windingOhms, double heatCapacity, double thermalResistance, double limitCelsius,
+            DoubleSupplier currentAmps, DoubleSupplier measuredCelsius){
+        this.name = name;
+        this.windingOhms = windingOhms;
+        this.heatCapacity = heatCapacity;
+        this.thermalResistance = thermalResistance;
+        this.limitCelsius = limitCelsius;
+        this.currentAmps = currentAmps;
+        this.measuredCelsius = measuredCelsius;
+    }
+
+    public void update(double dtSeconds){
+        double current = currentAmps.getAsDouble();
+        double power = current * current * windingOhms;
+
+        temperature += (power - (temperature - ThermalConstants.kAmbientCelsius) / thermalResistance) / heatCapacity * dtSeconds;
+
+        double measured = measuredCelsius.getAsDouble();
+        if (!Double.isNaN(measured)){
+            temperature += ThermalConstants.kMeasurementGain * dtSeconds * (measured - temperature);
+            temperature = Math.max(temperature, measured);
+        }
+
+        averagePower = loadFilter.calculate(power);
+        timeToLimit = predictTimeToLimit(averagePower);
+    }
+
+    // Exponential approach to the steady state temperature for that load, infinite if it stays under the limit
+    private double predictTimeToLimit(double power){
+        if (temperature >= limitCelsius){
+            return 0.0;
+        }
+        double steadyState = ThermalConstants.kAmbientCelsius + power * thermalResistance;
+        if (steadyState <= limitCelsius){
+            return Double.POSITIVE_INFINITY;
+        }
+        double timeConstant = thermalResistance * heatCapacity;
+        return timeConstant * Math.log((steadyState - temperature) / (steadyState - limitCelsius));
+    }
+
+    /* --------------------> Getters <-------------------- */
+
+    public String getName(){
+        return name;
+    }
+
+    public double getTemperature(){
+        return temperature;
+    }
+
+    public double getLimit(){
+        return limitCelsius;
+    }
+
+    public double getTimeToLimit(){
+        return timeToLimit;
+    }
+
+    public double getAveragePower(){
+        return averagePower;
+    }
+}
@@ -0,0 +1,129 @@
+// Runs control-critical work at its own rate on high priority Notifier threads
+// The command scheduler and telemetry stay on the main TimedRobot loop
+
+package frc.robot.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.Threads;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+public class MultiRateScheduler {
+
+    /* --------------------> Rate Group <-------------------- */
+
+    // A set of tasks that run back to back on one Notifier at a fixed period
+    public static class RateGroup {
+
+        private final String name;
+        private final double periodSeconds;
+        private final int priority;
+        private final Runnable[] tasks;
+        private final Notifier notifier;
+
+        private final LoopStats executionStats;
+        private final LoopStats periodStats;
+        private volatile long overruns = 0;
+
+        private boolean priorityApplied = false;
+        private long lastStartMicros = 0;
+
+        private RateGroup(String name, double periodSeconds, int priority, Runnable... tasks){
+            this.name = name;
+            this.periodSeconds = periodSeconds;
+            this.priority = priority;
+            this.tasks = tasks;
+            this.executionStats = new LoopStats(name + " Exec");
+            this.periodStats = new LoopStats(name + " Period");
+            this.notifier = new Notifier(this::run);
+            this.notifier.setName(name);
+        }
+
+        private void run(){
+
+            // Notifier callbacks run on the Notifier's own thread, so the priority has to be set from in here
+            if (!priorityApplied){
+                Threads.setCurrentThreadPriority(true, priority);
+                priorityApplied = true;
+            }
+
+            long startMicros = RobotController.getFPGATime();
+            if (lastStartMicros != 0){
+                periodStats.addSampleMicros(lastStartMicros, startMicros);
+            }
+            lastStartMicros = startMicros;
+
+            for (Runnable task : tasks){
+                task.run();
+            }
+
+            long endMicros = RobotController.getFPGATime();
+            executionStats.addSampleMicros(startMicros, endMicros);
+            if (endMicros - startMicros > (long) (periodSeconds * 1e6)){
+                overruns++;
+            }
+        }
+
+        public void start(){
+            notifier.startPeriodic(periodSeconds);
+        }
+
+        public void stop(){
+            notifier.stop();
+        }
+
+        public LoopStats getExecutionStats(){
+            return executionStats;
+        }
+
+        public LoopStats getPeriodStats(){
+            return periodStats;
+        }
+
+        public void publish(){
+            executionStats.publish();
+            periodStats.publish();
+            SmartDashboard.putNumber(name + " Overruns", overruns);
+        }
+    }
+
+    /* --------------------> Scheduler <-------------------- */
+
+    private final List<RateGroup> rateGroups = new ArrayList<>();
+
+    // Stats for the main 50 Hz loop, recorded by Robot
+    private final LoopStats mainLoopStats = new LoopStats("Main Loop");
+
+    public RateGroup addRate(String name, double periodSeconds, int priority, Runnable... tasks){
+        RateGroup rateGroup = new RateGroup(name, periodSeconds, priority, tasks);
+        rateGroups.add(rateGroup);
+        return rateGroup;
+    }
+
+    public void startAll(){
+        for (RateGroup rateGroup : rateGroups){
+            rateGroup.start();
+        }
+    }
+
+    public void stopAll(){
+        for (RateGroup rateGroup : rateGroups){
+            rateGroup.stop();
+        }
+    }
+
+    public LoopStats getMainLoopStats(){
+        return mainLoopStats;
+    }
+
+    // Called from the main thread at telemetry rate
+    public void publishStats(){
+        mainLoopStats.publish();
+        for (RateGroup rateGroup : rateGroups){
+            rateGroup.publish();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+// Runs the periodic work of independent subsystems before the command scheduler, either
+// one after another or spread across a small thread pool. Either way everything has finished
+// before commands run, so command ordering is the same as running periodic() in the scheduler.
+// Every subsystem's snapshot() runs on the main thread first, see IndependentSubsystem.
+
+package frc.robot.utils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Phaser;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.RobotController;
+
+public class ParallelPeriodicRunner {
+
+    private final IndependentSubsystem[] subsystems;
+    private final long[] runMicros;
+    private final Runnable[] jobs;
+
+    private final ExecutorService pool; // null when running sequentially
+
+    // Barrier between the pool and the main thread, reused every loop so it doesn't allocate
+    private final Phaser barrier;
+
+    private final LoopStats wallStats = new LoopStats("Subsystem Periodic Wall");
+    private final LoopStats serialStats = new LoopStats("Subsystem Periodic Serial");
+    private final LoopStats savedStats = new LoopStats("Subsystem Periodic Saved");
+
+    public ParallelPeriodicRunner(boolean parallel, int threads, IndependentSubsystem... subsystems){
+        this.subsystems = subsystems;
+        this.runMicros = new long[subsystems.length];
+        this.jobs = new Runnable[subsystems.length];
+
+        // One party for the main thread plus one per job handed to the pool (job 0 runs on the main thread)
+        this.barrier = new Phaser(Math.max(subsystems.length, 1));
+
+        // Job 0 always runs on the main thread, the rest are handed to the pool
+        for (int i = 1; i < subsystems.length; i++){
+            final int index = i;
+            jobs[i] = () -> {
+                try {
+                    runSubsystem(index);
+                } finally {
+                    barrier.arrive();
+                }
+            };
+        }
+
+        if (parallel && subsystems.length > 1){
+            pool = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "Subsystem Periodic");
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            pool = null;
+        }
+    }
+
+    private void runSubsystem(int index){
+        long start = RobotController.getFPGATime();
+        try {
+            subsystems[index].independentPeriodic();
+        } catch (RuntimeException e){
+            // Same as an exception in periodic(), but it can't be allowed to kill a pool thread
+            DriverStation.reportError("Error in " + subsystems[index].getClass().getSimpleName() + " periodic: " + e, e.getStackTrace());
+        }
+        runMicros[index] = RobotController.getFPGATime() - start;
+    }
+
+    /* --------------------> Run Once per Loop <-------------------- */
+
+    public void run(){
+
+        long start = RobotController.getFPGATime();
+
+        for (IndependentSubsystem subsystem : subsystems){
+            subsystem.snapshot();
+        }
+
+        if (pool == null){
+            for (int i = 0; i < subsystems.length; i++){
+                runSubsystem(i);
+            }
+        } else {
+            for (int i = 1; i < jobs.length; i++){
+                pool.execute(jobs[i]);
+            }
+            // Keep the main thread busy instead of just waiting
+            runSubsystem(0);
+            barrier.arriveAndAwaitAdvance();
+        }
+
+        long wall = RobotController.getFPGATime() - start;
+        long serial = 0;
+        for (long micros : runMicros){
+            serial += micros;
+        }
+
+        wallStats.addSample(wall / 1000.0);
+        serialStats.addSample(serial / 1000.0);
+        savedStats.addSample((serial - wall) / 1000.0);
+    }
+
+    public void publishStats(){
+        wallStats.publish();
+        serialStats.publish();
+        savedStats.publish();
+    }
+}
@@ -0,0 +1,156 @@
+// Generates PathPlanner trajectories on a background thread
+//
+// A request returns straight away and the trajectory shows up on it when it's done, so the 20 ms
+// loop never waits on generation. Finished paths are cached by start region and target, so the
+// next request from roughly the same place has something to follow immediately while the exact
+// path from the current pose is generated.
+
+package frc.robot.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.pathplanner.lib.PathConstraints;
+import com.pathplanner.lib.PathPlanner;
+import com.pathplanner.lib.PathPlannerTrajectory;
+import com.pathplanner.lib.PathPoint;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+import frc.robot.utils.Constants.LoopConstants;
+import frc.robot.utils.Constants.PathConstants;
+
+public class PathGenerationService {
+
+    /* --------------------> Requests <-------------------- */
+
+    public static class Request {
+        private final double requestTime;
+        private volatile PathPlannerTrajectory trajectory;
+        private volatile boolean failed = false;
+
+        private Request(double requestTime){
+            this.requestTime = requestTime;
+        }
+
+        public boolean isReady(){
+            return trajectory != null;
+        }
+
+        public boolean hasFailed(){
+            return failed;
+        }
+
+        public PathPlannerTrajectory getTrajectory(){
+            return trajectory;
+        }
+
+        // The path starts at the pose the robot was at when it was requested
+        public double getRequestTime(){
+            return requestTime;
+        }
+    }
+
+    private final PathConstraints constraints = new PathConstraints(PathConstants.kMaxVelocityMps, PathConstants.kMaxAccelerationMps2);
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Path Generation");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    // Least recently used first
+    private final Map<String, PathPlannerTrajectory> cache = new LinkedHashMap<>(16, 0.75f, true){
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PathPlannerTrajectory> eldest){
+            return size() > PathConstants.kPathCacheSize;
+        }
+    };
+
+    private final LoopStats generationStats = new LoopStats("Path Generation");
+    private int cacheHits = 0;
+    private int cacheMisses = 0;
+
+    public PathGenerationService(){
+        BackgroundTaskScheduler.getInstance().register("Path Generation Telemetry", LoopConstants.kTelemetryPeriodSeconds, this::publishStats);
+    }
+
+    /* --------------------> Generation <-------------------- */
+
+    // Field relative velocity so the path starts out the way the robot is already moving
+    public Request generate(Pose2d start, Translation2d fieldVelocity, Pose2d target){
+        Request request = new Request(Timer.getFPGATimestamp());
+        String key = cacheKey(start, target);
+
+        executor.execute(() -> {
+            long startNanos = System.nanoTime();
+            try {
+                PathPlannerTrajectory trajectory = PathPlanner.generatePath(constraints,
+                    startPoint(start, fieldVelocity, target), endPoint(start, target));
+                generationStats.addSample((System.nanoTime() - startNanos) / 1e6);
+                synchronized (cache){
+                    cache.put(key, trajectory);
+                }
+                request.trajectory = trajectory;
+            } catch (RuntimeException e){
+                request.failed = true;
+                DriverStation.reportError("Path generation failed: " + e, e.getStackTrace());
+            }
+        });
+
+        return request;
+    }
+
+    // A path from the same start region to the same target, or null
+    public PathPlannerTrajectory getCached(Pose2d start, Pose2d target){
+        PathPlannerTrajectory trajectory;
+        synchronized (cache){
+            trajectory = cache.get(cacheKey(start, target));
+        }
+        if (trajectory != null){
+            cacheHits++;
+        } else {
+            cacheMisses++;
+        }
+        return trajectory;
+    }
+
+    private static PathPoint startPoint(Pose2d start, Translation2d fieldVelocity, Pose2d target){
+        double speed = fieldVelocity.getNorm();
+
+        // Leave in the direction the robot is moving, or straight at the target from a stop
+        Rotation2d heading = speed > PathConstants.kMinMovingSpeedMps
+            ? fieldVelocity.getAngle()
+            : target.getTranslation().minus(start.getTranslation()).getAngle();
+        return new PathPoint(start.getTranslation(), heading, start.getRotation(), speed);
+    }
+
+    private static PathPoint endPoint(Pose2d start, Pose2d target){
+        Rotation2d heading = target.getTranslation().minus(start.getTranslation()).getAngle();
+        return new PathPoint(target.getTranslation(), heading, target.getRotation());
+    }
+
+    // Start binned into kPathCacheRegionMeters squares, targets are fixed poses so they're used as is
+    private static String cacheKey(Pose2d start, Pose2d target){
+        long regionX = (long) Math.floor(start.getX() / PathConstants.kPathCacheRegionMeters);
+        long regionY = (long) Math.floor(start.getY() / PathConstants.kPathCacheRegionMeters);
+        return regionX + "," + regionY + "->" + Math.round(target.getX() * 100) + "," + Math.round(target.getY() * 100)
+            + "," + Math.round(target.getRotation().getDegrees());
+    }
+
+    /* --------------------> Telemetry <-------------------- */
+
+    public void publishStats(){
+        generationStats.publish();
+        SmartDashboard.putNumber("Path Cache Hits", cacheHits);
+        SmartDashboard.putNumber("Path Cache Misses", cacheMisses);
+    }
+}
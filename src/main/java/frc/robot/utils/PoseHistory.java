@@ -0,0 +1,95 @@
+// Fixed size ring buffer of timestamped poses kept in primitive arrays
+// Lookups interpolate between the two samples around the requested time. The buffer never
+// grows, so the binary search is bounded (log2 of the capacity) and nothing is allocated.
+
+package frc.robot.utils;
+
+import edu.wpi.first.math.MathUtil;
+
+public class PoseHistory {
+
+    private final double[] timestamps;
+    private final double[] xs;
+    private final double[] ys;
+    private final double[] thetas;
+
+    private int newest = -1; // Index of the newest sample
+    private int size = 0;
+
+    public PoseHistory(int capacity){
+        timestamps = new double[capacity];
+        xs = new double[capacity];
+        ys = new double[capacity];
+        thetas = new double[capacity];
+    }
+
+    // Timestamps must be increasing, older ones are ignored
+    public void add(double timestamp, double x, double y, double theta){
+        if (size > 0 && timestamp <= timestamps[newest]){
+            return;
+        }
+        newest = (newest + 1) % timestamps.length;
+        timestamps[newest] = timestamp;
+        xs[newest] = x;
+        ys[newest] = y;
+        thetas[newest] = theta;
+        if (size < timestamps.length){
+            size++;
+        }
+    }
+
+    public void clear(){
+        newest = -1;
+        size = 0;
+    }
+
+    // Ring index of the i-th oldest sample
+    private int indexOf(int i){
+        return (newest - size + 1 + i + timestamps.length) % timestamps.length;
+    }
+
+    /* --------------------> Interpolated Lookup <-------------------- */
+
+    // Writes x, y, theta at the given time into out, returns false if the time is outside the history
+    public boolean sample(double timestamp, double[] out){
+        if (size == 0){
+            return false;
+        }
+
+        int oldest = indexOf(0);
+        if (timestamp < timestamps[oldest] || timestamp > timestamps[newest]){
+            return false;
+        }
+
+        // Binary search for the first sample at or after the timestamp
+        int low = 0;
+        int high = size - 1;
+        while (low < high){
+            int mid = (low + high) >>> 1;
+            if (timestamps[indexOf(mid)] < timestamp){
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        int after = indexOf(low);
+        if (low == 0 || timestamps[after] == timestamp){
+            out[0] = xs[after];
+            out[1] = ys[after];
+            out[2] = thetas[after];
+            return true;
+        }
+
+        int before = indexOf(low - 1);
+        double t = (timestamp - timestamps[before]) / (timestamps[after] - timestamps[before]);
+        out[0] = xs[before] + (xs[after] - xs[before]) * t;
+        out[1] = ys[before] + (ys[after] - ys[before]) * t;
+        out[2] = thetas[before] + MathUtil.angleModulus(thetas[after] - thetas[before]) * t;
+        return true;
+    }
+
+    public int size(){
+        return size;
+    }
+}
@@ -0,0 +1,178 @@
+// Splits the battery's current between the mechanisms every loop, by priority
+// The battery is an open circuit voltage behind a series resistance (battery, wiring, breakers), so
+// the most the robot can draw and stay above kMinVoltage is (Voc - kMinVoltage) / R. Voc is estimated
+// from the measured voltage and total current, and whatever isn't drawn by a managed consumer
+// (compressor, rio, radio) is taken off the top.
+//
+// Every consumer gets its minimum first. Then, in priority order, each gets what it's drawing now
+// (plus kDemandHeadroom) up to its maximum, and last whatever is left goes out in priority order
+// again. With a light load everyone ends up at their maximum, when everything accelerates at once the
+// low priority consumers are squeezed toward their minimum instead of the whole robot browning out.
+//
+// Limits are whole amps per motor and only written when they move by kMinChangeAmps, so a steady
+// load costs no CAN traffic.
+
+package frc.robot.utils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.DoubleSupplier;
+import java.util.function.IntConsumer;
+
+import edu.wpi.first.math.filter.LinearFilter;
+import edu.wpi.first.wpilibj.PowerDistribution;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import frc.robot.utils.Constants.PowerConstants;
+
+public class PowerManager {
+
+    private static class Consumer {
+        final String name;
+        final int priority;
+        final int motors;
+        final double minAmps, maxAmps; // Per motor
+        final DoubleSupplier measuredAmps; // All motors together
+        final IntConsumer applyLimit; // Per motor
+        final LinearFilter demandFilter = LinearFilter.singlePoleIIR(PowerConstants.kDemandFilterSeconds, TimedRobot.kDefaultPeriod);
+
+        double maxScale = 1.0; // Thermal derating, see setMaxScale()
+        double demand = 0.0;
+        double allocated = 0.0;
+        int writtenLimit = -1;
+
+        Consumer(String name, int priority, int motors, double minAmps, double maxAmps, DoubleSupplier measuredAmps, IntConsumer applyLimit){
+            this.name = name;
+            this.priority = priority;
+            this.motors = motors;
+            this.minAmps = minAmps;
+            this.maxAmps = maxAmps;
+            this.measuredAmps = measuredAmps;
+            this.applyLimit = applyLimit;
+        }
+
+        double scaledMaxAmps(){
+            return Math.max(minAmps, maxAmps * maxScale);
+        }
+    }
+
+    private final List<Consumer> consumers = new ArrayList<>();
+    private final PowerDistribution powerDistribution;
+
+    private final LinearFilter openCircuitFilter = LinearFilter.singlePoleIIR(PowerConstants.kVoltageFilterSeconds, TimedRobot.kDefaultPeriod);
+    private final LinearFilter baseLoadFilter = LinearFilter.singlePoleIIR(PowerConstants.kDemandFilterSeconds, TimedRobot.kDefaultPeriod);
+
+    private double batteryVoltage = 0.0;
+    private double totalCurrent = 0.0;
+    private double openCircuitVoltage = 0.0;
+    private double baseLoad = 0.0;
+    private double budget = 0.0;
+    private int limitWrites = 0;
+
+    public PowerManager(PowerDistribution powerDistribution){
+        this.powerDistribution = powerDistribution;
+    }
+
+    // Lower priority numbers are served first, limits are per motor
+    public PowerManager addConsumer(String name, int priority, int motors, double minAmps, double maxAmps,
+            DoubleSupplier measuredAmps, IntConsumer applyLimit){
+        consumers.add(new Consumer(name, priority, motors, minAmps, maxAmps, measuredAmps, applyLimit));
+        consumers.sort(Comparator.comparingInt(consumer -> consumer.priority));
+        return this;
+    }
+
+    // Lowers a consumer's maximum (never under its minimum), ThermalMonitor uses it to keep a hot motor's
+    // current down. Main thread, like update().
+    public void setMaxScale(String name, double scale){
+        for (Consumer consumer : consumers){
+            if (consumer.name.equals(name)){
+                consumer.maxScale = scale;
+            }
+        }
+    }
+
+    /* --------------------> Allocation <-------------------- */
+
+    // Runs on the main thread once per loop
+    public void update(){
+        batteryVoltage = RobotController.getBatteryVoltage();
+        totalCurrent = powerDistribution.getTotalCurrent();
+
+        double managedCurrent = 0.0;
+        for (Consumer consumer : consumers){
+            double measured = consumer.measuredAmps.getAsDouble();
+            managedCurrent += measured;
+            consumer.demand = consumer.demandFilter.calculate(measured / consumer.motors);
+        }
+
+        openCircuitVoltage = openCircuitFilter.calculate(batteryVoltage + totalCurrent * PowerConstants.kBatteryResistanceOhms);
+        baseLoad = baseLoadFilter.calculate(Math.max(0.0, totalCurrent - managedCurrent));
+        budget = Math.max(0.0, (openCircuitVoltage - PowerConstants.kMinVoltage) / PowerConstants.kBatteryResistanceOhms - baseLoad);
+
+        allocate(budget);
+
+        for (Consumer consumer : consumers){
+            int limit = (int) Math.floor(consumer.allocated);
+            if (consumer.writtenLimit < 0 || Math.abs(limit - consumer.writtenLimit) >= PowerConstants.kMinChangeAmps
+                    || (limit != consumer.writtenLimit && (limit <= consumer.minAmps || limit >= consumer.scaledMaxAmps()))){
+                consumer.applyLimit.accept(limit);
+                consumer.writtenLimit = limit;
+                limitWrites++;
+            }
+        }
+    }
+
+    private void allocate(double budget){
+        double remaining = budget;
+
+        // Minimums always, even if that's over budget, the robot still has to be able to move
+        for (Consumer consumer : consumers){
+            consumer.allocated = consumer.minAmps;
+            remaining -= consumer.minAmps * consumer.motors;
+        }
+
+        // What each is asking for now, highest priority first
+        for (Consumer consumer : consumers){
+            if (remaining <= 0.0){
+                return;
+            }
+            double wanted = Math.min(consumer.scaledMaxAmps(), consumer.demand * PowerConstants.kDemandHeadroom);
+            remaining -= grant(consumer, wanted - consumer.allocated, remaining);
+        }
+
+        // The rest is room to accelerate into
+        for (Consumer consumer : consumers){
+            if (remaining <= 0.0){
+                return;
+            }
+            remaining -= grant(consumer, consumer.scaledMaxAmps() - consumer.allocated, remaining);
+        }
+    }
+
+    // Gives a consumer up to perMotor more amps per motor out of what's left, returns the total used
+    private double grant(Consumer consumer, double perMotor, double remaining){
+        if (perMotor <= 0.0){
+            return 0.0;
+        }
+        double granted = Math.min(perMotor, remaining / consumer.motors);
+        consumer.allocated += granted;
+        return granted * consumer.motors;
+    }
+
+    /* --------------------> Telemetry <-------------------- */
+
+    public void updateSmartDashboard(){
+        SmartDashboard.putNumber("Power Battery Voltage", batteryVoltage);
+        SmartDashboard.putNumber("Power Total Current", totalCurrent);
+        SmartDashboard.putNumber("Power Open Circuit Voltage", openCircuitVoltage);
+        SmartDashboard.putNumber("Power Base Load", baseLoad);
+        SmartDashboard.putNumber("Power Budget", budget);
+        SmartDashboard.putNumber("Power Limit Writes", limitWrites);
+        SmartDashboard.putBoolean("Power Browned Out", RobotController.isBrownedOut());
+        for (Consumer consumer : consumers){
+            SmartDashboard.putNumber("Power Limit " + consumer.name, consumer.writtenLimit);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+// Precomputed scoring and loading poses for both alliances
+//
+// Grid columns are evenly spaced, so the nearest column is one division and a round. For each column
+// and game piece the nearest legal column is also precomputed, which makes finding the nearest node
+// for the selected piece constant time. There are only two double substation shelves per alliance, so
+// those are just compared.
+
+package frc.robot.utils;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.wpilibj.DriverStation.Alliance;
+
+import frc.robot.utils.Constants.FieldConstants;
+
+public final class ScoringNodeIndex {
+
+    private static final int kBlue = 0;
+    private static final int kRed = 1;
+
+    // [alliance][column]
+    private static final Pose2d[][] nodePoses = new Pose2d[2][FieldConstants.kGridColumns];
+
+    // [cube ? 1 : 0][column], nearest column that takes that piece
+    private static final int[][] nearestLegalColumn = new int[2][FieldConstants.kGridColumns];
+
+    // [alliance][shelf]
+    private static final Pose2d[][] doubleSubstationPoses = new Pose2d[2][FieldConstants.kBlueDoubleSubstationY.length];
+    private static final Pose2d[] singleSubstationPoses = new Pose2d[2];
+
+    static {
+        for (int column = 0; column < FieldConstants.kGridColumns; column++){
+            double y = FieldConstants.kGridFirstNodeY + column * FieldConstants.kGridNodeSpacingMeters;
+            nodePoses[kBlue][column] = new Pose2d(FieldConstants.kBlueScoringX, y, Rotation2d.fromDegrees(180));
+            nodePoses[kRed][column] = mirror(nodePoses[kBlue][column]);
+
+            for (int piece = 0; piece < 2; piece++){
+                int best = -1;
+                for (int candidate = 0; candidate < FieldConstants.kGridColumns; candidate++){
+                    if (isCubeColumn(candidate) == (piece == 1)
+                        && (best < 0 || Math.abs(candidate - column) < Math.abs(best - column))){
+                        best = candidate;
+                    }
+                }
+                nearestLegalColumn[piece][column] = best;
+            }
+        }
+
+        for (int shelf = 0; shelf < FieldConstants.kBlueDoubleSubstationY.length; shelf++){
+            doubleSubstationPoses[kBlue][shelf] = new Pose2d(FieldConstants.kBlueDoubleSubstationX, FieldConstants.kBlueDoubleSubstationY[shelf], new Rotation2d());
+            doubleSubstationPoses[kRed][shelf] = mirror(doubleSubstationPoses[kBlue][shelf]);
+        }
+        singleSubstationPoses[kBlue] = new Pose2d(FieldConstants.kBlueSingleSubstationX, FieldConstants.kBlueSingleSubstationY, Rotation2d.fromDegrees(90));
+        singleSubstationPoses[kRed] = mirror(singleSubstationPoses[kBlue]);
+    }
+
+    private ScoringNodeIndex(){}
+
+    // The 2023 field is mirrored across the center line, not rotated
+    private static Pose2d mirror(Pose2d pose){
+        return new Pose2d(FieldConstants.kFieldLengthMeters - pose.getX(), pose.getY(),
+            new Rotation2d(Math.PI - pose.getRotation().getRadians()));
+    }
+
+    private static int allianceIndex(Alliance alliance){
+        return alliance == Alliance.Red ? kRed : kBlue;
+    }
+
+    public static boolean isCubeColumn(int column){
+        return column % 3 == 1;
+    }
+
+    /* --------------------> Lookups <-------------------- */
+
+    public static int nearestColumn(double y){
+        int column = (int) Math.round((y - FieldConstants.kGridFirstNodeY) / FieldConstants.kGridNodeSpacingMeters);
+        return MathUtil.clamp(column, 0, FieldConstants.kGridColumns - 1);
+    }
+
+    public static Pose2d nearestNode(Pose2d robotPose, boolean cube, Alliance alliance){
+        int column = nearestLegalColumn[cube ? 1 : 0][nearestColumn(robotPose.getY())];
+        return nodePoses[allianceIndex(alliance)][column];
+    }
+
+    public static Pose2d nodePose(int column, Alliance alliance){
+        return nodePoses[allianceIndex(alliance)][column];
+    }
+
+    public static Pose2d nearestDoubleSubstation(Pose2d robotPose, Alliance alliance){
+        Pose2d[] shelves = doubleSubstationPoses[allianceIndex(alliance)];
+        Pose2d best = shelves[0];
+        for (int i = 1; i < shelves.length; i++){
+            if (Math.abs(shelves[i].getY() - robotPose.getY()) < Math.abs(best.getY() - robotPose.getY())){
+                best = shelves[i];
+            }
+        }
+        return best;
+    }
+
+    public static Pose2d singleSubstation(Alliance alliance){
+        return singleSubstationPoses[allianceIndex(alliance)];
+    }
+}
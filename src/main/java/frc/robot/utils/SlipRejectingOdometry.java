@@ -0,0 +1,211 @@
+// Swerve odometry that checks each module against the gyro and accelerometer before trusting it
+//
+// With the heading change taken from the gyro, every module gives its own estimate of how far the
+// robot translated. Modules that disagree with the consensus (median) by more than kSlipToleranceMps
+// are flagged as slipping and dropped, and the translation is averaged over the rest. If the modules
+// still claim a bigger velocity change than the accelerometer measured (all four wheels spinning on a
+// launch) the change is scaled back to what the accelerometer allows. Allocation free apart from the
+// returned Pose2d.
+
+package frc.robot.utils;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.geometry.Twist2d;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+
+import frc.robot.utils.Constants.OdometryConstants;
+
+public class SlipRejectingOdometry {
+
+    private final double[] moduleX;
+    private final double[] moduleY;
+
+    private final double[] lastDistances;
+    private final double[] translationX;
+    private final double[] translationY;
+    private final double[] sortBuffer;
+    private final boolean[] slipping;
+
+    private double lastGyroRadians;
+    private double lastTimestamp = -1.0;
+    private double headingOffset; // Pose heading minus gyro heading
+
+    // Robot relative velocity from the last update, for the accelerometer check and traction control
+    private double lastVx = 0.0;
+    private double lastVy = 0.0;
+    private double lastOmega = 0.0;
+
+    private Pose2d pose;
+    private boolean colliding = false;
+    private boolean accelerationLimited = false;
+    private int slipCount = 0;
+    private int collisionCount = 0;
+
+    public SlipRejectingOdometry(Translation2d[] moduleTranslations, Rotation2d gyroAngle, SwerveModulePosition[] modulePositions, Pose2d initialPose){
+        int n = moduleTranslations.length;
+        moduleX = new double[n];
+        moduleY = new double[n];
+        lastDistances = new double[n];
+        translationX = new double[n];
+        translationY = new double[n];
+        sortBuffer = new double[n];
+        slipping = new boolean[n];
+        for (int i = 0; i < n; i++){
+            moduleX[i] = moduleTranslations[i].getX();
+            moduleY[i] = moduleTranslations[i].getY();
+        }
+        resetPosition(gyroAngle, modulePositions, initialPose);
+    }
+
+    public void resetPosition(Rotation2d gyroAngle, SwerveModulePosition[] modulePositions, Pose2d pose){
+        this.pose = pose;
+        lastGyroRadians = gyroAngle.getRadians();
+        headingOffset = pose.getRotation().getRadians() - lastGyroRadians;
+        for (int i = 0; i < lastDistances.length; i++){
+            lastDistances[i] = modulePositions[i].distanceMeters;
+        }
+        lastTimestamp = -1.0;
+        lastVx = 0.0;
+        lastVy = 0.0;
+        lastOmega = 0.0;
+    }
+
+    /* --------------------> Update <-------------------- */
+
+    // Acceleration is robot relative in m/s^2, from the Pigeon2 accelerometer
+    public Pose2d update(double timestampSeconds, Rotation2d gyroAngle, SwerveModulePosition[] modulePositions, double accelX, double accelY){
+
+        double gyroRadians = gyroAngle.getRadians();
+        double dTheta = MathUtil.angleModulus(gyroRadians - lastGyroRadians);
+        lastGyroRadians = gyroRadians;
+
+        // Each module's delta minus the part the rotation explains leaves a translation estimate
+        int n = moduleX.length;
+        for (int i = 0; i < n; i++){
+            double distance = modulePositions[i].distanceMeters;
+            double delta = distance - lastDistances[i];
+            lastDistances[i] = distance;
+
+            double angle = modulePositions[i].angle.getRadians();
+            translationX[i] = delta * Math.cos(angle) + dTheta * moduleY[i];
+            translationY[i] = delta * Math.sin(angle) - dTheta * moduleX[i];
+        }
+
+        double dt = lastTimestamp < 0.0 ? 0.0 : timestampSeconds - lastTimestamp;
+        lastTimestamp = timestampSeconds;
+
+        double dx = median(translationX);
+        double dy = median(translationY);
+
+        // Drop modules that disagree with the others, average what's left
+        if (dt > 0.0){
+            double tolerance = OdometryConstants.kSlipToleranceMps * dt;
+            double sumX = 0.0;
+            double sumY = 0.0;
+            int used = 0;
+            for (int i = 0; i < n; i++){
+                slipping[i] = Math.hypot(translationX[i] - dx, translationY[i] - dy) > tolerance;
+                if (slipping[i]){
+                    slipCount++;
+                } else {
+                    sumX += translationX[i];
+                    sumY += translationY[i];
+                    used++;
+                }
+            }
+            if (used > 0){
+                dx = sumX / used;
+                dy = sumY / used;
+            }
+
+            // Velocity can't change faster than the accelerometer says it did
+            double vx = dx / dt;
+            double vy = dy / dt;
+            double changeX = vx - lastVx;
+            double changeY = vy - lastVy;
+            double impliedAccel = Math.hypot(changeX, changeY) / dt;
+            double allowedAccel = Math.hypot(accelX, accelY) + OdometryConstants.kSlipAccelToleranceMps2;
+            accelerationLimited = OdometryConstants.kAccelerometerCheckEnabled && impliedAccel > allowedAccel;
+            if (accelerationLimited){
+                double scale = allowedAccel / impliedAccel;
+                vx = lastVx + changeX * scale;
+                vy = lastVy + changeY * scale;
+                dx = vx * dt;
+                dy = vy * dt;
+            }
+            lastVx = vx;
+            lastVy = vy;
+            lastOmega = dTheta / dt;
+        }
+
+        // Hit something (or got hit), flagged for telemetry and so vision can take over
+        boolean wasColliding = colliding;
+        colliding = Math.hypot(accelX, accelY) > OdometryConstants.kCollisionAccelMps2;
+        if (colliding && !wasColliding){
+            collisionCount++;
+        }
+
+        Pose2d newPose = pose.exp(new Twist2d(dx, dy, dTheta));
+        pose = new Pose2d(newPose.getTranslation(), new Rotation2d(gyroRadians + headingOffset));
+        return pose;
+    }
+
+    // Median of a small array, mean of the middle two for even lengths
+    private double median(double[] values){
+        System.arraycopy(values, 0, sortBuffer, 0, values.length);
+        // Insertion sort, there are only four modules
+        for (int i = 1; i < sortBuffer.length; i++){
+            double value = sortBuffer[i];
+            int j = i - 1;
+            while (j >= 0 && sortBuffer[j] > value){
+                sortBuffer[j + 1] = sortBuffer[j];
+                j--;
+            }
+            sortBuffer[j + 1] = value;
+        }
+        int mid = sortBuffer.length / 2;
+        return sortBuffer.length % 2 == 1 ? sortBuffer[mid] : 0.5 * (sortBuffer[mid - 1] + sortBuffer[mid]);
+    }
+
+    /* --------------------> Getters <-------------------- */
+
+    public Pose2d getPoseMeters(){
+        return pose;
+    }
+
+    // Robot relative chassis velocity with slipping modules left out
+    public double getVelocityX(){
+        return lastVx;
+    }
+
+    public double getVelocityY(){
+        return lastVy;
+    }
+
+    public double getOmega(){
+        return lastOmega;
+    }
+
+    public boolean isSlipping(int module){
+        return slipping[module];
+    }
+
+    public boolean isColliding(){
+        return colliding;
+    }
+
+    public boolean isAccelerationLimited(){
+        return accelerationLimited;
+    }
+
+    public int getSlipCount(){
+        return slipCount;
+    }
+
+    public int getCollisionCount(){
+        return collisionCount;
+    }
+}
@@ -0,0 +1,388 @@
+// One SparkMax running SmartMotion on a mechanism, the part the arm, extension and wrist all share
+// Positions are in mechanism units (radians, meters) everywhere outside this class. The controller
+// works in its feedback device's units, units = native * unitsPerNative - offset.
+//
+// Setpoints are clamped to [minPosition, maxPosition] before they're stored, and the same range is
+// written to the SparkMax as forward/reverse soft limits so the controller enforces it at its own
+// 1 kHz loop, whatever the rio asks for (open loop, voltage, a bad setpoint). The SparkMax checks soft
+// limits against its built-in encoder rather than the absolute one, so the built-in encoder is put in
+// mechanism units and seeded from the absolute position at boot.
+//
+// References are only sent when the setpoint or feedforward actually changed. In simulation the
+// mechanism follows the SmartMotion profile exactly unless the owner has a better sim of its own.
+// The gains and SmartMotion limits are registered with TunableGainStore under the mechanism's name,
+// and the mechanism is a LatencyTracer sink of the same name. Only a change in what the motor is
+// told to go to is stamped (a new reference, a new open loop speed, or a voltage toward a new
+// setpoint), a feedforward that follows the arm's angle or a voltage loop settling on the same
+// setpoint isn't a response to anything.
+
+package frc.robot.utils;
+
+import java.util.function.DoubleSupplier;
+
+import com.revrobotics.CANSparkMax;
+import com.revrobotics.RelativeEncoder;
+import com.revrobotics.SparkMaxAbsoluteEncoder;
+import com.revrobotics.SparkMaxPIDController;
+import com.revrobotics.CANSparkMax.ControlType;
+import com.revrobotics.CANSparkMax.IdleMode;
+import com.revrobotics.CANSparkMax.SoftLimitDirection;
+import com.revrobotics.CANSparkMaxLowLevel.MotorType;
+import com.revrobotics.SparkMaxAbsoluteEncoder.Type;
+import com.revrobotics.SparkMaxPIDController.ArbFFUnits;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+public class SparkMaxMechanism {
+
+    public static class Config {
+        private final String name;
+        private final int motorId;
+        private boolean inverted = false;
+        private double kP, kI, kD, kIz, kFF;
+        private double minOutput = -1.0, maxOutput = 1.0;
+        private double maxVelocity, minVelocity, maxAcceleration, allowedError; // Controller units, per minute
+        private int currentLimit = 40;
+        private double absoluteConversionFactor = 1.0; // Written to the absolute encoder
+        private double unitsPerNative = 1.0, offsetUnits = 0.0;
+        private double unitsPerMotorRotation = 1.0;
+        private double minPosition, maxPosition;
+        private double goalTolerance;
+        private DoubleSupplier positionSource = null; // Real robot only, the absolute encoder if null
+        private boolean simulate = true;
+        private boolean scalingVerified = false;
+
+        public Config(String name, int motorId){
+            this.name = name;
+            this.motorId = motorId;
+        }
+
+        public Config inverted(boolean inverted){
+            this.inverted = inverted;
+            return this;
+        }
+
+        public Config pid(double kP, double kI, double kD, double kIz, double kFF){
+            this.kP = kP;
+            this.kI = kI;
+            this.kD = kD;
+            this.kIz = kIz;
+            this.kFF = kFF;
+            return this;
+        }
+
+        public Config outputRange(double minOutput, double maxOutput){
+            this.minOutput = minOutput;
+            this.maxOutput = maxOutput;
+            return this;
+        }
+
+        public Config smartMotion(double maxVelocity, double minVelocity, double maxAcceleration, double allowedError){
+            this.maxVelocity = maxVelocity;
+            this.minVelocity = minVelocity;
+            this.maxAcceleration = maxAcceleration;
+            this.allowedError = allowedError;
+            return this;
+        }
+
+        public Config currentLimit(int amps){
+            this.currentLimit = amps;
+            return this;
+        }
+
+        public Config absoluteConversionFactor(double factor){
+            this.absoluteConversionFactor = factor;
+            return this;
+        }
+
+        // units = native * unitsPerNative - offsetUnits
+        public Config units(double unitsPerNative, double offsetUnits){
+            this.unitsPerNative = unitsPerNative;
+            this.offsetUnits = offsetUnits;
+            return this;
+        }
+
+        public Config unitsPerMotorRotation(double units){
+            this.unitsPerMotorRotation = units;
+            return this;
+        }
+
+        public Config range(double minPosition, double maxPosition){
+            this.minPosition = minPosition;
+            this.maxPosition = maxPosition;
+            return this;
+        }
+
+        public Config goalTolerance(double tolerance){
+            this.goalTolerance = tolerance;
+            return this;
+        }
+
+        public Config positionSource(DoubleSupplier source){
+            this.positionSource = source;
+            return this;
+        }
+
+        // Off when the owner simulates the mechanism itself and reports it through positionSource
+        public Config simulate(boolean simulate){
+            this.simulate = simulate;
+            return this;
+        }
+
+        // Set once the unit scaling (gearing, encoder factors) has been checked on the robot. The
+        // soft limits are built on it, so they stay off until then.
+        public Config scalingVerified(boolean verified){
+            this.scalingVerified = verified;
+            return this;
+        }
+    }
+
+    private final Config config;
+    private final CANSparkMax motor;
+    private final SparkMaxAbsoluteEncoder absoluteEncoder;
+    private final RelativeEncoder motorEncoder;
+    private final SparkMaxPIDController pidController;
+
+    private volatile double setpoint;
+    private double profileScale = 1.0;
+
+    // Last reference sent, so an unchanged one isn't sent again
+    private double sentReference = Double.NaN;
+    private double sentFeedForward = Double.NaN;
+    private double sentSpeed = Double.NaN;
+    private double stampedSetpoint = Double.NaN;
+
+    private final LatencyTracer.Sink latencySink;
+
+    /* --------------------> Simulation <-------------------- */
+
+    private final boolean simulated;
+    private TrapezoidProfile.Constraints simConstraints;
+    private TrapezoidProfile.State simState;
+    private double lastSimTimestamp = -1.0;
+
+    public SparkMaxMechanism(Config config){
+        this.config = config;
+        latencySink = LatencyTracer.getInstance().addSink(config.name);
+
+        motor = new CANSparkMax(config.motorId, MotorType.kBrushless);
+        motor.restoreFactoryDefaults();
+        motor.setInverted(config.inverted);
+
+        absoluteEncoder = motor.getAbsoluteEncoder(Type.kDutyCycle);
+        absoluteEncoder.setPositionConversionFactor(config.absoluteConversionFactor);
+        pidController = motor.getPIDController();
+        pidController.setFeedbackDevice(absoluteEncoder);
+
+        pidController.setP(config.kP);
+        pidController.setI(config.kI);
+        pidController.setD(config.kD);
+        pidController.setIZone(config.kIz);
+        pidController.setFF(config.kFF);
+        pidController.setOutputRange(config.minOutput, config.maxOutput);
+
+        pidController.setSmartMotionMaxVelocity(config.maxVelocity, 0);
+        pidController.setSmartMotionMinOutputVelocity(config.minVelocity, 0);
+        pidController.setSmartMotionMaxAccel(config.maxAcceleration, 0);
+        pidController.setSmartMotionAllowedClosedLoopError(config.allowedError, 0);
+
+        motor.setSmartCurrentLimit(config.currentLimit);
+        motor.setIdleMode(IdleMode.kBrake);
+
+        simulated = RobotBase.isSimulation() && config.simulate;
+        if (simulated){
+            setProfileScale(1.0);
+            simState = new TrapezoidProfile.State(config.minPosition, 0.0);
+        }
+
+        // Soft limits are checked against the built-in encoder, so it has to agree with the absolute one
+        motorEncoder = motor.getEncoder();
+        motorEncoder.setPositionConversionFactor(config.unitsPerMotorRotation);
+        motorEncoder.setPosition(getPosition());
+        motor.setSoftLimit(SoftLimitDirection.kForward, (float) config.maxPosition);
+        motor.setSoftLimit(SoftLimitDirection.kReverse, (float) config.minPosition);
+        motor.enableSoftLimit(SoftLimitDirection.kForward, config.scalingVerified);
+        motor.enableSoftLimit(SoftLimitDirection.kReverse, config.scalingVerified);
+        if (!config.scalingVerified && RobotBase.isReal()){
+            DriverStation.reportWarning(config.name + " scaling hasn't been checked on the robot, soft limits are off", false);
+        }
+
+        motor.burnFlash();
+
+        // Config is done, later writes (references, current limits) don't wait for a response
+        motor.setCANTimeout(0);
+
+        setpoint = clamp(getPosition());
+
+        // After burnFlash, so the flash keeps the Constants values and tuned ones come from the store
+        TunableGainStore store = TunableGainStore.getInstance();
+        store.register(config.name + "/kP", config.kP, pidController::setP);
+        store.register(config.name + "/kI", config.kI, pidController::setI);
+        store.register(config.name + "/kD", config.kD, pidController::setD);
+        store.register(config.name + "/kFF", config.kFF, pidController::setFF);
+        store.register(config.name + "/Max Velocity", config.maxVelocity, value -> {
+            config.maxVelocity = value;
+            setProfileScale(profileScale);
+        });
+        store.register(config.name + "/Max Acceleration", config.maxAcceleration, value -> {
+            config.maxAcceleration = value;
+            setProfileScale(profileScale);
+        });
+    }
+
+    /* --------------------> Setpoint <-------------------- */
+
+    // Clamped before it's stored, so nothing outside the range is ever held
+    public void setSetpoint(double position){
+        setpoint = clamp(position);
+    }
+
+    public void adjustSetpoint(double delta){
+        setpoint = clamp(setpoint + delta);
+    }
+
+    public double getSetpoint(){
+        return setpoint;
+    }
+
+    public double clamp(double position){
+        return MathUtil.clamp(position, config.minPosition, config.maxPosition);
+    }
+
+    public boolean atGoal(){
+        return Math.abs(getPosition() - setpoint) < config.goalTolerance;
+    }
+
+    /* --------------------> Output <-------------------- */
+
+    // SmartMotion to the stored setpoint with an arbitrary feedforward in percent
+    public void apply(double arbFFPercent){
+        apply(setpoint, arbFFPercent);
+    }
+
+    // SmartMotion somewhere other than the stored setpoint, still clamped
+    public void apply(double position, double arbFFPercent){
+        double reference = toNative(clamp(position));
+        if (reference == sentReference && arbFFPercent == sentFeedForward){
+            return;
+        }
+        pidController.setReference(reference, ControlType.kSmartMotion, 0, arbFFPercent, ArbFFUnits.kPercentOut);
+        if (reference != sentReference){
+            latencySink.write();
+        }
+        sentReference = reference;
+        sentFeedForward = arbFFPercent;
+        sentSpeed = Double.NaN;
+    }
+
+    public void set(double speed){
+        motor.set(speed);
+        if (speed != sentSpeed){
+            latencySink.write();
+        }
+        sentReference = Double.NaN;
+        sentSpeed = speed;
+    }
+
+    // Closed loop on the rio, the voltage changes every loop so only the first one toward a new setpoint is stamped
+    public void setVoltage(double volts){
+        motor.setVoltage(volts);
+        if (setpoint != stampedSetpoint){
+            stampedSetpoint = setpoint;
+            latencySink.write();
+        }
+        sentReference = Double.NaN;
+        sentSpeed = Double.NaN;
+    }
+
+    public void stop(){
+        motor.stopMotor();
+        if (sentSpeed != 0.0){
+            latencySink.write();
+        }
+        sentReference = Double.NaN;
+        sentSpeed = 0.0;
+    }
+
+    // For derating, slows the SmartMotion profile
+    public void setProfileScale(double scale){
+        profileScale = scale;
+        pidController.setSmartMotionMaxVelocity(config.maxVelocity * scale, 0);
+        pidController.setSmartMotionMaxAccel(config.maxAcceleration * scale, 0);
+        if (simulated){
+            simConstraints = new TrapezoidProfile.Constraints(
+                config.maxVelocity * scale / 60.0 * config.unitsPerNative, config.maxAcceleration * scale / 60.0 * config.unitsPerNative);
+        }
+    }
+
+    public void setCurrentLimit(int amps){
+        motor.setSmartCurrentLimit(amps);
+    }
+
+    /* --------------------> Measurements <-------------------- */
+
+    public double getPosition(){
+        if (simulated){
+            return simState.position;
+        }
+        if (config.positionSource != null){
+            return config.positionSource.getAsDouble();
+        }
+        return absoluteEncoder.getPosition() * config.unitsPerNative - config.offsetUnits;
+    }
+
+    public double toNative(double position){
+        return (position + config.offsetUnits) / config.unitsPerNative;
+    }
+
+    public double getOutput(){
+        return motor.get();
+    }
+
+    public double getCurrent(){
+        return motor.getOutputCurrent();
+    }
+
+    // NaN in simulation, there's nothing to read
+    public double getTemperature(){
+        return RobotBase.isSimulation() ? Double.NaN : motor.getMotorTemperature();
+    }
+
+    /* --------------------> Simulation <-------------------- */
+
+    public void simulationPeriodic(){
+        if (!simulated){
+            return;
+        }
+        double now = Timer.getFPGATimestamp();
+        if (lastSimTimestamp >= 0.0){
+            simState = new TrapezoidProfile(simConstraints, new TrapezoidProfile.State(
+                Double.isNaN(sentReference) ? simState.position : sentReference * config.unitsPerNative - config.offsetUnits, 0.0),
+                simState).calculate(now - lastSimTimestamp);
+        }
+        lastSimTimestamp = now;
+    }
+
+    // Puts the simulated mechanism somewhere and holds it there
+    public void resetSimulation(double position){
+        if (simulated){
+            simState = new TrapezoidProfile.State(clamp(position), 0.0);
+            setpoint = clamp(position);
+            sentReference = Double.NaN;
+        }
+    }
+
+    /* --------------------> Telemetry <-------------------- */
+
+    public void updateSmartDashboard(){
+        SmartDashboard.putNumber(config.name + " Motor Speed", motor.get());
+        SmartDashboard.putNumber(config.name + " Position", getPosition());
+        SmartDashboard.putNumber(config.name + " Setpoint", setpoint);
+        SmartDashboard.putBoolean(config.name + " At Goal", atGoal());
+    }
+}
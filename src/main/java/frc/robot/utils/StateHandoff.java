@@ -0,0 +1,29 @@
+// Thread-safe hand-off of a fixed size block of doubles between loops running at different rates
+// Values are copied in and out of caller owned arrays so neither side allocates
+
+package frc.robot.utils;
+
+public class StateHandoff {
+
+    private final double[] values;
+    private long sequence = 0;
+
+    public StateHandoff(int size){
+        values = new double[size];
+    }
+
+    public synchronized void write(double[] source){
+        System.arraycopy(source, 0, values, 0, values.length);
+        sequence++;
+    }
+
+    // Returns the write count, so a reader can tell whether anything new arrived since its last read
+    public synchronized long read(double[] destination){
+        System.arraycopy(values, 0, destination, 0, values.length);
+        return sequence;
+    }
+
+    public int size(){
+        return values.length;
+    }
+}
@@ -0,0 +1,153 @@
+// Wheel odometry fused with latency-compensated AprilTag pose measurements
+//
+// The estimate is the odometry pose moved by a rigid field-frame correction (rotation + translation).
+// Odometry poses are kept in a PoseHistory, so a measurement captured in the past is compared against
+// where the current correction says the robot was at that moment, and the correction is nudged toward
+// it. Fusing is a fixed amount of primitive math and allocates nothing.
+
+package frc.robot.utils;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+
+import frc.robot.utils.Constants.VisionConstants;
+
+public class SwervePoseEstimator {
+
+    private final SlipRejectingOdometry odometry;
+    private final PoseHistory odometryHistory = new PoseHistory(VisionConstants.kPoseHistoryCapacity);
+
+    // Odometry trust per axis (variance), x, y, theta
+    private final double[] stateVariances = new double[3];
+
+    // Field-frame correction applied to the odometry pose
+    private double correctionX = 0.0;
+    private double correctionY = 0.0;
+    private double correctionTheta = 0.0;
+
+    // Latest odometry pose, kept as primitives
+    private double odometryX, odometryY, odometryTheta;
+
+    private final double[] sampleBuffer = new double[3];
+
+    private int acceptedMeasurements = 0;
+    private int rejectedMeasurements = 0;
+
+    public SwervePoseEstimator(Translation2d[] moduleTranslations, Rotation2d gyroAngle, SwerveModulePosition[] modulePositions, Pose2d initialPose){
+        odometry = new SlipRejectingOdometry(moduleTranslations, gyroAngle, modulePositions, initialPose);
+        for (int i = 0; i < 3; i++){
+            stateVariances[i] = VisionConstants.kStateStdDevs[i] * VisionConstants.kStateStdDevs[i];
+        }
+        storeOdometryPose(odometry.getPoseMeters());
+    }
+
+    /* --------------------> Odometry <-------------------- */
+
+    // Acceleration is robot relative in m/s^2, used to catch wheel slip
+    public void update(double timestampSeconds, Rotation2d gyroAngle, SwerveModulePosition[] modulePositions, double accelX, double accelY){
+        storeOdometryPose(odometry.update(timestampSeconds, gyroAngle, modulePositions, accelX, accelY));
+        odometryHistory.add(timestampSeconds, odometryX, odometryY, odometryTheta);
+    }
+
+    private void storeOdometryPose(Pose2d pose){
+        odometryX = pose.getX();
+        odometryY = pose.getY();
+        odometryTheta = pose.getRotation().getRadians();
+    }
+
+    public void resetPosition(Rotation2d gyroAngle, SwerveModulePosition[] modulePositions, Pose2d pose){
+        odometry.resetPosition(gyroAngle, modulePositions, pose);
+        storeOdometryPose(pose);
+        odometryHistory.clear();
+        correctionX = 0.0;
+        correctionY = 0.0;
+        correctionTheta = 0.0;
+    }
+
+    /* --------------------> Vision <-------------------- */
+
+    public boolean addVisionMeasurement(VisionMeasurement measurement){
+        return addVisionMeasurement(measurement.timestampSeconds, measurement.x, measurement.y, measurement.theta,
+            measurement.averageTagDistance, measurement.tagCount);
+    }
+
+    // Returns false if the measurement was rejected (too old, too far for its tag count, or no tags)
+    public boolean addVisionMeasurement(double captureTimestamp, double x, double y, double theta, double averageTagDistance, int tagCount){
+
+        if (tagCount <= 0 || (tagCount == 1 && averageTagDistance > VisionConstants.kMaxSingleTagDistanceMeters)
+            || !odometryHistory.sample(captureTimestamp, sampleBuffer)){
+            rejectedMeasurements++;
+            return false;
+        }
+
+        // Where the current correction puts the robot at capture time
+        double cos = Math.cos(correctionTheta);
+        double sin = Math.sin(correctionTheta);
+        double estimatedX = cos * sampleBuffer[0] - sin * sampleBuffer[1] + correctionX;
+        double estimatedY = sin * sampleBuffer[0] + cos * sampleBuffer[1] + correctionY;
+        double estimatedTheta = sampleBuffer[2] + correctionTheta;
+
+        // Measurement noise grows with distance squared and shrinks with more tags in view
+        double distanceScale = averageTagDistance * averageTagDistance / tagCount;
+        double xyStdDev = Math.max(VisionConstants.kVisionXYStdDevPerMeterSquared * distanceScale, VisionConstants.kVisionMinXYStdDev);
+        double thetaStdDev = Math.max(VisionConstants.kVisionThetaStdDevPerMeterSquared * distanceScale, VisionConstants.kVisionMinThetaStdDev);
+
+        double kX = gain(stateVariances[0], xyStdDev * xyStdDev);
+        double kY = gain(stateVariances[1], xyStdDev * xyStdDev);
+        double kTheta = gain(stateVariances[2], thetaStdDev * thetaStdDev);
+
+        // Move the capture-time estimate part of the way to the measurement, then solve for the
+        // correction that puts it there
+        double targetX = estimatedX + kX * (x - estimatedX);
+        double targetY = estimatedY + kY * (y - estimatedY);
+        correctionTheta = MathUtil.angleModulus(correctionTheta + kTheta * MathUtil.angleModulus(theta - estimatedTheta));
+
+        cos = Math.cos(correctionTheta);
+        sin = Math.sin(correctionTheta);
+        correctionX = targetX - (cos * sampleBuffer[0] - sin * sampleBuffer[1]);
+        correctionY = targetY - (sin * sampleBuffer[0] + cos * sampleBuffer[1]);
+
+        acceptedMeasurements++;
+        return true;
+    }
+
+    // Same closed form steady-state gain WPILib's estimators use for vision, per axis
+    private static double gain(double stateVariance, double measurementVariance){
+        if (stateVariance == 0.0){
+            return 0.0;
+        }
+        return stateVariance / (stateVariance + Math.sqrt(stateVariance * measurementVariance));
+    }
+
+    /* --------------------> Getters <-------------------- */
+
+    public Pose2d getEstimatedPosition(){
+        double cos = Math.cos(correctionTheta);
+        double sin = Math.sin(correctionTheta);
+        return new Pose2d(
+            cos * odometryX - sin * odometryY + correctionX,
+            sin * odometryX + cos * odometryY + correctionY,
+            new Rotation2d(odometryTheta + correctionTheta));
+    }
+
+    // Pure wheel odometry, for comparing against the fused estimate
+    public Pose2d getOdometryPose(){
+        return odometry.getPoseMeters();
+    }
+
+    // Slip and collision flags
+    public SlipRejectingOdometry getOdometry(){
+        return odometry;
+    }
+
+    public int getAcceptedMeasurements(){
+        return acceptedMeasurements;
+    }
+
+    public int getRejectedMeasurements(){
+        return rejectedMeasurements;
+    }
+}
@@ -0,0 +1,149 @@
+// Turns a requested ChassisSpeeds into module states the modules can actually follow
+//
+// The request is first discretized: the robot only gets a new command every loop, so driving and
+// rotating at the same time with the raw speeds curves the path (skew). Solving for the twist that
+// lands on the pose the request implies after one loop fixes that.
+//
+// Then the step from the previous setpoint toward the request is shortened until no module has to
+// change speed faster than kMaxModuleAccelerationMps2 or, while it's moving, steer faster than
+// kMaxModuleSteerRateRadPerSec. Shortening the whole chassis step (rather than each module on its
+// own) keeps the modules consistent with each other, so they don't fight. Whatever steering is
+// still left is rate limited per module, with drive speed scaled by the cosine of the remaining
+// angle error so a module that isn't pointed the right way yet doesn't scrub.
+
+package frc.robot.utils;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Twist2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+
+import frc.robot.utils.Constants.DriveConstants;
+
+public class SwerveSetpointGenerator {
+
+    private static final int kSearchIterations = 8;
+
+    private final SwerveDriveKinematics kinematics;
+    private final double dtSeconds;
+
+    // Thermal derating, see ThermalMonitor. Set from the background tasks, read by generate().
+    private volatile double accelerationScale = 1.0;
+
+    private ChassisSpeeds previousSpeeds = new ChassisSpeeds();
+    private final double[] previousModuleSpeeds;
+    private final double[] previousModuleAngles;
+
+    public SwerveSetpointGenerator(SwerveDriveKinematics kinematics, int moduleCount, double dtSeconds){
+        this.kinematics = kinematics;
+        this.dtSeconds = dtSeconds;
+        previousModuleSpeeds = new double[moduleCount];
+        previousModuleAngles = new double[moduleCount];
+    }
+
+    /* --------------------> Setpoint <-------------------- */
+
+    public SwerveModuleState[] generate(ChassisSpeeds desiredSpeeds){
+
+        ChassisSpeeds target = discretize(desiredSpeeds, dtSeconds);
+
+        // Largest fraction of the step toward the target that every module can follow
+        double fraction = 1.0;
+        if (!isFeasible(interpolate(target, 1.0))){
+            double low = 0.0;
+            double high = 1.0;
+            for (int i = 0; i < kSearchIterations; i++){
+                double mid = 0.5 * (low + high);
+                if (isFeasible(interpolate(target, mid))){
+                    low = mid;
+                } else {
+                    high = mid;
+                }
+            }
+            fraction = low;
+        }
+
+        ChassisSpeeds speeds = interpolate(target, fraction);
+        SwerveModuleState[] states = kinematics.toSwerveModuleStates(speeds);
+        SwerveDriveKinematics.desaturateWheelSpeeds(states, DriveConstants.kPhysicalMaxSpeedMetersPerSecond);
+
+        double maxSteer = DriveConstants.kMaxModuleSteerRateRadPerSec * dtSeconds;
+        for (int i = 0; i < states.length; i++){
+            double previousAngle = previousModuleAngles[i];
+
+            // A stopped module keeps its angle instead of snapping back to zero
+            if (Math.abs(states[i].speedMetersPerSecond) < DriveConstants.kSteerLimitMinSpeedMps
+                && Math.abs(previousModuleSpeeds[i]) < DriveConstants.kSteerLimitMinSpeedMps){
+                states[i] = new SwerveModuleState(states[i].speedMetersPerSecond, new Rotation2d(previousAngle));
+            }
+
+            states[i] = SwerveModuleState.optimize(states[i], new Rotation2d(previousAngle));
+            double steerError = MathUtil.angleModulus(states[i].angle.getRadians() - previousAngle);
+            double angle = previousAngle + MathUtil.clamp(steerError, -maxSteer, maxSteer);
+            double speed = states[i].speedMetersPerSecond * Math.cos(states[i].angle.getRadians() - angle);
+
+            states[i] = new SwerveModuleState(speed, new Rotation2d(angle));
+            previousModuleSpeeds[i] = speed;
+            previousModuleAngles[i] = MathUtil.angleModulus(angle);
+        }
+
+        previousSpeeds = speeds;
+        return states;
+    }
+
+    // Checks module speed and steer changes from the previous setpoint
+    private boolean isFeasible(ChassisSpeeds speeds){
+        SwerveModuleState[] states = kinematics.toSwerveModuleStates(speeds);
+        double maxSpeedChange = DriveConstants.kMaxModuleAccelerationMps2 * accelerationScale * dtSeconds;
+        double maxSteer = DriveConstants.kMaxModuleSteerRateRadPerSec * dtSeconds;
+
+        for (int i = 0; i < states.length; i++){
+            SwerveModuleState state = SwerveModuleState.optimize(states[i], new Rotation2d(previousModuleAngles[i]));
+            if (Math.abs(state.speedMetersPerSecond - previousModuleSpeeds[i]) > maxSpeedChange){
+                return false;
+            }
+            boolean moving = Math.abs(previousModuleSpeeds[i]) >= DriveConstants.kSteerLimitMinSpeedMps
+                && Math.abs(state.speedMetersPerSecond) >= DriveConstants.kSteerLimitMinSpeedMps;
+            if (moving && Math.abs(MathUtil.angleModulus(state.angle.getRadians() - previousModuleAngles[i])) > maxSteer){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private ChassisSpeeds interpolate(ChassisSpeeds target, double fraction){
+        return new ChassisSpeeds(
+            previousSpeeds.vxMetersPerSecond + (target.vxMetersPerSecond - previousSpeeds.vxMetersPerSecond) * fraction,
+            previousSpeeds.vyMetersPerSecond + (target.vyMetersPerSecond - previousSpeeds.vyMetersPerSecond) * fraction,
+            previousSpeeds.omegaRadiansPerSecond + (target.omegaRadiansPerSecond - previousSpeeds.omegaRadiansPerSecond) * fraction);
+    }
+
+    // Speeds whose twist over one loop ends on the pose the raw speeds point at
+    public static ChassisSpeeds discretize(ChassisSpeeds speeds, double dtSeconds){
+        Pose2d end = new Pose2d(speeds.vxMetersPerSecond * dtSeconds, speeds.vyMetersPerSecond * dtSeconds,
+            new Rotation2d(speeds.omegaRadiansPerSecond * dtSeconds));
+        Twist2d twist = new Pose2d().log(end);
+        return new ChassisSpeeds(twist.dx / dtSeconds, twist.dy / dtSeconds, twist.dtheta / dtSeconds);
+    }
+
+    // Continue from the states the modules were sent, when something after the generator changed them
+    public void reset(SwerveModuleState[] currentStates){
+        reset(kinematics.toChassisSpeeds(currentStates), currentStates);
+    }
+
+    public void setAccelerationScale(double scale){
+        accelerationScale = scale;
+    }
+
+    // Start from where the modules really are, e.g. after being disabled
+    public void reset(ChassisSpeeds currentSpeeds, SwerveModuleState[] currentStates){
+        previousSpeeds = currentSpeeds;
+        for (int i = 0; i < currentStates.length; i++){
+            previousModuleSpeeds[i] = currentStates[i].speedMetersPerSecond;
+            previousModuleAngles[i] = MathUtil.angleModulus(currentStates[i].angle.getRadians());
+        }
+    }
+}
@@ -0,0 +1,115 @@
+// Runs the motor thermal models and derates the mechanisms they belong to
+// Each group is a set of motors that share one derate (the four drive Falcons, the arm rotation NEO).
+// The group's target scale comes from its hottest motor: it starts falling at kDerateStartCelsius and
+// reaches kMinScale at the limit, and it also falls once the predicted time to the limit is under
+// kDerateHorizonSeconds, so a motor on its way to the limit slows down before it gets hot. The applied
+// scale only moves kDerateRatePerSecond toward the target, the driver sees the robot get gradually
+// slower instead of a step. Scales are only handed to the mechanism when they move by kMinScaleChange.
+//
+// Runs as a background task at kSamplePeriodSeconds, so the CAN reads and the math stay off the loop.
+// Everything is written to the DataLog as well as the dashboard for looking at after a match.
+
+package frc.robot.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoubleConsumer;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.util.datalog.DataLog;
+import edu.wpi.first.util.datalog.DoubleLogEntry;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import frc.robot.utils.Constants.ThermalConstants;
+
+public class ThermalMonitor {
+
+    private static class Group {
+        final String name;
+        final DoubleConsumer applyScale;
+        final MotorThermalModel[] motors;
+        final DoubleLogEntry[] temperatureLogs;
+        final DoubleLogEntry[] timeToLimitLogs;
+        final DoubleLogEntry scaleLog;
+
+        double scale = 1.0;
+        double appliedScale = 1.0;
+
+        Group(String name, DoubleConsumer applyScale, MotorThermalModel[] motors, DataLog log){
+            this.name = name;
+            this.applyScale = applyScale;
+            this.motors = motors;
+            temperatureLogs = new DoubleLogEntry[motors.length];
+            timeToLimitLogs = new DoubleLogEntry[motors.length];
+            for (int i = 0; i < motors.length; i++){
+                temperatureLogs[i] = new DoubleLogEntry(log, "/Thermal/" + motors[i].getName() + "/Temperature");
+                timeToLimitLogs[i] = new DoubleLogEntry(log, "/Thermal/" + motors[i].getName() + "/TimeToLimit");
+            }
+            scaleLog = new DoubleLogEntry(log, "/Thermal/" + name + "/Scale");
+        }
+    }
+
+    private final List<Group> groups = new ArrayList<>();
+    private double lastTimestamp = -1.0;
+
+    public ThermalMonitor addGroup(String name, DoubleConsumer applyScale, MotorThermalModel... motors){
+        groups.add(new Group(name, applyScale, motors, DataLogManager.getLog()));
+        return this;
+    }
+
+    public void update(){
+        double now = Timer.getFPGATimestamp();
+        // The background scheduler can skip a run, so use the real time since the last one
+        double dt = lastTimestamp < 0.0 ? ThermalConstants.kSamplePeriodSeconds : now - lastTimestamp;
+        lastTimestamp = now;
+
+        for (Group group : groups){
+            double target = 1.0;
+            for (int i = 0; i < group.motors.length; i++){
+                MotorThermalModel motor = group.motors[i];
+                motor.update(dt);
+                target = Math.min(target, targetScale(motor));
+
+                group.temperatureLogs[i].append(motor.getTemperature());
+                group.timeToLimitLogs[i].append(Math.min(motor.getTimeToLimit(), ThermalConstants.kMaxReportedSeconds));
+            }
+
+            double step = ThermalConstants.kDerateRatePerSecond * dt;
+            group.scale += MathUtil.clamp(target - group.scale, -step, step);
+            group.scaleLog.append(group.scale);
+
+            // Back at full scale always gets written, otherwise small moves are left for later
+            if (Math.abs(group.scale - group.appliedScale) >= ThermalConstants.kMinScaleChange
+                    || (group.scale == 1.0 && group.appliedScale != 1.0)){
+                group.applyScale.accept(group.scale);
+                group.appliedScale = group.scale;
+            }
+        }
+    }
+
+    private static double targetScale(MotorThermalModel motor){
+        double range = 1.0 - ThermalConstants.kMinScale;
+
+        // Smoothstep from the derate start to the limit, no corner at either end
+        double t = MathUtil.clamp((motor.getTemperature() - ThermalConstants.kDerateStartCelsius)
+            / (motor.getLimit() - ThermalConstants.kDerateStartCelsius), 0.0, 1.0);
+        double temperatureScale = 1.0 - range * t * t * (3.0 - 2.0 * t);
+
+        double timeScale = ThermalConstants.kMinScale
+            + range * MathUtil.clamp(motor.getTimeToLimit() / ThermalConstants.kDerateHorizonSeconds, 0.0, 1.0);
+
+        return Math.min(temperatureScale, timeScale);
+    }
+
+    public void updateSmartDashboard(){
+        for (Group group : groups){
+            SmartDashboard.putNumber("Thermal " + group.name + " Scale", group.appliedScale);
+            for (MotorThermalModel motor : group.motors){
+                SmartDashboard.putNumber("Thermal " + motor.getName() + " Temp", motor.getTemperature());
+                SmartDashboard.putNumber("Thermal " + motor.getName() + " Time To Limit",
+                    Math.min(motor.getTimeToLimit(), ThermalConstants.kMaxReportedSeconds));
+            }
+        }
+    }
+}
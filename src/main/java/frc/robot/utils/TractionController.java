@@ -0,0 +1,70 @@
+// Keeps each drive wheel near peak friction instead of letting it break loose
+//
+// The ground speed under each module comes from the chassis velocity the slip rejecting odometry
+// solved (gyro plus the modules that weren't slipping), projected onto the direction the module is
+// actually pointed, which is the direction its drive encoder measures in. Commands are optimized
+// against that angle first, the same way the module will, so both speeds share a sign. The slip
+// ratio is how much faster the wheel spins than that. When a command asks for more than
+// kTractionTargetSlipRatio above the ground speed (plus a small margin so the robot can start from
+// rest) it's cut back to that, which caps the drive torque the open loop output asks for.
+
+package frc.robot.utils;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+
+import frc.robot.utils.Constants.DriveConstants;
+
+public class TractionController {
+
+    private final double[] moduleX;
+    private final double[] moduleY;
+    private final double[] slipRatios;
+    private final boolean[] limited;
+
+    public TractionController(Translation2d[] moduleTranslations){
+        int n = moduleTranslations.length;
+        moduleX = new double[n];
+        moduleY = new double[n];
+        slipRatios = new double[n];
+        limited = new boolean[n];
+        for (int i = 0; i < n; i++){
+            moduleX[i] = moduleTranslations[i].getX();
+            moduleY[i] = moduleTranslations[i].getY();
+        }
+    }
+
+    // Chassis velocity is robot relative, wheel speeds and angles are what the module encoders measure
+    public void apply(SwerveModuleState[] states, double[] wheelSpeeds, Rotation2d[] wheelAngles, double vx, double vy, double omega){
+
+        for (int i = 0; i < states.length; i++){
+            states[i] = SwerveModuleState.optimize(states[i], wheelAngles[i]);
+            double cos = wheelAngles[i].getCos();
+            double sin = wheelAngles[i].getSin();
+
+            // Ground speed under this module along the direction it's pointed
+            double groundSpeed = (vx - omega * moduleY[i]) * cos + (vy + omega * moduleX[i]) * sin;
+
+            slipRatios[i] = (wheelSpeeds[i] - groundSpeed) / Math.max(Math.abs(groundSpeed), DriveConstants.kTractionMinGroundSpeedMps);
+
+            // Only accelerating is limited, slowing down is left to the brakes and the setpoint generator
+            double allowed = Math.abs(groundSpeed) * (1.0 + DriveConstants.kTractionTargetSlipRatio) + DriveConstants.kTractionSlipMarginMps;
+            double command = states[i].speedMetersPerSecond;
+            limited[i] = Math.abs(command) > allowed && Math.signum(command) * groundSpeed >= 0.0;
+            if (limited[i]){
+                states[i] = new SwerveModuleState(Math.copySign(allowed, command), states[i].angle);
+            }
+        }
+    }
+
+    /* --------------------> Getters <-------------------- */
+
+    public double getSlipRatio(int module){
+        return slipRatios[module];
+    }
+
+    public boolean isLimited(int module){
+        return limited[module];
+    }
+}
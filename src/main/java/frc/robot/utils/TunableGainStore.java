@@ -0,0 +1,202 @@
+// Gains that can be changed from the dashboard without a redeploy
+// Each gain is a topic under /Tuning, registered with its value from Constants and a consumer that
+// pushes it to wherever it's used (SparkMax slot, PIDController). NT listeners, not polling, catch
+// dashboard edits: the listener thread queues the change and update() runs the queue on the main
+// thread, so consumers run where the rest of the robot code does. With nothing queued, update() is
+// one poll of an empty queue.
+//
+// Accepted values are written to tunables.properties in the deploy directory and loaded over the
+// Constants defaults at the next boot. Copy the file into src/main/deploy to keep it across deploys,
+// and into Constants once the tuning is done.
+
+package frc.robot.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.DoubleConsumer;
+
+import edu.wpi.first.networktables.DoubleEntry;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEvent;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.Filesystem;
+import frc.robot.utils.Constants.TuningConstants;
+
+public final class TunableGainStore {
+
+    private static TunableGainStore instance;
+
+    private static class Tunable {
+        final DoubleEntry entry;
+        final double min, max;
+        final List<DoubleConsumer> consumers = new ArrayList<>();
+        double value;
+
+        Tunable(DoubleEntry entry, double value, double min, double max){
+            this.entry = entry;
+            this.value = value;
+            this.min = min;
+            this.max = max;
+        }
+    }
+
+    private final NetworkTable table = NetworkTableInstance.getDefault().getTable(TuningConstants.kTableName);
+    private final Map<String, Tunable> tunables = new TreeMap<>();
+    private final Properties saved = new Properties();
+    private final File file = new File(Filesystem.getDeployDirectory(), TuningConstants.kFileName);
+
+    // Filled by the NT listener thread, drained on the main thread
+    private final ConcurrentLinkedQueue<Runnable> pending = new ConcurrentLinkedQueue<>();
+
+    // File writes stay off the main thread
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Tunable Gain Writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private TunableGainStore(){
+        if (file.exists()){
+            try (InputStream input = new FileInputStream(file)){
+                saved.load(input);
+            } catch (IOException e){
+                DataLogManager.log("Couldn't read " + file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    public static synchronized TunableGainStore getInstance(){
+        if (instance == null){
+            instance = new TunableGainStore();
+        }
+        return instance;
+    }
+
+    /* --------------------> Registering <-------------------- */
+
+    // Gains aren't negative
+    public void register(String key, double defaultValue, DoubleConsumer consumer){
+        register(key, defaultValue, 0.0, Double.MAX_VALUE, consumer);
+    }
+
+    // Pushes a saved value to the consumer right away if there is one, registering the same key again
+    // adds another consumer of the same value (one gain for all four swerve modules)
+    public synchronized void register(String key, double defaultValue, double min, double max, DoubleConsumer consumer){
+        if (!TuningConstants.kTuningEnabled){
+            return;
+        }
+
+        Tunable tunable = tunables.get(key);
+        if (tunable == null){
+            double value = loadSaved(key, defaultValue, min, max);
+            tunable = new Tunable(table.getDoubleTopic(key).getEntry(value), value, min, max);
+            tunable.entry.set(value);
+            tunables.put(key, tunable);
+            listen(key, tunable);
+        }
+
+        tunable.consumers.add(consumer);
+        if (tunable.value != defaultValue){
+            consumer.accept(tunable.value);
+        }
+    }
+
+    private double loadSaved(String key, double defaultValue, double min, double max){
+        String text = saved.getProperty(key);
+        if (text == null){
+            return defaultValue;
+        }
+        try {
+            double value = Double.parseDouble(text);
+            return isValid(value, min, max) ? value : defaultValue;
+        } catch (NumberFormatException e){
+            return defaultValue;
+        }
+    }
+
+    // Only edits from the dashboard, not the store's own set() calls
+    private void listen(String key, Tunable tunable){
+        NetworkTableInstance.getDefault().addListener(tunable.entry, EnumSet.of(NetworkTableEvent.Kind.kValueRemote), event -> {
+            if (event.valueData == null || !event.valueData.value.isDouble()){
+                return;
+            }
+            double value = event.valueData.value.getDouble();
+            pending.add(() -> accept(key, tunable, value));
+        });
+    }
+
+    private static boolean isValid(double value, double min, double max){
+        return Double.isFinite(value) && value >= min && value <= max;
+    }
+
+    /* --------------------> Applying <-------------------- */
+
+    // Main thread, once per loop
+    public void update(){
+        Runnable change = pending.poll();
+        if (change == null){
+            return;
+        }
+        while (change != null){
+            change.run();
+            change = pending.poll();
+        }
+        save();
+    }
+
+    private synchronized void accept(String key, Tunable tunable, double value){
+        // Out of range goes back to what it was so the dashboard shows what's actually running
+        if (!isValid(value, tunable.min, tunable.max)){
+            tunable.entry.set(tunable.value);
+            return;
+        }
+        if (value == tunable.value){
+            return;
+        }
+        tunable.value = value;
+        for (DoubleConsumer consumer : tunable.consumers){
+            consumer.accept(value);
+        }
+        DataLogManager.log("Tuned " + key + " = " + value);
+    }
+
+    private synchronized void save(){
+        Properties snapshot = new Properties();
+        for (Map.Entry<String, Tunable> tunable : tunables.entrySet()){
+            snapshot.setProperty(tunable.getKey(), Double.toString(tunable.getValue().value));
+        }
+        writer.execute(() -> write(snapshot));
+    }
+
+    // Written next to the real file and moved over it, so a brownout mid-write can't leave half a file
+    private void write(Properties snapshot){
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (OutputStream output = new FileOutputStream(temp)){
+            snapshot.store(output, "Tuned gains, loaded over Constants at boot");
+        } catch (IOException e){
+            DataLogManager.log("Couldn't write " + temp + ": " + e.getMessage());
+            return;
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e){
+            DataLogManager.log("Couldn't replace " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,22 @@
+// One AprilTag robot pose measurement, reused by the sources so polling doesn't allocate
+
+package frc.robot.utils;
+
+public class VisionMeasurement {
+
+    public double timestampSeconds; // FPGA time the frame was captured, not when it arrived
+    public double x;
+    public double y;
+    public double theta;
+    public double averageTagDistance;
+    public int tagCount;
+
+    public void set(double timestampSeconds, double x, double y, double theta, double averageTagDistance, int tagCount){
+        this.timestampSeconds = timestampSeconds;
+        this.x = x;
+        this.y = y;
+        this.theta = theta;
+        this.averageTagDistance = averageTagDistance;
+        this.tagCount = tagCount;
+    }
+}
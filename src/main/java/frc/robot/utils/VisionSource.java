@@ -0,0 +1,9 @@
+// Anything that produces AprilTag pose measurements (a camera, or SimVisionSource in simulation)
+
+package frc.robot.utils;
+
+public interface VisionSource {
+
+    // Fills in the next unread measurement, returns false if there isn't one
+    boolean poll(VisionMeasurement measurement);
+}
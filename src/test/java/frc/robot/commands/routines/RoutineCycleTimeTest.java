@@ -0,0 +1,297 @@
+// Cycle times of the scoring and loading routines in simulation
+// Each routine runs from a realistic start pose with the robot loop stepped the way Robot does it
+// (independent periodics, the command scheduler, the fast loop) and simulated time paused between
+// steps, so the results don't depend on how fast the machine running the tests is. A routine is done
+// when its own end condition is met and every joint is at its goal: the piece is out for scoring,
+// a piece has been taken in for loading (one is put at the intake once it's in position), and the
+// superstructure is at goal for stowing, which never finishes on its own.
+//
+// Completion time and the peak joint error (how far each joint went past its goal) are compared with
+// cycle_times.properties. A routine that's slower by more than kTimeTolerance or overshoots by more
+// than the joint's tolerance fails. Run ./gradlew test -PrecordCycleTimes to write new baselines after
+// a change that's meant to move them, and commit the file with the change.
+//
+// The suite is opt-in until cycle_times.properties has been recorded on a machine that runs the WPILib
+// simulation: ./gradlew test -PcycleTimes checks against it, a plain ./gradlew test leaves it out.
+
+package frc.robot.commands.routines;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.util.Units;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.robot.commands.routines.loading.DoubleSubstationCube;
+import frc.robot.commands.routines.loading.SingleSubstationCmd;
+import frc.robot.commands.routines.scoring.ScoreHighCmd;
+import frc.robot.commands.routines.scoring.ScoreLowCmd;
+import frc.robot.commands.routines.scoring.ScoreMidCmd;
+import frc.robot.subsystems.ArmExtensionSubsystem;
+import frc.robot.subsystems.ArmRotationSubsystem;
+import frc.robot.subsystems.IntakeSubsystem;
+import frc.robot.subsystems.WristSubsystem;
+import frc.robot.utils.Constants.LoopConstants;
+
+@EnabledIfSystemProperty(named = "cycleTimes.enabled", matches = "true")
+class RoutineCycleTimeTest {
+
+    private static final String kBaselineFile = "src/test/resources/cycle_times.properties";
+    private static final boolean kRecord = Boolean.getBoolean("cycleTimes.record");
+
+    private static final double kLoopSeconds = 0.02;
+    private static final double kSettleSeconds = 1.0; // At the start pose before the routine, the brake has engaged by then
+    private static final double kTimeoutSeconds = 6.0;
+
+    // Allowed regression over the baseline
+    private static final double kTimeTolerance = 0.10; // Fraction of the baseline
+    private static final double kTimeSlackSeconds = 2 * kLoopSeconds;
+    private static final double kArmErrorToleranceRadians = Units.degreesToRadians(1.0);
+    private static final double kExtensionErrorToleranceMeters = Units.inchesToMeters(0.5);
+    private static final double kWristErrorToleranceRadians = Units.degreesToRadians(1.0);
+
+    private static ArmExtensionSubsystem armExtensionSubsystem;
+    private static WristSubsystem wristSubsystem;
+    private static ArmRotationSubsystem armRotationSubsystem;
+    private static IntakeSubsystem intakeSubsystem;
+
+    private static final Properties baseline = new Properties();
+    private static final Properties measured = new Properties();
+
+    private static class Pose {
+        final double arm, extension, wrist;
+
+        Pose(double armDegrees, double extensionInches, double wristDegrees){
+            arm = Units.degreesToRadians(armDegrees);
+            extension = Units.inchesToMeters(extensionInches);
+            wrist = Units.degreesToRadians(wristDegrees);
+        }
+    }
+
+    private static final Pose kStowed = new Pose(90.0, 0.0, 0.0);
+    private static final Pose kHigh = new Pose(55.0, 35.0, 55.0);
+    private static final Pose kMid = new Pose(40.0, 13.0, 40.0);
+    private static final Pose kLow = new Pose(0.0, 0.0, 90.0);
+    private static final Pose kDoubleSubstation = new Pose(45.0, 13.0, 0.0);
+    private static final Pose kSingleSubstation = new Pose(0.0, 0.0, 45.0);
+
+    private enum Finish {ROUTINE, GAME_PIECE, AT_GOAL}
+
+    static class Routine {
+        final String name;
+        final Supplier<Command> command;
+        final Pose start, goal;
+        final boolean hasGamePiece;
+        final Finish finish;
+
+        Routine(String name, Supplier<Command> command, Pose start, Pose goal, boolean hasGamePiece, Finish finish){
+            this.name = name;
+            this.command = command;
+            this.start = start;
+            this.goal = goal;
+            this.hasGamePiece = hasGamePiece;
+            this.finish = finish;
+        }
+
+        @Override
+        public String toString(){
+            return name;
+        }
+    }
+
+    static Stream<Routine> routines(){
+        return Stream.of(
+            new Routine("ScoreHigh", () -> new ScoreHighCmd(armRotationSubsystem, armExtensionSubsystem, wristSubsystem, intakeSubsystem),
+                kStowed, kHigh, true, Finish.ROUTINE),
+            new Routine("ScoreMid", () -> new ScoreMidCmd(armRotationSubsystem, armExtensionSubsystem, wristSubsystem, intakeSubsystem),
+                kStowed, kMid, true, Finish.ROUTINE),
+            new Routine("ScoreLow", () -> new ScoreLowCmd(armRotationSubsystem, armExtensionSubsystem, wristSubsystem, intakeSubsystem),
+                kStowed, kLow, true, Finish.ROUTINE),
+            new Routine("DoubleSubstationCube", () -> new DoubleSubstationCube(armRotationSubsystem, armExtensionSubsystem, wristSubsystem, intakeSubsystem),
+                kStowed, kDoubleSubstation, false, Finish.GAME_PIECE),
+            new Routine("SingleSubstation", () -> new SingleSubstationCmd(armRotationSubsystem, armExtensionSubsystem, wristSubsystem, intakeSubsystem),
+                kStowed, kSingleSubstation, false, Finish.GAME_PIECE),
+            new Routine("StowAfterHigh", () -> new StowCmd(armRotationSubsystem, armExtensionSubsystem, wristSubsystem, intakeSubsystem, false),
+                kHigh, kStowed, false, Finish.AT_GOAL),
+            new Routine("StowFromSingleSubstation", () -> new StowCmd(armRotationSubsystem, armExtensionSubsystem, wristSubsystem, intakeSubsystem, true),
+                kSingleSubstation, kStowed, true, Finish.AT_GOAL));
+    }
+
+    /* --------------------> Setup <-------------------- */
+
+    // Same construction as RobotContainer, once, the devices can't be allocated twice
+    @BeforeAll
+    static void setUp() throws IOException {
+        assertTrue(HAL.initialize(500, 0));
+        SimHooks.pauseTiming();
+
+        armExtensionSubsystem = new ArmExtensionSubsystem();
+        wristSubsystem = new WristSubsystem();
+        armRotationSubsystem = new ArmRotationSubsystem(armExtensionSubsystem::getArmExtension, wristSubsystem::getWristPosition);
+        intakeSubsystem = new IntakeSubsystem();
+        armExtensionSubsystem.setArmRotationSupplier(armRotationSubsystem::getArmRotationRadians);
+        wristSubsystem.setArmRotationSupplier(armRotationSubsystem::getArmRotationRadians);
+
+        DriverStationSim.setEnabled(true);
+        DriverStationSim.notifyNewData();
+        DriverStation.refreshData();
+
+        File file = new File(kBaselineFile);
+        if (file.exists()){
+            try (InputStream input = new FileInputStream(file)){
+                baseline.load(input);
+            }
+        }
+    }
+
+    @AfterAll
+    static void tearDown() throws IOException {
+        CommandScheduler.getInstance().cancelAll();
+        SimHooks.resumeTiming();
+
+        if (kRecord){
+            try (OutputStream output = new FileOutputStream(kBaselineFile)){
+                measured.store(output, "Routine cycle time baselines, written by ./gradlew test -PrecordCycleTimes");
+            }
+        }
+    }
+
+    /* --------------------> Test <-------------------- */
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("routines")
+    void routineCompletesWithinBaseline(Routine routine){
+        CommandScheduler.getInstance().cancelAll();
+        armRotationSubsystem.resetSimulation(routine.start.arm);
+        armExtensionSubsystem.resetSimulation(routine.start.extension);
+        wristSubsystem.resetSimulation(routine.start.wrist);
+        intakeSubsystem.resetSimulation(routine.hasGamePiece);
+        for (double t = 0.0; t < kSettleSeconds; t += kLoopSeconds){
+            step();
+        }
+
+        Command command = routine.command.get();
+        CommandScheduler.getInstance().schedule(command);
+
+        double armError = 0.0, extensionError = 0.0, wristError = 0.0;
+        double elapsed = 0.0;
+        boolean piecePresented = false;
+        while (!isDone(routine, command)){
+            assertTrue(elapsed < kTimeoutSeconds, routine.name + " didn't finish in " + kTimeoutSeconds + " s");
+
+            step();
+            elapsed += kLoopSeconds;
+
+            armError = Math.max(armError, overshoot(routine.start.arm, routine.goal.arm, armRotationSubsystem.getArmRotationRadians()));
+            extensionError = Math.max(extensionError, overshoot(routine.start.extension, routine.goal.extension, armExtensionSubsystem.getArmExtension()));
+            wristError = Math.max(wristError, overshoot(routine.start.wrist, routine.goal.wrist, wristSubsystem.getWristPosition()));
+
+            // The piece is at the station once the intake gets there
+            if (routine.finish == Finish.GAME_PIECE && !piecePresented && atGoal()){
+                intakeSubsystem.presentGamePieceSimulation();
+                piecePresented = true;
+            }
+        }
+        CommandScheduler.getInstance().cancel(command);
+
+        // Where the routine ended up, not just how fast
+        assertEquals(routine.goal.arm, armRotationSubsystem.getArmRotationRadians(), kArmErrorToleranceRadians * 5.0, "arm");
+        assertEquals(routine.goal.extension, armExtensionSubsystem.getArmExtension(), kExtensionErrorToleranceMeters * 5.0, "extension");
+        assertEquals(routine.goal.wrist, wristSubsystem.getWristPosition(), kWristErrorToleranceRadians * 5.0, "wrist");
+
+        record(routine.name + ".seconds", elapsed);
+        record(routine.name + ".armError", armError);
+        record(routine.name + ".extensionError", extensionError);
+        record(routine.name + ".wristError", wristError);
+        if (kRecord){
+            return;
+        }
+
+        checkBaseline(routine.name + ".seconds", elapsed, value -> value * (1.0 + kTimeTolerance) + kTimeSlackSeconds);
+        checkBaseline(routine.name + ".armError", armError, value -> value + kArmErrorToleranceRadians);
+        checkBaseline(routine.name + ".extensionError", extensionError, value -> value + kExtensionErrorToleranceMeters);
+        checkBaseline(routine.name + ".wristError", wristError, value -> value + kWristErrorToleranceRadians);
+    }
+
+    /* --------------------> Helpers <-------------------- */
+
+    // One robot loop, in the order Robot and the fast Notifier run things
+    private static void step(){
+        armRotationSubsystem.independentPeriodic();
+        armExtensionSubsystem.independentPeriodic();
+        wristSubsystem.independentPeriodic();
+        intakeSubsystem.independentPeriodic();
+
+        // Also runs the subsystems' simulationPeriodic
+        CommandScheduler.getInstance().run();
+
+        if (!LoopConstants.kUseFastControlLoop){
+            SimHooks.stepTiming(kLoopSeconds);
+            return;
+        }
+        for (double t = 0.0; t < kLoopSeconds - 1e-9; t += LoopConstants.kFastLoopPeriodSeconds){
+            armRotationSubsystem.fastPeriodic();
+            wristSubsystem.fastPeriodic();
+            SimHooks.stepTiming(LoopConstants.kFastLoopPeriodSeconds);
+        }
+    }
+
+    private static boolean atGoal(){
+        return armRotationSubsystem.atGoal() && armExtensionSubsystem.atGoal() && wristSubsystem.atGoal();
+    }
+
+    private static boolean isDone(Routine routine, Command command){
+        switch (routine.finish){
+            case ROUTINE:
+                return !CommandScheduler.getInstance().isScheduled(command) && atGoal();
+            case GAME_PIECE:
+                return intakeSubsystem.hasGamePiece() && atGoal();
+            default:
+                return atGoal();
+        }
+    }
+
+    // How far past the goal, in the direction it was moving. A joint that wasn't meant to move can't overshoot,
+    // any movement at all is error.
+    private static double overshoot(double start, double goal, double position){
+        double direction = Math.signum(goal - start);
+        if (direction == 0.0){
+            return Math.abs(position - goal);
+        }
+        return Math.max(0.0, (position - goal) * direction);
+    }
+
+    private static void record(String key, double value){
+        measured.setProperty(key, Double.toString(value));
+    }
+
+    // A missing baseline fails too, otherwise a routine added without one would never be checked
+    private static void checkBaseline(String key, double value, DoubleUnaryOperator limit){
+        String text = baseline.getProperty(key);
+        assertNotNull(text, String.format("No baseline for %s (measured %.4f), record one with ./gradlew test -PrecordCycleTimes", key, value));
+        double allowed = limit.applyAsDouble(Double.parseDouble(text));
+        assertTrue(value <= allowed, String.format("%s regressed: %.4f, baseline %s, allowed %.4f", key, value, text, allowed));
+    }
+}